@@ -0,0 +1,45 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.metrics.ServiceMetrics;
+import ru.yandex.practicum.filmorate.service.FilmRecommendations;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.FriendSuggestions;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.time.Duration;
+
+/**
+ * Общий для всех потоков бенчмарка каталог. Размеры задаются через -p entities=...
+ */
+@State(Scope.Benchmark)
+public class CatalogState {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int entities;
+
+    @Param({"5"})
+    public int likesPerUser;
+
+    @Param({"10"})
+    public int friendsPerUser;
+
+    public InMemoryFilmStorage filmStorage;
+    public InMemoryUserStorage userStorage;
+    public FilmService filmService;
+    public UserService userService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        filmStorage = new InMemoryFilmStorage();
+        userStorage = new InMemoryUserStorage();
+        Dataset.fill(filmStorage, userStorage, entities, likesPerUser, friendsPerUser, 42);
+        ServiceMetrics metrics = new ServiceMetrics(new SimpleMeterRegistry());
+        filmService = new FilmService(filmStorage, userStorage,
+                new FilmRecommendations(filmStorage, Duration.ofMinutes(1), false, 100_000), metrics);
+        userService = new UserService(userStorage,
+                new FriendSuggestions(userStorage, 100_000, Duration.ofMinutes(10)), metrics);
+    }
+}
@@ -0,0 +1,77 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Смешанная нагрузка из нескольких потоков на общий каталог: пишущие потоки ставят и снимают лайки
+ * (или дружбу), читающие в это время строят рейтинг и читают сущности.
+ * Число потоков в группе меняется через -tg, например -tg 8,8,8.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx12g"})
+public class ContentionBenchmark {
+
+    @Benchmark
+    @Group("likes")
+    @GroupThreads(4)
+    public long likeUnlike(CatalogState state, ThreadRandom rnd) {
+        long filmId = Dataset.skewed(rnd.random, state.entities);
+        long userId = Dataset.uniform(rnd.random, state.entities);
+        state.filmService.like(filmId, userId);
+        return state.filmService.unlike(filmId, userId);
+    }
+
+    @Benchmark
+    @Group("likes")
+    @GroupThreads(2)
+    public Collection<Film> topRated(CatalogState state) {
+        return state.filmService.findTopRated(10);
+    }
+
+    @Benchmark
+    @Group("likes")
+    @GroupThreads(2)
+    public Optional<Film> getFilm(CatalogState state, ThreadRandom rnd) {
+        return state.filmStorage.get(Dataset.skewed(rnd.random, state.entities));
+    }
+
+    @Benchmark
+    @Group("friends")
+    @GroupThreads(4)
+    public Collection<User> assignAndRemoveFriend(CatalogState state, ThreadRandom rnd) {
+        long id = Dataset.uniform(rnd.random, state.entities);
+        long friendId = Dataset.skewed(rnd.random, state.entities);
+        if (id == friendId) {
+            friendId = id % state.entities + 1;
+        }
+        state.userService.assignFriend(id, friendId);
+        return state.userService.removeFromFriends(id, friendId);
+    }
+
+    @Benchmark
+    @Group("friends")
+    @GroupThreads(4)
+    public Collection<User> commonFriends(CatalogState state, ThreadRandom rnd) {
+        return state.userService.getCommonFriends(
+                Dataset.skewed(rnd.random, state.entities), Dataset.skewed(rnd.random, state.entities),
+                0, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    @Group("registration")
+    @GroupThreads(4)
+    public Optional<User> addAndRemoveUser(CatalogState state, ThreadRandom rnd) {
+        User user = Dataset.user(state.entities + rnd.random.nextLong(Long.MAX_VALUE / 2));
+        state.userStorage.add(user);
+        return state.userStorage.remove(user.getId());
+    }
+}
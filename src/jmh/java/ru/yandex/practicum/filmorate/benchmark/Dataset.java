@@ -0,0 +1,60 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/**
+ * Генератор тестового каталога: entities пользователей и столько же фильмов.
+ * Лайки распределены неравномерно (квадрат равномерной величины смещает выбор к первым фильмам),
+ * чтобы рейтинг и пересечения работали на данных, похожих на реальные.
+ */
+public final class Dataset {
+    private static final LocalDate RELEASE = LocalDate.of(2000, 1, 1);
+    private static final LocalDate BIRTHDAY = LocalDate.of(1990, 1, 1);
+
+    private Dataset() {
+    }
+
+    public static void fill(FilmStorage films, UserStorage users, int entities, int likesPerUser,
+                            int friendsPerUser, long seed) {
+        for (int i = 0; i < entities; i++) {
+            users.add(user(i));
+            films.add(film(i));
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        for (long userId = 1; userId <= entities; userId++) {
+            for (int k = 0; k < likesPerUser; k++) {
+                films.addLike(skewed(random, entities), userId);
+            }
+            for (int k = 0; k < friendsPerUser / 2; k++) {
+                long friendId = skewed(random, entities);
+                if (friendId != userId) {
+                    users.addFriend(userId, friendId);
+                }
+            }
+        }
+    }
+
+    public static User user(long n) {
+        return new User(0, "user" + n + "@bench.ru", "user" + n, "User " + n, BIRTHDAY);
+    }
+
+    public static Film film(long n) {
+        return new Film(0, "Film " + n, "Description of film " + n, RELEASE, 90 + (int) (n % 60));
+    }
+
+    // id от 1 до entities, чаще маленькие.
+    public static long skewed(SplittableRandom random, int entities) {
+        double u = random.nextDouble();
+        return 1 + (long) (u * u * entities);
+    }
+
+    public static long uniform(SplittableRandom random, int entities) {
+        return 1 + random.nextInt(entities);
+    }
+}
@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx12g"})
+public class FilmServiceBenchmark {
+
+    @Benchmark
+    public Collection<Film> findTopRated(CatalogState state) {
+        return state.filmService.findTopRated(10);
+    }
+
+    @Benchmark
+    public Collection<Film> findTopRated100(CatalogState state) {
+        return state.filmService.findTopRated(100);
+    }
+
+    // Лайк и его отмена: набор лайков и рейтинг после операции не меняются.
+    @Benchmark
+    public long likeUnlike(CatalogState state, ThreadRandom rnd) {
+        long filmId = Dataset.skewed(rnd.random, state.entities);
+        long userId = Dataset.uniform(rnd.random, state.entities);
+        state.filmService.like(filmId, userId);
+        return state.filmService.unlike(filmId, userId);
+    }
+}
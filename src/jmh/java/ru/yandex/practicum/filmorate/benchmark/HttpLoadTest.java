@@ -0,0 +1,270 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Нагрузочный тест по HTTP: сравнение выполнения запросов на пуле потоков Tomcat и на виртуальных потоках.
+ * <p>
+ * Для каждого режима приложение запускается в отдельной JVM (spring.threads.virtual.enabled=false/true),
+ * наполняется каталогом из entities пользователей и фильмов, затем concurrency клиентов в течение
+ * duration секунд шлют смесь запросов: 70% GET /films/popular, 20% GET общих друзей, 10% PUT лайка.
+ * С storage=file лайк ждёт fsync журнала, и число одновременно ожидающих запросов ограничено
+ * размером пула - именно здесь режимы и расходятся. Печатаются пропускная способность, p50/p99/p99.9
+ * и число событий закрепления виртуального потока за несущим (jdk.tracePinnedThreads) в логе приложения.
+ * <p>
+ * mix=like оставляет в смеси только PUT лайка. logging задаёт через запятую варианты логирования,
+ * каждый режим прогоняется с каждым: off - логи приложения только от WARN и без Logbook,
+ * default - настройки application.properties, perf - профиль perf (выборка и усечение Logbook).
+ * <pre>
+ * mvn -P benchmark test-compile exec:exec@load-test -Dload.args="concurrency=2000 duration=30 storage=file"
+ * mvn -P benchmark test-compile exec:exec@load-test -Dload.args="modes=platform mix=like logging=default,perf"
+ * </pre>
+ */
+public final class HttpLoadTest {
+    private static final int POPULAR_PERCENT = 70;
+    private static final int COMMON_FRIENDS_PERCENT = 20;
+    private static final int SEED_WORKERS = 64;
+
+    private final Map<String, String> options;
+    private final HttpClient client = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private HttpLoadTest(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(Map.of(
+                "modes", "platform,virtual",
+                "concurrency", "1000",
+                "duration", "20",
+                "warmup", "10",
+                "entities", "10000",
+                "storage", "memory",
+                "mix", "default",
+                "logging", "off"));
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "");
+        }
+        HttpLoadTest test = new HttpLoadTest(options);
+        List<String> report = new ArrayList<>();
+        for (String mode : options.get("modes").split(",")) {
+            for (String logging : options.get("logging").split(",")) {
+                report.add(test.run(mode.trim(), logging.trim()));
+            }
+        }
+        System.out.printf("%nstorage=%s concurrency=%s duration=%ss entities=%s mix=%s%n", options.get("storage"),
+                options.get("concurrency"), options.get("duration"), options.get("entities"), options.get("mix"));
+        System.out.printf("%-9s %-8s %12s %10s %10s %10s %8s %8s%n",
+                "mode", "logging", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "errors", "pinned");
+        report.forEach(System.out::println);
+        System.exit(0);
+    }
+
+    private String run(String mode, String logging) throws Exception {
+        int port = freePort();
+        Path dataDir = Files.createTempDirectory("filmorate-load");
+        Path appLog = Path.of("target", "load-test-" + mode + "-" + logging + ".log");
+        List<String> command = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Xmx2g", "-Djdk.tracePinnedThreads=short",
+                "-cp", System.getProperty("java.class.path"),
+                FilmorateApplication.class.getName(),
+                "--server.port=" + port,
+                "--server.tomcat.accept-count=" + options.get("concurrency"),
+                "--spring.threads.virtual.enabled=" + "virtual".equals(mode),
+                "--filmorate.storage.type=" + options.get("storage"),
+                "--filmorate.storage.file.dir=" + dataDir,
+                // нагрузка меряет само приложение, ограничение частоты записей ей бы мешало
+                "--filmorate.write-guard.rate=0",
+                // на classpath бенчмарков есть logback-test.xml, а мерить нужно настройки приложения
+                "--logging.config=classpath:logback-spring.xml"));
+        switch (logging) {
+            case "off" -> command.addAll(List.of(
+                    "--logging.level.root=WARN",
+                    "--logging.level.org.zalando.logbook=OFF"));
+            case "default" -> {
+            }
+            case "perf" -> command.add("--spring.profiles.active=perf");
+            default -> throw new IllegalArgumentException("Неизвестный вариант логирования: " + logging);
+        }
+        Process app = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(appLog.toFile())
+                .start();
+        try {
+            String base = "http://localhost:" + port;
+            awaitStarted(base);
+            int entities = Integer.parseInt(options.get("entities"));
+            seed(base, entities);
+            int concurrency = Integer.parseInt(options.get("concurrency"));
+            load(base, entities, concurrency, Integer.parseInt(options.get("warmup")));
+            Result result = load(base, entities, concurrency, Integer.parseInt(options.get("duration")));
+            long pinned = Files.readAllLines(appLog).stream().filter(l -> l.contains("<== monitors")).count();
+            return String.format("%-9s %-8s %12.0f %10.2f %10.2f %10.2f %8d %8d", mode, logging, result.throughput(),
+                    result.percentile(0.50), result.percentile(0.99), result.percentile(0.999),
+                    result.errors(), pinned);
+        } finally {
+            app.destroy();
+            app.waitFor();
+        }
+    }
+
+    private void awaitStarted(String base) throws InterruptedException {
+        for (int i = 0; i < 120; i++) {
+            try {
+                if (send("GET", base + "/films?limit=1", null) == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // ещё не поднялось
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException("Приложение не запустилось на " + base);
+    }
+
+    // Тот же каталог, что и в Dataset: неравномерные лайки и дружба.
+    private void seed(String base, int entities) throws Exception {
+        parallel(entities, SEED_WORKERS, n -> {
+            send("POST", base + "/users", String.format(
+                    "{\"email\":\"user%d@bench.ru\",\"login\":\"user%d\",\"name\":\"User %d\",\"birthday\":\"1990-01-01\"}",
+                    n, n, n));
+            send("POST", base + "/films", String.format(
+                    "{\"name\":\"Film %d\",\"description\":\"Description of film %d\",\"releaseDate\":\"2000-01-01\","
+                            + "\"duration\":%d}", n, n, 90 + n % 60));
+        });
+        parallel(entities, SEED_WORKERS, n -> {
+            SplittableRandom random = new SplittableRandom(n);
+            long userId = n + 1;
+            for (int k = 0; k < 5; k++) {
+                send("PUT", base + "/films/" + Dataset.skewed(random, entities) + "/like/" + userId, null);
+            }
+            for (int k = 0; k < 5; k++) {
+                long friendId = Dataset.skewed(random, entities);
+                if (friendId != userId) {
+                    send("PUT", base + "/users/" + userId + "/friends/" + friendId, null);
+                }
+            }
+        });
+    }
+
+    private Result load(String base, int entities, int concurrency, int seconds) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        AtomicLong errors = new AtomicLong();
+        long[][] latencies = new long[concurrency][];
+        boolean likesOnly = "like".equals(options.get("mix"));
+        long start = System.nanoTime();
+        parallel(concurrency, concurrency, client -> {
+            SplittableRandom random = new SplittableRandom(client);
+            long[] samples = new long[1024];
+            int count = 0;
+            while (System.nanoTime() < deadline) {
+                int op = likesOnly ? 100 : random.nextInt(100);
+                String method = "GET";
+                String uri;
+                if (op < POPULAR_PERCENT) {
+                    uri = base + "/films/popular?count=10";
+                } else if (op < POPULAR_PERCENT + COMMON_FRIENDS_PERCENT) {
+                    uri = base + "/users/" + Dataset.skewed(random, entities) + "/friends/common/"
+                            + Dataset.skewed(random, entities);
+                } else {
+                    method = "PUT";
+                    uri = base + "/films/" + Dataset.skewed(random, entities) + "/like/"
+                            + Dataset.uniform(random, entities);
+                }
+                long t0 = System.nanoTime();
+                int status;
+                try {
+                    status = send(method, uri, null);
+                } catch (IOException e) {
+                    status = -1;
+                }
+                if (status != 200) {
+                    errors.incrementAndGet();
+                    continue;
+                }
+                if (count == samples.length) {
+                    samples = Arrays.copyOf(samples, count * 2);
+                }
+                samples[count++] = System.nanoTime() - t0;
+            }
+            latencies[client] = Arrays.copyOf(samples, count);
+        });
+        long elapsed = System.nanoTime() - start;
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        return new Result(all, elapsed, errors.get());
+    }
+
+    private int send(String method, String uri, String json) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(uri)).timeout(Duration.ofSeconds(30));
+        if (json != null) {
+            request.header("Content-Type", "application/json");
+            request.method(method, HttpRequest.BodyPublishers.ofString(json));
+        } else {
+            request.method(method, HttpRequest.BodyPublishers.noBody());
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    // Выполняет задачи 0..tasks-1 в workers виртуальных потоках.
+    private static void parallel(int tasks, int workers, Task task) throws Exception {
+        AtomicLong next = new AtomicLong();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(() -> {
+                    for (long n = next.getAndIncrement(); n < tasks; n = next.getAndIncrement()) {
+                        task.run((int) n);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private interface Task {
+        void run(int n) throws Exception;
+    }
+
+    private record Result(long[] sortedNanos, long elapsedNanos, long errors) {
+        double throughput() {
+            return sortedNanos.length * 1e9 / elapsedNanos;
+        }
+
+        double percentile(double p) {
+            if (sortedNanos.length == 0) {
+                return Double.NaN;
+            }
+            int index = (int) Math.min(sortedNanos.length - 1, Math.ceil(p * sortedNanos.length) - 1);
+            return sortedNanos[Math.max(index, 0)] / 1e6;
+        }
+    }
+}
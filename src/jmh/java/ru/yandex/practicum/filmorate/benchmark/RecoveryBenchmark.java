@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.storage.file.FileFilmStorage;
+import ru.yandex.practicum.filmorate.storage.file.FileStorageEngine;
+import ru.yandex.practicum.filmorate.storage.file.FileUserStorage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Время старта файлового хранилища: загрузка снимка каталога из entities фильмов и пользователей
+ * плюс проигрывание журнала из tailRecords лайков, сделанных после снимка.
+ * recover - время до готовности принимать запросы (снимок только отображается в память),
+ * recoverAndWarmUp - до переноса в память всех записей снимка.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx12g"})
+@State(Scope.Benchmark)
+public class RecoveryBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int entities;
+
+    @Param({"100000"})
+    public int tailRecords;
+
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("filmorate-recovery");
+        FileStorageEngine engine = engine();
+        FileFilmStorage films = new FileFilmStorage(engine);
+        FileUserStorage users = new FileUserStorage(engine);
+        engine.recover();
+        Dataset.fill(films, users, entities, 5, 10, 42);
+        engine.snapshot();
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < tailRecords; i++) {
+            films.addLike(Dataset.skewed(random, entities), Dataset.uniform(random, entities));
+        }
+        engine.destroy();
+    }
+
+    @Benchmark
+    public Duration recover() throws IOException {
+        FileStorageEngine engine = engine();
+        new FileFilmStorage(engine);
+        new FileUserStorage(engine);
+        engine.recover();
+        engine.destroy();
+        return engine.getRecoveryTime();
+    }
+
+    @Benchmark
+    public Duration recoverAndWarmUp() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        FileStorageEngine engine = engine();
+        new FileFilmStorage(engine);
+        new FileUserStorage(engine);
+        engine.recover();
+        engine.awaitWarmUp();
+        engine.destroy();
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private FileStorageEngine engine() {
+        return new FileStorageEngine(dir, false, Duration.ofDays(1), Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,67 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx12g"})
+public class StorageBenchmark {
+
+    @Benchmark
+    public Optional<Film> getFilm(CatalogState state, ThreadRandom rnd) {
+        return state.filmStorage.get(Dataset.uniform(rnd.random, state.entities));
+    }
+
+    @Benchmark
+    public Optional<User> getUser(CatalogState state, ThreadRandom rnd) {
+        return state.userStorage.getUserById(Dataset.uniform(rnd.random, state.entities));
+    }
+
+    @Benchmark
+    public Collection<User> getUsersByIds(CatalogState state, ThreadRandom rnd) {
+        List<Long> ids = new ArrayList<>(20);
+        for (int i = 0; i < 20; i++) {
+            ids.add(Dataset.uniform(rnd.random, state.entities));
+        }
+        return state.userStorage.getUsersByIds(ids);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Collection<Film> getAllFilms(CatalogState state) {
+        return state.filmStorage.getAll();
+    }
+
+    // Добавление с последующим удалением, чтобы размер каталога не рос между итерациями.
+    @Benchmark
+    public Optional<Film> addAndRemoveFilm(CatalogState state, ThreadRandom rnd) {
+        Film film = Dataset.film(rnd.random.nextInt());
+        state.filmStorage.add(film);
+        return state.filmStorage.remove(film.getId());
+    }
+
+    @Benchmark
+    public Optional<User> addAndRemoveUser(CatalogState state, ThreadRandom rnd) {
+        User user = Dataset.user(state.entities + rnd.random.nextLong(Long.MAX_VALUE / 2));
+        state.userStorage.add(user);
+        return state.userStorage.remove(user.getId());
+    }
+
+    @Benchmark
+    public Optional<Film> updateFilm(CatalogState state, ThreadRandom rnd) {
+        long id = Dataset.uniform(rnd.random, state.entities);
+        Film film = Dataset.film(id);
+        film.setId(id);
+        return state.filmStorage.update(film);
+    }
+}
@@ -0,0 +1,11 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.SplittableRandom;
+
+@State(Scope.Thread)
+public class ThreadRandom {
+    public final SplittableRandom random = new SplittableRandom(Thread.currentThread().threadId());
+}
@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx12g"})
+public class UserServiceBenchmark {
+
+    @Benchmark
+    public Collection<User> getFriends(CatalogState state, ThreadRandom rnd) {
+        return state.userService.getFriends(Dataset.skewed(rnd.random, state.entities));
+    }
+
+    @Benchmark
+    public Collection<User> getCommonFriends(CatalogState state, ThreadRandom rnd) {
+        return state.userService.getCommonFriends(
+                Dataset.skewed(rnd.random, state.entities), Dataset.skewed(rnd.random, state.entities),
+                0, Integer.MAX_VALUE);
+    }
+
+    // Пересечение самых "популярных" пользователей - худший случай для getCommonFriends.
+    @Benchmark
+    public Collection<User> getCommonFriendsOfHubs(CatalogState state, ThreadRandom rnd) {
+        return state.userService.getCommonFriends(1 + rnd.random.nextInt(10), 11 + rnd.random.nextInt(10),
+                0, 100);
+    }
+}
@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.config;
+
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.yandex.practicum.filmorate.controller.Projection;
+
+@Configuration
+public class JacksonConfig {
+    // Фильтр проекции (@JsonFilter на Film и User) по умолчанию пропускает все свойства:
+    // ответы без fields и counts, кэш ответов и NDJSON пишутся как раньше.
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer projectionFilterDefaults() {
+        return builder -> builder.filters(new SimpleFilterProvider()
+                .addFilter(Projection.FILTER, SimpleBeanPropertyFilter.serializeAll()));
+    }
+}
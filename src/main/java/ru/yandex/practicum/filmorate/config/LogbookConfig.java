@@ -0,0 +1,57 @@
+package ru.yandex.practicum.filmorate.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.zalando.logbook.Correlation;
+import org.zalando.logbook.HttpRequest;
+import org.zalando.logbook.HttpResponse;
+import org.zalando.logbook.Sink;
+import org.zalando.logbook.Strategy;
+import ru.yandex.practicum.filmorate.controller.PageResponses;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+@Configuration
+public class LogbookConfig {
+    // Тело потоковой выдачи NDJSON и SSE не копируется в буфер логирования: иначе весь ответ
+    // держался бы в памяти до конца запроса. С filmorate.logbook.body-min-status тела пишутся
+    // только для ответов с таким статусом и выше, остальные запросы - одной строкой без тел.
+    @Bean
+    public Strategy logbookStrategy(@Value("${filmorate.logbook.body-min-status:0}") int bodyMinStatus) {
+        return new Strategy() {
+            @Override
+            public HttpResponse process(HttpRequest request, HttpResponse response) throws IOException {
+                String accept = request.getHeaders().getFirst("Accept");
+                if (accept != null && (accept.contains(PageResponses.NDJSON)
+                        || accept.contains(MediaType.TEXT_EVENT_STREAM_VALUE)
+                        || request.getPath().equals("/events"))) {
+                    return response.withoutBody();
+                }
+                if (response.getStatus() < bodyMinStatus) {
+                    return response.withoutBody();
+                }
+                return response.withBody();
+            }
+
+            @Override
+            public void write(Correlation correlation, HttpRequest request, HttpResponse response, Sink sink)
+                    throws IOException {
+                sink.write(correlation, response.getStatus() < bodyMinStatus ? request.withoutBody() : request,
+                        response);
+            }
+        };
+    }
+
+    // Логируется доля filmorate.logbook.sample-rate запросов; logbook.predicate.* применяются поверх.
+    @Bean
+    public Predicate<HttpRequest> requestCondition(@Value("${filmorate.logbook.sample-rate:1}") double sampleRate) {
+        if (sampleRate >= 1) {
+            return request -> true;
+        }
+        return request -> ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+}
@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.yandex.practicum.filmorate.controller.PageResponses;
+
+import java.util.List;
+
+@Configuration
+@RequiredArgsConstructor
+public class WebConfig implements WebMvcConfigurer {
+    private final ObjectMapper objectMapper;
+
+    // Ошибка на запрос с Accept: application/x-ndjson отдаётся одной строкой JSON, а не 406/500.
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        MappingJackson2HttpMessageConverter ndjson = new MappingJackson2HttpMessageConverter(objectMapper);
+        ndjson.setSupportedMediaTypes(List.of(MediaType.parseMediaType(PageResponses.NDJSON)));
+        converters.add(ndjson);
+    }
+}
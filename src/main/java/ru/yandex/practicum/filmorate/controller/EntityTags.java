@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.Versions;
+
+/**
+ * ETag из версии сущности: "эпоха-версия", где эпоха - время запуска приложения. Версии живут только
+ * в памяти и после перезапуска начинаются заново, поэтому без эпохи тег, полученный до перезапуска,
+ * мог бы совпасть с другой версией после него.
+ */
+@Component
+public class EntityTags {
+    // Версия, которой не бывает у сохранённой сущности: условие с таким тегом никогда не выполняется.
+    private static final long NO_VERSION = 0;
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+    public String tag(long version) {
+        return "\"" + epoch + "-" + version + "\"";
+    }
+
+    // Ожидаемая версия из If-Match: без заголовка или "*" - без проверки (ANY);
+    // слабый тег, тег прошлого запуска или несколько тегов - NO_VERSION.
+    public long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return Versions.ANY;
+        }
+        String prefix = "\"" + epoch + "-";
+        String tag = ifMatch.trim();
+        if (!tag.startsWith(prefix) || !tag.endsWith("\"") || tag.length() <= prefix.length() + 1) {
+            return NO_VERSION;
+        }
+        try {
+            return Long.parseLong(tag.substring(prefix.length(), tag.length() - 1));
+        } catch (NumberFormatException e) {
+            return NO_VERSION;
+        }
+    }
+}
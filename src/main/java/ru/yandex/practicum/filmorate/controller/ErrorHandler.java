@@ -1,12 +1,19 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.JsonMappingException;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import ru.yandex.practicum.filmorate.exception.*;
 import ru.yandex.practicum.filmorate.model.ErrorResponse;
 
+import java.util.Objects;
+import java.util.stream.Collectors;
+
 @RestControllerAdvice
 public class ErrorHandler {
     @ExceptionHandler
@@ -17,6 +24,22 @@ public class ErrorHandler {
         );
     }
 
+    // Тело, которое не читается в модель (например, id меньше 1 в likes или friends), - ошибка клиента.
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ErrorResponse handleHttpMessageNotReadableException(final HttpMessageNotReadableException e) {
+        if (e.getCause() instanceof JsonMappingException cause && !cause.getPath().isEmpty()) {
+            String parameter = cause.getPath().stream()
+                    .map(JsonMappingException.Reference::getFieldName)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.joining("."));
+            return new ErrorResponse(
+                    String.format("Некорректное значение для %s. %s", parameter, cause.getOriginalMessage())
+            );
+        }
+        return new ErrorResponse("Некорректное тело запроса.");
+    }
+
     @ExceptionHandler
     @ResponseStatus(HttpStatus.NOT_FOUND)
     public ErrorResponse handleNotFoundException(final NotFoundException e) {
@@ -25,6 +48,32 @@ public class ErrorHandler {
         );
     }
 
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+    public ErrorResponse handlePreconditionFailedException(final PreconditionFailedException e) {
+        return new ErrorResponse(
+                String.format("Изменён после чтения %s: %s. Версия не совпадает с If-Match.",
+                        e.getObjectName(), e.getProperty())
+        );
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.GONE)
+    public ErrorResponse handleEventsExpiredException(final EventsExpiredException e) {
+        return new ErrorResponse(
+                String.format("Событие %s уже вытеснено из буфера, самое старое доступное - %s.",
+                        e.getRequested(), e.getOldest())
+        );
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ErrorResponse handleStreamsExhaustedException(final StreamsExhaustedException e,
+                                                         final HttpServletResponse response) {
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+        return new ErrorResponse("Открыто слишком много потоков событий. Попробуйте повторить позже.");
+    }
+
     @ExceptionHandler
     @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
     public ErrorResponse handleStorageException(final StorageException e) {
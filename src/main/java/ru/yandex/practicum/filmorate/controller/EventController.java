@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+// Поток изменений фильмов, лайков, пользователей и дружбы с номерами событий для продолжения.
+@RestController
+@RequestMapping("/events")
+@RequiredArgsConstructor
+public class EventController {
+
+    private final EventStreams eventStreams;
+
+    @GetMapping
+    public ResponseEntity<ResponseBodyEmitter> ndjson(@RequestParam(required = false) Long from) {
+        return eventStreams.ndjson(from);
+    }
+
+    // Переподключившийся SSE-клиент присылает номер последнего полученного события в Last-Event-ID.
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> sse(
+            @RequestParam(required = false) Long from,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return eventStreams.sse(lastEventId != null ? Long.valueOf(lastEventId + 1) : from);
+    }
+}
@@ -0,0 +1,250 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import ru.yandex.practicum.filmorate.events.ChangeEventBus;
+import ru.yandex.practicum.filmorate.exception.EventsExpiredException;
+import ru.yandex.practicum.filmorate.exception.StreamsExhaustedException;
+import ru.yandex.practicum.filmorate.model.ChangeEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Потоковая выдача событий изменений в NDJSON или SSE. Ответ идёт stream-duration, отдавая события
+ * по мере публикации, затем закрывается: клиент продолжает с номера, следующего за последним
+ * полученным (SSE-клиенты делают это сами по Last-Event-ID). Если потребитель отстал настолько,
+ * что его события вытеснены из буфера, поток закрывается, а повторный запрос получает 410.
+ * <p>
+ * Открытый поток не держит поток выполнения: ответ - асинхронный ResponseBodyEmitter. Один
+ * поток-диспетчер ждёт публикации в шине и раздаёт дозапись отставшим подпискам пулу из
+ * writer-threads потоков; у подписки не больше одной дозаписи одновременно. Открытых потоков
+ * не больше max-streams, сверх них запрос получает 503 с Retry-After.
+ */
+@Component
+public class EventStreams implements DisposableBean {
+    private static final int BATCH = 256;
+    // Сколько диспетчер спит без публикаций, если ни один поток не заканчивается раньше.
+    private static final long IDLE_MILLIS = 1_000;
+    // Запас асинхронного таймаута сверх stream-duration: поток закрывает диспетчер, а не контейнер.
+    private static final long TIMEOUT_MARGIN_MILLIS = 5_000;
+
+    private final ChangeEventBus bus;
+    private final ObjectWriter writer;
+    private final long streamNanos;
+    private final int maxStreams;
+    private final long retryAfterSeconds;
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger open = new AtomicInteger();
+    private final ExecutorService writers;
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    private static final Logger log = LoggerFactory.getLogger(EventStreams.class);
+
+    public EventStreams(ChangeEventBus bus, ObjectMapper objectMapper,
+                        @Value("${filmorate.events.stream-duration:25s}") Duration streamDuration,
+                        @Value("${filmorate.events.max-streams:1000}") int maxStreams,
+                        @Value("${filmorate.events.writer-threads:4}") int writerThreads) {
+        this.bus = bus;
+        this.writer = objectMapper.writer();
+        this.streamNanos = streamDuration.toNanos();
+        this.maxStreams = maxStreams;
+        // Место освобождается, когда заканчивается какой-то из открытых потоков.
+        this.retryAfterSeconds = Math.max(1, streamDuration.toSeconds() / 5);
+        AtomicInteger threads = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(writerThreads, task -> {
+            Thread thread = new Thread(task, "events-writer-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dispatcher = new Thread(this::dispatch, "events-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    private interface EventWriter {
+        void write(OutputStream out, ChangeEvent event) throws IOException;
+    }
+
+    public ResponseEntity<ResponseBodyEmitter> ndjson(Long from) {
+        ResponseBodyEmitter body = subscribe(start(from), (out, event) -> {
+            out.write(writer.writeValueAsBytes(event));
+            out.write('\n');
+        });
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(PageResponses.NDJSON)).body(body);
+    }
+
+    public ResponseEntity<ResponseBodyEmitter> sse(Long from) {
+        ResponseBodyEmitter body = subscribe(start(from), (out, event) -> {
+            out.write(("id: " + event.getSeq() + "\nevent: " + event.getType() + "\ndata: ")
+                    .getBytes(StandardCharsets.UTF_8));
+            out.write(writer.writeValueAsBytes(event));
+            out.write('\n');
+            out.write('\n');
+        });
+        return ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(body);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        dispatcher.interrupt();
+        dispatcher.join(TimeUnit.SECONDS.toMillis(1));
+        subscriptions.forEach(this::close);
+        writers.shutdownNow();
+    }
+
+    // Без from - только новые события, 0 - с самого старого в буфере.
+    private long start(Long from) {
+        if (from == null) {
+            return bus.head() + 1;
+        }
+        long oldest = bus.oldest();
+        if (from == 0) {
+            return oldest;
+        }
+        if (from < oldest) {
+            throw new EventsExpiredException(from, oldest);
+        }
+        return from;
+    }
+
+    private ResponseBodyEmitter subscribe(long from, EventWriter eventWriter) {
+        if (open.incrementAndGet() > maxStreams) {
+            open.decrementAndGet();
+            log.warn("Открыто {} потоков событий, новый поток отклонён.", maxStreams);
+            throw new StreamsExhaustedException(retryAfterSeconds);
+        }
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(
+                TimeUnit.NANOSECONDS.toMillis(streamNanos) + TIMEOUT_MARGIN_MILLIS);
+        Subscription subscription = new Subscription(emitter, eventWriter, from, System.nanoTime() + streamNanos);
+        emitter.onCompletion(() -> remove(subscription));
+        emitter.onTimeout(() -> remove(subscription));
+        emitter.onError(e -> remove(subscription));
+        subscriptions.add(subscription);
+        // Накопленные события (from=0 или номер из прошлого ответа) отправляются сразу.
+        schedule(subscription);
+        return emitter;
+    }
+
+    // Ждёт публикаций и раздаёт дозапись подпискам, которым есть что отправить; закрывает истёкшие.
+    private void dispatch() {
+        long seen = bus.head();
+        while (running) {
+            try {
+                long now = System.nanoTime();
+                long wait = TimeUnit.MILLISECONDS.toNanos(IDLE_MILLIS);
+                for (Subscription subscription : subscriptions) {
+                    long remaining = subscription.deadline - now;
+                    if (remaining <= 0) {
+                        close(subscription);
+                        continue;
+                    }
+                    wait = Math.min(wait, remaining);
+                    if (subscription.next <= seen) {
+                        schedule(subscription);
+                    }
+                }
+                bus.await(seen + 1, Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+                seen = bus.head();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Ошибка раздачи событий", e);
+            }
+        }
+    }
+
+    private void schedule(Subscription subscription) {
+        if (!subscription.scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            writers.execute(() -> drain(subscription));
+        } catch (RejectedExecutionException e) {
+            subscription.scheduled.set(false);
+        }
+    }
+
+    // Отправляет подписке всё опубликованное с её номера пачками по BATCH событий.
+    private void drain(Subscription subscription) {
+        try {
+            while (subscriptions.contains(subscription)) {
+                List<ChangeEvent> events = bus.read(subscription.next, BATCH);
+                if (events.isEmpty()) {
+                    break;
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                for (ChangeEvent event : events) {
+                    subscription.eventWriter.write(out, event);
+                }
+                subscription.emitter.send(out.toByteArray());
+                subscription.next = events.get(events.size() - 1).getSeq() + 1;
+            }
+        } catch (EventsExpiredException e) {
+            log.info("Поток событий закрыт: потребитель отстал, событие {} вытеснено, самое старое {}.",
+                    e.getRequested(), e.getOldest());
+            close(subscription);
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Поток событий прерван: {}", e.getMessage());
+            remove(subscription);
+        } finally {
+            subscription.scheduled.set(false);
+        }
+        // Событие, опубликованное после последнего чтения, диспетчер мог увидеть, пока дозапись шла.
+        if (subscriptions.contains(subscription) && bus.head() >= subscription.next) {
+            schedule(subscription);
+        }
+    }
+
+    private void close(Subscription subscription) {
+        if (remove(subscription)) {
+            subscription.emitter.complete();
+        }
+    }
+
+    private boolean remove(Subscription subscription) {
+        if (!subscriptions.remove(subscription)) {
+            return false;
+        }
+        open.decrementAndGet();
+        return true;
+    }
+
+    private static final class Subscription {
+        private final ResponseBodyEmitter emitter;
+        private final EventWriter eventWriter;
+        private final long deadline;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile long next;
+
+        Subscription(ResponseBodyEmitter emitter, EventWriter eventWriter, long next, long deadline) {
+            this.emitter = emitter;
+            this.eventWriter = eventWriter;
+            this.next = next;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -3,11 +3,23 @@ package ru.yandex.practicum.filmorate.controller;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmQuery;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
+import java.time.LocalDate;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -16,23 +28,86 @@ import java.util.Map;
 public class FilmController {
 
     private final FilmService filmService;
+    private final PageResponses pageResponses;
+    private final EntityTags entityTags;
+    private final ResponseCache responseCache;
+    private final Projections projections;
     private static final Logger log = LoggerFactory.getLogger(FilmController.class);
 
 
+    // Без after и limit - весь список, как раньше; с ними - страница по курсору.
+    // fields - только перечисленные свойства, counts=true - likesCount вместо множества лайков.
     @GetMapping
-    public Collection<Film> findAll() {
-        return filmService.findAll();
+    public ResponseEntity<MappingJacksonValue> findAll(
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String fields,
+            @RequestParam(defaultValue = "false") boolean counts) {
+        Projection projection = projections.of(Film.class, fields, counts);
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(projection.apply(filmService.findAll()));
+        }
+        return pageResponses.page(filmService.findPage(
+                after == null ? 0 : after,
+                limit == null ? PageResponses.DEFAULT_LIMIT : limit), projection);
     }
 
+    @GetMapping(produces = PageResponses.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamAll(
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "" + Integer.MAX_VALUE) int limit,
+            @RequestParam(required = false) String fields,
+            @RequestParam(defaultValue = "false") boolean counts) {
+        Projection projection = projections.of(Film.class, fields, counts);
+        return pageResponses.ndjson(filmService.stream(after, limit), projection);
+    }
+
+    // С If-None-Match, совпадающим с текущей версией, - 304 без тела; тело - из кэша ответов по версии.
     @GetMapping("/{filmId}")
-    public Film findById(@PathVariable long filmId) {
-        return filmService.findById(filmId);
+    public ResponseEntity<byte[]> findById(@PathVariable long filmId, WebRequest request) {
+        Film film = filmService.findById(filmId);
+        long version = film.getVersion().get();
+        String tag = entityTags.tag(version);
+        if (request.checkNotModified(tag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(tag).contentType(MediaType.APPLICATION_JSON)
+                .body(responseCache.json("films/" + filmId, version, () -> film));
+    }
+
+    // Выборка по префиксу названия, диапазонам даты выхода и длительности (границы включительно).
+    @GetMapping("/filter")
+    public Collection<Film> findByAttributes(
+            @RequestParam(required = false) String namePrefix,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate releasedFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate releasedTo,
+            @RequestParam(required = false) Integer minDuration,
+            @RequestParam(required = false) Integer maxDuration,
+            @RequestParam(defaultValue = "" + PageResponses.DEFAULT_LIMIT) int limit) {
+        return filmService.findByAttributes(
+                new FilmQuery(namePrefix, releasedFrom, releasedTo, minDuration, maxDuration), limit);
     }
 
+    // Полнотекстовый поиск по названию и описанию; likes=true поднимает фильмы с большим числом лайков.
+    @GetMapping("/search")
+    public List<Film> search(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "10") int count,
+            @RequestParam(defaultValue = "false") boolean likes) {
+        return filmService.search(q, count, likes);
+    }
+
+    // Ответ из кэша, пока фильмы и лайки не менялись (для трендов - и окно обновления то же).
     @GetMapping("/popular")
-    public Collection<Film> findTopRated(
-            @RequestParam(defaultValue = "10") int count) {
-        return filmService.findTopRated(count);
+    public ResponseEntity<byte[]> findTopRated(
+            @RequestParam(defaultValue = "10") int count,
+            @RequestParam(required = false) String period) {
+        long changes = filmService.changes();
+        byte[] json = period != null
+                ? responseCache.json("films/popular?count=" + count + "&period=" + period
+                        + "#" + responseCache.trendingWindow(), changes, () -> filmService.findTrending(count, period))
+                : responseCache.json("films/popular?count=" + count, changes, () -> filmService.findTopRated(count));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(json);
     }
 
     @PostMapping
@@ -40,9 +115,13 @@ public class FilmController {
         return filmService.create(film);
     }
 
+    // С If-Match фильм заменяется, только если не изменился с тех пор, иначе 412.
     @PutMapping
-    public Film update(@RequestBody Film newFilm) {
-        return filmService.update(newFilm);
+    public ResponseEntity<Film> update(
+            @RequestBody Film film,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Film updated = filmService.update(film, entityTags.expectedVersion(ifMatch));
+        return ResponseEntity.ok().eTag(entityTags.tag(updated.getVersion().get())).body(updated);
     }
 
     @PutMapping("/{filmId}/like/{userId}")
@@ -51,6 +130,11 @@ public class FilmController {
         return Map.of("total likes", filmService.like(filmId, userId));
     }
 
+    @PostMapping("/likes/batch")
+    public List<BatchResult> likeAll(@RequestBody List<Like> likes) {
+        return filmService.likeAll(likes);
+    }
+
     @DeleteMapping("/{filmId}/like/{userId}")
     public Map<String, Long> unlike(
             @PathVariable long filmId, @PathVariable long userId) {
@@ -0,0 +1,57 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.Page;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+// Ответы для постраничной выдачи: страница с курсором в заголовке или поток NDJSON.
+@Component
+@RequiredArgsConstructor
+public class PageResponses {
+    public static final String NDJSON = "application/x-ndjson";
+    public static final String NEXT_CURSOR = "X-Next-Cursor";
+    public static final int DEFAULT_LIMIT = 100;
+
+    private final ObjectMapper objectMapper;
+
+    private static final Logger log = LoggerFactory.getLogger(PageResponses.class);
+
+    public ResponseEntity<MappingJacksonValue> page(Page<?> page, Projection projection) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR, String.valueOf(page.getNextCursor()));
+        }
+        return response.body(projection.apply(page.getItems()));
+    }
+
+    // Элементы пишутся в ответ по мере обхода хранилища, по одному JSON-объекту на строку,
+    // через буфер контейнера: без сброса после каждого объекта и без копии всей выдачи.
+    public ResponseEntity<StreamingResponseBody> ndjson(Stream<?> items, Projection projection) {
+        ObjectWriter writer = projection.isFull() ? objectMapper.writer() : objectMapper.writer(projection.filters());
+        StreamingResponseBody body = out -> {
+            try (items) {
+                Iterator<?> iterator = items.iterator();
+                while (iterator.hasNext()) {
+                    out.write(writer.writeValueAsBytes(iterator.next()));
+                    out.write('\n');
+                }
+            } catch (IOException e) {
+                log.debug("Выдача NDJSON прервана: {}", e.getMessage());
+                throw e;
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+}
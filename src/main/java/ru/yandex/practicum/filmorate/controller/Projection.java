@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.http.converter.json.MappingJacksonValue;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Какие свойства фильмов и пользователей попадают в ответ: fields - только перечисленные (null - все),
+ * counts - вместо множеств лайков и друзей их размеры, свойства likesCount и friendsCount.
+ * <p>
+ * Действует через фильтр Jackson с id FILTER (@JsonFilter на Film и User): пропущенные свойства
+ * фильтр не передаёт дальше, поэтому Jackson не читает их и не обходит вложенные множества, а размер
+ * множества берётся без его обхода. Без проекции действует фильтр по умолчанию - все свойства.
+ */
+public final class Projection {
+    public static final String FILTER = "projection";
+    public static final Projection FULL = new Projection(null, false);
+
+    private final Set<String> fields;
+    private final boolean counts;
+    private final FilterProvider filters;
+
+    Projection(Set<String> fields, boolean counts) {
+        this.fields = fields;
+        this.counts = counts;
+        this.filters = isFull() ? null : new SimpleFilterProvider().addFilter(FILTER, new Filter());
+    }
+
+    public boolean isFull() {
+        return fields == null && !counts;
+    }
+
+    // Фильтры для ObjectWriter; null - фильтры ObjectMapper по умолчанию.
+    public FilterProvider filters() {
+        return filters;
+    }
+
+    // Тело ответа, которое конвертер Spring пишет с фильтрами проекции.
+    public MappingJacksonValue apply(Object body) {
+        MappingJacksonValue value = new MappingJacksonValue(body);
+        value.setFilters(filters);
+        return value;
+    }
+
+    private final class Filter extends SimpleBeanPropertyFilter {
+        @Override
+        public void serializeAsField(Object pojo, JsonGenerator gen, SerializerProvider provider,
+                                     PropertyWriter writer) throws Exception {
+            String name = writer.getName();
+            if (fields != null && !fields.contains(name)) {
+                return;
+            }
+            if (counts && writer instanceof BeanPropertyWriter property
+                    && Collection.class.isAssignableFrom(property.getType().getRawClass())) {
+                Collection<?> items = (Collection<?>) property.get(pojo);
+                gen.writeNumberField(name + "Count", items != null ? items.size() : 0);
+                return;
+            }
+            writer.serializeAsField(pojo, gen, provider);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.ErrMsg;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+// Разбор параметров fields и counts списочных запросов в Projection.
+@Component
+@RequiredArgsConstructor
+public class Projections {
+    private static final ErrMsg ERR_MSG_BAD_FIELDS = new ErrMsg(
+            "fields",
+            "Поля перечисляются через запятую и должны быть свойствами объекта в ответе.");
+
+    private final ObjectMapper objectMapper;
+    // Имена свойств в JSON по типу - чтобы не разбирать класс на каждый запрос.
+    private final Map<Class<?>, Set<String>> properties = new ConcurrentHashMap<>();
+
+    private static final Logger log = LoggerFactory.getLogger(Projections.class);
+
+    public Projection of(Class<?> type, String fields, boolean counts) {
+        if (fields == null) {
+            return counts ? new Projection(null, true) : Projection.FULL;
+        }
+        Set<String> known = properties.computeIfAbsent(type, this::jsonProperties);
+        Set<String> selected = Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .collect(Collectors.toUnmodifiableSet());
+        if (selected.isEmpty() || !known.containsAll(selected)) {
+            log.warn("Ошибка валидации {}. {}", ERR_MSG_BAD_FIELDS.getParam(), ERR_MSG_BAD_FIELDS.getMsg());
+            throw new ValidationException(ERR_MSG_BAD_FIELDS.getParam(), ERR_MSG_BAD_FIELDS.getMsg());
+        }
+        return new Projection(selected, counts);
+    }
+
+    private Set<String> jsonProperties(Class<?> type) {
+        return objectMapper.getSerializationConfig()
+                .introspect(objectMapper.constructType(type))
+                .findProperties().stream()
+                .filter(BeanPropertyDefinition::couldSerialize)
+                .map(BeanPropertyDefinition::getName)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+}
@@ -0,0 +1,83 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Готовые JSON-ответы горячих GET-запросов (фильм по id, топ и тренды) в виде байтов.
+ * <p>
+ * Запись помнит метку данных, из которых построена: версию фильма или номер изменения фильмов
+ * из FilmService. Пока метка та же, ответ отдаётся без обращения к Jackson; изменения записи
+ * не сбрасывают - устаревшая перестраивается при первом чтении с новой меткой. Тело отдаётся
+ * массивом байтов, который конвертер пишет в ответ одним вызовом, без промежуточных копий.
+ * Размер кэша ограничен суммой длин ответов; попадания и промахи - в метрике cache.gets{cache=responses}.
+ */
+@Component
+public class ResponseCache {
+    private final Cache<String, Entry> entries;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final long trendingRefreshMillis;
+
+    public ResponseCache(ObjectMapper objectMapper, ObjectProvider<MeterRegistry> registry,
+                         @Value("${filmorate.response-cache.enabled:true}") boolean enabled,
+                         @Value("${filmorate.response-cache.max-size:16MB}") DataSize maxSize,
+                         @Value("${filmorate.response-cache.expire-after-access:10m}") Duration expireAfterAccess,
+                         @Value("${filmorate.trending.refresh-interval:30s}") Duration trendingRefresh) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.trendingRefreshMillis = Math.max(1, trendingRefresh.toMillis());
+        this.entries = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .<String, Entry>weigher((key, entry) -> key.length() + entry.json.length)
+                .expireAfterAccess(expireAfterAccess)
+                .recordStats()
+                .build();
+        registry.ifAvailable(meters -> CaffeineCacheMetrics.monitor(meters, entries, "responses"));
+    }
+
+    // Номер окна обновления трендов: рейтинг за период сдвигается и без изменений фильмов,
+    // поэтому он входит в ключ записи вместе с параметрами.
+    public long trendingWindow() {
+        return System.currentTimeMillis() / trendingRefreshMillis;
+    }
+
+    // JSON из кэша, если запись построена при той же метке, иначе из body().
+    // Исключение body() (валидация, не найдено) проходит дальше и ничего не кэширует.
+    public byte[] json(String key, long stamp, Supplier<?> body) {
+        if (!enabled) {
+            return write(body.get());
+        }
+        Entry cached = entries.getIfPresent(key);
+        if (cached != null && cached.stamp == stamp) {
+            return cached.json;
+        }
+        Entry built = new Entry(stamp, write(body.get()));
+        // Параллельно построенный ответ по более новой метке не затирается.
+        entries.asMap().merge(key, built, (old, next) -> next.stamp >= old.stamp ? next : old);
+        return built.json;
+    }
+
+    private byte[] write(Object body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record Entry(long stamp, byte[] json) {
+    }
+}
@@ -3,11 +3,21 @@ package ru.yandex.practicum.filmorate.controller;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import java.util.Collection;
+import java.util.List;
 
 @RestController
 @RequestMapping("/users")
@@ -15,12 +25,38 @@ import java.util.Collection;
 public class UserController {
 
     private final UserService userService;
+    private final FilmService filmService;
+    private final PageResponses pageResponses;
+    private final EntityTags entityTags;
+    private final Projections projections;
 
     private static final Logger log = LoggerFactory.getLogger(UserController.class);
 
+    // Без after и limit - весь список, как раньше; с ними - страница по курсору.
+    // fields - только перечисленные свойства, counts=true - friendsCount вместо множества друзей.
     @GetMapping
-    public Collection<User> findAll() {
-        return userService.findAll();
+    public ResponseEntity<MappingJacksonValue> findAll(
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String fields,
+            @RequestParam(defaultValue = "false") boolean counts) {
+        Projection projection = projections.of(User.class, fields, counts);
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(projection.apply(userService.findAll()));
+        }
+        return pageResponses.page(userService.findPage(
+                after == null ? 0 : after,
+                limit == null ? PageResponses.DEFAULT_LIMIT : limit), projection);
+    }
+
+    @GetMapping(produces = PageResponses.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamAll(
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "" + Integer.MAX_VALUE) int limit,
+            @RequestParam(required = false) String fields,
+            @RequestParam(defaultValue = "false") boolean counts) {
+        Projection projection = projections.of(User.class, fields, counts);
+        return pageResponses.ndjson(userService.stream(after, limit), projection);
     }
 
     @PostMapping
@@ -28,15 +64,33 @@ public class UserController {
         return userService.create(user);
     }
 
+    // С If-None-Match, совпадающим с текущей версией, - 304 без тела.
+    @GetMapping("/{id}")
+    public ResponseEntity<User> findById(@PathVariable long id, WebRequest request) {
+        User user = userService.findById(id);
+        String tag = entityTags.tag(user.getVersion().get());
+        if (request.checkNotModified(tag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(tag).body(user);
+    }
+
+    // С If-Match пользователь заменяется, только если не изменился с тех пор, иначе 412.
     @PutMapping
-    public User update(@RequestBody User newUser) {
-        return userService.update(newUser);
+    public ResponseEntity<User> update(
+            @RequestBody User newUser,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        User user = userService.update(newUser, entityTags.expectedVersion(ifMatch));
+        return ResponseEntity.ok().eTag(entityTags.tag(user.getVersion().get())).body(user);
     }
 
     @GetMapping("/{id}/friends")
-    public Collection<User> getFriends(
-            @PathVariable long id) {
-        return userService.getFriends(id);
+    public MappingJacksonValue getFriends(
+            @PathVariable long id,
+            @RequestParam(required = false) String fields,
+            @RequestParam(defaultValue = "false") boolean counts) {
+        Projection projection = projections.of(User.class, fields, counts);
+        return projection.apply(userService.getFriends(id));
     }
 
     @PutMapping("/{userId}/friends/{friendId}")
@@ -45,15 +99,39 @@ public class UserController {
         return userService.assignFriend(userId, friendId);
     }
 
+    @PostMapping("/friends/batch")
+    public List<BatchResult> assignFriends(@RequestBody List<Friendship> friendships) {
+        return userService.assignFriends(friendships);
+    }
+
     @DeleteMapping("/{userId}/friends/{friendId}")
     public Collection<User> removeFromFriends(
             @PathVariable long userId, @PathVariable long friendId) {
         return userService.removeFromFriends(userId, friendId);
     }
 
+    @GetMapping("/{id}/friends/suggestions")
+    public Collection<User> getSuggestedFriends(
+            @PathVariable long id,
+            @RequestParam(defaultValue = "10") int count) {
+        return userService.getSuggestedFriends(id, count);
+    }
+
+    @GetMapping("/{id}/recommendations")
+    public Collection<Film> getRecommendations(
+            @PathVariable long id,
+            @RequestParam(defaultValue = "10") int count) {
+        return filmService.getRecommendations(id, count);
+    }
+
     @GetMapping("/{id}/friends/common/{otherId}")
-    public Collection<User> getCommonFriends(
-            @PathVariable long id, @PathVariable long otherId) {
-        return userService.getCommonFriends(id, otherId);
+    public MappingJacksonValue getCommonFriends(
+            @PathVariable long id, @PathVariable long otherId,
+            @RequestParam(defaultValue = "0") int from,
+            @RequestParam(defaultValue = "" + Integer.MAX_VALUE) int size,
+            @RequestParam(required = false) String fields,
+            @RequestParam(defaultValue = "false") boolean counts) {
+        Projection projection = projections.of(User.class, fields, counts);
+        return projection.apply(userService.getCommonFriends(id, otherId, from, size));
     }
 }
\ No newline at end of file
@@ -0,0 +1,280 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import ru.yandex.practicum.filmorate.model.ErrorResponse;
+import ru.yandex.practicum.filmorate.util.TokenBucket;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Защита записей лайков и дружбы (PUT/DELETE /films/{id}/like/{userId}, /users/{id}/friends/{friendId}
+ * и пакетов POST /films/likes/batch, /users/friends/batch) до контроллера и хранилища.
+ * <p>
+ * Повторы. Запрос с заголовком Idempotency-Key запоминается по ключу, методу и пути вместе с SHA-256
+ * тела: повтор с тем же телом получает сохранённый ответ (с заголовком Idempotent-Replayed) без
+ * обращения к сервису, повтор во время выполнения первого - 409, тот же ключ с другим телом - 422.
+ * Таблица ключей ограничена по числу и времени жизни; ответы 5xx не сохраняются, чтобы повтор мог
+ * выполниться заново.
+ * <p>
+ * Частота. У каждого адреса клиента своё ведро токенов (TokenBucket, без блокировок). Id пользователя
+ * в пути для этого не годится: запросы не аутентифицированы, и кто угодно исчерпал бы ведро чужого
+ * пользователя. Без токена - 429 с Retry-After. Повторы с ключом токенов не тратят.
+ * <p>
+ * По умолчанию фильтр выключен (filmorate.write-guard.enabled). Отклонённые запросы считаются
+ * в filmorate.shed{reason=duplicate|in_progress|mismatch|rate_limited}.
+ */
+@Component
+public class WriteGuardFilter extends OncePerRequestFilter {
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    public static final String REPLAYED = "Idempotent-Replayed";
+
+    private static final Pattern LIKE = Pattern.compile("/films/\\d+/like/\\d+");
+    private static final Pattern FRIEND = Pattern.compile("/users/\\d+/friends/\\d+");
+    private static final Pattern BATCH = Pattern.compile("/(films/likes|users/friends)/batch");
+
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final double rate;
+    private final int burst;
+    private final Cache<String, Stored> responses;
+    private final Cache<String, TokenBucket> buckets;
+    private final Counter duplicates;
+    private final Counter inProgress;
+    private final Counter mismatches;
+    private final Counter rateLimited;
+
+    private static final Logger log = LoggerFactory.getLogger(WriteGuardFilter.class);
+
+    public WriteGuardFilter(ObjectMapper objectMapper, MeterRegistry registry,
+                            @Value("${filmorate.write-guard.enabled:false}") boolean enabled,
+                            @Value("${filmorate.write-guard.rate:20}") double rate,
+                            @Value("${filmorate.write-guard.burst:40}") int burst,
+                            @Value("${filmorate.write-guard.idempotency-ttl:10m}") Duration idempotencyTtl,
+                            @Value("${filmorate.write-guard.idempotency-max-keys:100000}") long maxKeys) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.rate = rate;
+        this.burst = burst;
+        this.responses = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterWrite(idempotencyTtl)
+                .build();
+        // Ведро, не тронутое дольше времени наполнения, полно - его можно забыть и создать заново.
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofNanos(rate > 0
+                        ? new TokenBucket(rate, burst, 0).refillNanos()
+                        : 1))
+                .build();
+        this.duplicates = shed(registry, "duplicate");
+        this.inProgress = shed(registry, "in_progress");
+        this.mismatches = shed(registry, "mismatch");
+        this.rateLimited = shed(registry, "rate_limited");
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !isGuarded(request);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String idempotencyKey = request.getHeader(IDEMPOTENCY_KEY);
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            if (acquire(request, response)) {
+                chain.doFilter(request, response);
+            }
+            return;
+        }
+        byte[] body = request.getInputStream().readAllBytes();
+        byte[] fingerprint = sha256(body);
+        String key = idempotencyKey + " " + request.getMethod() + " " + request.getRequestURI();
+        // Метка записи, ответ на которую ещё не готов.
+        Stored pending = new Stored(fingerprint, 0, null, null);
+        Stored previous = responses.asMap().putIfAbsent(key, pending);
+        if (previous != null && !MessageDigest.isEqual(previous.fingerprint, fingerprint)) {
+            mismatches.increment();
+            log.warn("Ключ {} уже использован с другим телом запроса: {} {}", idempotencyKey,
+                    request.getMethod(), request.getRequestURI());
+            reject(response, HttpStatus.UNPROCESSABLE_ENTITY,
+                    "Idempotency-Key уже использован с другим телом запроса.");
+            return;
+        }
+        if (previous != null && previous.isInProgress()) {
+            inProgress.increment();
+            log.warn("Запрос с ключом {} ещё выполняется: {} {}", idempotencyKey, request.getMethod(),
+                    request.getRequestURI());
+            reject(response, HttpStatus.CONFLICT, "Запрос с этим Idempotency-Key ещё выполняется.");
+            return;
+        }
+        if (previous != null) {
+            duplicates.increment();
+            log.debug("Повтор запроса с ключом {}: {} {}", idempotencyKey, request.getMethod(),
+                    request.getRequestURI());
+            replay(response, previous);
+            return;
+        }
+        boolean stored = false;
+        try {
+            if (!acquire(request, response)) {
+                return;
+            }
+            ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+            chain.doFilter(new CachedBodyRequest(request, body), wrapper);
+            if (wrapper.getStatus() < HttpStatus.INTERNAL_SERVER_ERROR.value()) {
+                responses.put(key, new Stored(fingerprint, wrapper.getStatus(), wrapper.getContentType(),
+                        wrapper.getContentAsByteArray()));
+                stored = true;
+            }
+            wrapper.copyBodyToResponse();
+        } finally {
+            if (!stored) {
+                responses.asMap().remove(key, pending);
+            }
+        }
+    }
+
+    private static boolean isGuarded(HttpServletRequest request) {
+        String method = request.getMethod();
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if ("PUT".equals(method) || "DELETE".equals(method)) {
+            return LIKE.matcher(path).matches() || FRIEND.matcher(path).matches();
+        }
+        return "POST".equals(method) && BATCH.matcher(path).matches();
+    }
+
+    private boolean acquire(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (rate <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        String address = request.getRemoteAddr();
+        long wait = buckets.get(address, a -> new TokenBucket(rate, burst, now)).tryAcquire(now);
+        if (wait == 0) {
+            return true;
+        }
+        rateLimited.increment();
+        log.warn("Превышена частота записей для {}: {} {}", address, request.getMethod(), request.getRequestURI());
+        response.setHeader(HttpHeaders.RETRY_AFTER,
+                String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999L))));
+        reject(response, HttpStatus.TOO_MANY_REQUESTS, "Слишком много запросов. Попробуйте повторить позже.");
+        return false;
+    }
+
+    private void replay(HttpServletResponse response, Stored stored) throws IOException {
+        response.setStatus(stored.status);
+        if (stored.contentType != null) {
+            response.setContentType(stored.contentType);
+        }
+        response.setHeader(REPLAYED, "true");
+        response.setContentLength(stored.body.length);
+        response.getOutputStream().write(stored.body);
+    }
+
+    private void reject(HttpServletResponse response, HttpStatus status, String error) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new ErrorResponse(error));
+    }
+
+    private static byte[] sha256(byte[] body) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(body);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Counter shed(MeterRegistry registry, String reason) {
+        return Counter.builder("filmorate.shed")
+                .description("Записи, отклонённые до контроллера")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    // status 0 - запрос ещё выполняется.
+    private record Stored(byte[] fingerprint, int status, String contentType, byte[] body) {
+        boolean isInProgress() {
+            return status == 0;
+        }
+    }
+
+    // Тело, прочитанное для отпечатка ключа, заново отдаётся контроллеру.
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            Charset charset = getCharacterEncoding() != null
+                    ? Charset.forName(getCharacterEncoding())
+                    : StandardCharsets.UTF_8;
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+    }
+}
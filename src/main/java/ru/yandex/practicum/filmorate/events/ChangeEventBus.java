@@ -0,0 +1,111 @@
+package ru.yandex.practicum.filmorate.events;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.EventsExpiredException;
+import ru.yandex.practicum.filmorate.model.ChangeEvent;
+import ru.yandex.practicum.filmorate.model.ChangeType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Кольцевой буфер событий изменений на capacity последних событий.
+ * <p>
+ * Писатель занимает номер через AtomicLong и кладёт событие в ячейку seq % capacity, без блокировок
+ * и без ожидания читателей: медленный читатель не тормозит запись, а его непрочитанные события
+ * перезаписываются, и чтение с такого номера заканчивается EventsExpiredException. Читатель идёт
+ * по номерам подряд и останавливается на ячейке, куда событие ещё не положено, поэтому не
+ * пропускает события, номера которых заняты, но запись ещё не закончена.
+ * <p>
+ * Хранилища в памяти публикуют события под блокировкой сущности, поэтому события одной сущности
+ * идут в порядке изменений. Файловые хранилища публикуют после сброса журнала, JDBC-хранилища - после
+ * фиксации транзакции: событие есть только у сохранённого изменения, а порядок изменений одной
+ * сущности задаёт её version.
+ */
+@Component
+public class ChangeEventBus {
+    private final AtomicReferenceArray<ChangeEvent> ring;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    public ChangeEventBus(@Value("${filmorate.events.capacity:65536}") int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        ring = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    public void publish(ChangeType type, long id, long relatedId, long version) {
+        long seq = claimed.incrementAndGet();
+        // Запись и проверка waiters - volatile, а ожидающий увеличивает waiters до проверки ячейки,
+        // поэтому хотя бы один из них увидит другого.
+        ring.set(slot(seq), new ChangeEvent(seq, type, id, relatedId, version, System.currentTimeMillis()));
+        if (waiters.get() > 0) {
+            lock.lock();
+            try {
+                published.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Номер последнего занятого события; 0 - событий ещё не было.
+    public long head() {
+        return claimed.get();
+    }
+
+    // Самое старое событие, которое ещё может быть в буфере.
+    public long oldest() {
+        return Math.max(1, claimed.get() - mask);
+    }
+
+    // До max событий подряд начиная с from; пустой список - события from ещё нет.
+    public List<ChangeEvent> read(long from, int max) {
+        List<ChangeEvent> events = new ArrayList<>(Math.min(max, 256));
+        for (long seq = from; events.size() < max && seq <= claimed.get(); seq++) {
+            ChangeEvent event = ring.getAcquire(slot(seq));
+            if (event == null || event.getSeq() < seq) {
+                break;
+            }
+            if (event.getSeq() > seq) {
+                throw new EventsExpiredException(from, oldest());
+            }
+            events.add(event);
+        }
+        return events;
+    }
+
+    // Ждёт публикации события seq не дольше timeoutMillis.
+    public void await(long seq, long timeoutMillis) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        waiters.incrementAndGet();
+        lock.lock();
+        try {
+            while (!isPublished(seq) && remaining > 0) {
+                remaining = published.awaitNanos(remaining);
+            }
+        } finally {
+            lock.unlock();
+            waiters.decrementAndGet();
+        }
+    }
+
+    private boolean isPublished(long seq) {
+        ChangeEvent event = ring.getAcquire(slot(seq));
+        return event != null && event.getSeq() >= seq;
+    }
+
+    private int slot(long seq) {
+        return (int) (seq & mask);
+    }
+}
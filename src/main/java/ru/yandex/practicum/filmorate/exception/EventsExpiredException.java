@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.exception;
+
+import lombok.Getter;
+
+// Запрошенные события уже вытеснены из буфера: потребитель отстал и должен перечитать данные.
+@Getter
+public class EventsExpiredException extends RuntimeException {
+    private final long requested;
+    private final long oldest;
+
+    public EventsExpiredException(long requested, long oldest) {
+        this.requested = requested;
+        this.oldest = oldest;
+    }
+}
@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.exception;
+
+import lombok.Getter;
+
+// Условное изменение отклонено: объект успел измениться после того, как клиент прочитал его версию.
+@Getter
+public class PreconditionFailedException extends RuntimeException {
+    private final String objectName;
+    private final String property;
+
+    public PreconditionFailedException(String objectName, String property) {
+        this.objectName = objectName;
+        this.property = property;
+    }
+}
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.exception;
+
+import lombok.Getter;
+
+// Открыто предельное число потоков событий: клиенту стоит повторить запрос через retryAfterSeconds.
+@Getter
+public class StreamsExhaustedException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public StreamsExhaustedException(long retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
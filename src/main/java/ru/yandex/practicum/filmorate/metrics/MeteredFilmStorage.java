@@ -0,0 +1,132 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmQuery;
+import ru.yandex.practicum.filmorate.model.TrendingPeriod;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.util.IdSet;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище фильмов с таймерами filmorate.storage{storage=films, operation=...} на get, getAll, add, update.
+ */
+public class MeteredFilmStorage implements FilmStorage {
+    private final FilmStorage delegate;
+    private final Timer get;
+    private final Timer getAll;
+    private final Timer add;
+    private final Timer update;
+
+    public MeteredFilmStorage(FilmStorage delegate, MeterRegistry registry) {
+        this.delegate = delegate;
+        get = timer(registry, "get");
+        getAll = timer(registry, "getAll");
+        add = timer(registry, "add");
+        update = timer(registry, "update");
+    }
+
+    @Override
+    public void add(Film film) {
+        long start = System.nanoTime();
+        try {
+            delegate.add(film);
+        } finally {
+            OperationTimers.record(add, start);
+        }
+    }
+
+    @Override
+    public Optional<Film> update(Film film, long expectedVersion) {
+        long start = System.nanoTime();
+        try {
+            return delegate.update(film, expectedVersion);
+        } finally {
+            OperationTimers.record(update, start);
+        }
+    }
+
+    @Override
+    public Optional<Film> remove(long id) {
+        return delegate.remove(id);
+    }
+
+    @Override
+    public Optional<Film> get(long id) {
+        long start = System.nanoTime();
+        try {
+            return delegate.get(id);
+        } finally {
+            OperationTimers.record(get, start);
+        }
+    }
+
+    @Override
+    public Collection<Film> getAll() {
+        long start = System.nanoTime();
+        try {
+            return delegate.getAll();
+        } finally {
+            OperationTimers.record(getAll, start);
+        }
+    }
+
+    @Override
+    public Stream<Film> getAllAfter(long afterId) {
+        return delegate.getAllAfter(afterId);
+    }
+
+    @Override
+    public Collection<Film> getTopRated(int count) {
+        return delegate.getTopRated(count);
+    }
+
+    @Override
+    public Stream<Film> findByAttributes(FilmQuery query) {
+        return delegate.findByAttributes(query);
+    }
+
+    @Override
+    public List<Film> search(String query, int count, boolean boostByLikes) {
+        return delegate.search(query, count, boostByLikes);
+    }
+
+    @Override
+    public Collection<Film> getTrending(TrendingPeriod period, int count) {
+        return delegate.getTrending(period, count);
+    }
+
+    @Override
+    public void refreshTrending() {
+        delegate.refreshTrending();
+    }
+
+    @Override
+    public IdSet getLikedFilms(long userId) {
+        return delegate.getLikedFilms(userId);
+    }
+
+    @Override
+    public boolean addLike(long filmId, long userId) {
+        return delegate.addLike(filmId, userId);
+    }
+
+    @Override
+    public boolean[] addLikes(long[] filmIds, long[] userIds) {
+        return delegate.addLikes(filmIds, userIds);
+    }
+
+    @Override
+    public boolean removeLike(long filmId, long userId) {
+        return delegate.removeLike(filmId, userId);
+    }
+
+    private static Timer timer(MeterRegistry registry, String operation) {
+        return OperationTimers.timer(registry, StorageMetricsPostProcessor.NAME, operation, "storage", "films");
+    }
+}
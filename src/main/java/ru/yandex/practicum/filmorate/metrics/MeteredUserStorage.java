@@ -0,0 +1,126 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище пользователей с таймерами filmorate.storage{storage=users, operation=...}
+ * на get, getAll, getUsersByIds, add, update.
+ */
+public class MeteredUserStorage implements UserStorage {
+    private final UserStorage delegate;
+    private final Timer get;
+    private final Timer getAll;
+    private final Timer getByIds;
+    private final Timer add;
+    private final Timer update;
+
+    public MeteredUserStorage(UserStorage delegate, MeterRegistry registry) {
+        this.delegate = delegate;
+        get = timer(registry, "get");
+        getAll = timer(registry, "getAll");
+        getByIds = timer(registry, "getUsersByIds");
+        add = timer(registry, "add");
+        update = timer(registry, "update");
+    }
+
+    @Override
+    public void add(User user) {
+        long start = System.nanoTime();
+        try {
+            delegate.add(user);
+        } finally {
+            OperationTimers.record(add, start);
+        }
+    }
+
+    @Override
+    public Optional<User> update(User user, long expectedVersion) {
+        long start = System.nanoTime();
+        try {
+            return delegate.update(user, expectedVersion);
+        } finally {
+            OperationTimers.record(update, start);
+        }
+    }
+
+    @Override
+    public Optional<User> remove(long id) {
+        return delegate.remove(id);
+    }
+
+    @Override
+    public Optional<User> getUserById(long id) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getUserById(id);
+        } finally {
+            OperationTimers.record(get, start);
+        }
+    }
+
+    @Override
+    public Collection<User> getUsersByIds(Collection<Long> ids) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getUsersByIds(ids);
+        } finally {
+            OperationTimers.record(getByIds, start);
+        }
+    }
+
+    @Override
+    public Collection<User> getAll() {
+        long start = System.nanoTime();
+        try {
+            return delegate.getAll();
+        } finally {
+            OperationTimers.record(getAll, start);
+        }
+    }
+
+    @Override
+    public Stream<User> getAllAfter(long afterId) {
+        return delegate.getAllAfter(afterId);
+    }
+
+    @Override
+    public Collection<User> getCommonFriends(long id1, long id2, int from, int size) {
+        return delegate.getCommonFriends(id1, id2, from, size);
+    }
+
+    @Override
+    public Optional<User> getUserByEmail(String email) {
+        return delegate.getUserByEmail(email);
+    }
+
+    @Override
+    public Optional<User> getUserByLogin(String login) {
+        return delegate.getUserByLogin(login);
+    }
+
+    @Override
+    public boolean addFriend(long id, long friendId) {
+        return delegate.addFriend(id, friendId);
+    }
+
+    @Override
+    public boolean[] addFriends(long[] ids, long[] friendIds) {
+        return delegate.addFriends(ids, friendIds);
+    }
+
+    @Override
+    public boolean removeFriend(long id, long friendId) {
+        return delegate.removeFriend(id, friendId);
+    }
+
+    private static Timer timer(MeterRegistry registry, String operation) {
+        return OperationTimers.timer(registry, StorageMetricsPostProcessor.NAME, operation, "storage", "users");
+    }
+}
@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Таймеры операций, созданные один раз при старте: на горячем пути только System.nanoTime()
+ * и Timer.record(long, TimeUnit), которые ничего не выделяют. Гистограмма задержек (HdrHistogram
+ * внутри Micrometer) публикуется бакетами для Prometheus и готовыми p50/p99/p99.9.
+ */
+public final class OperationTimers {
+    private OperationTimers() {
+    }
+
+    // tags - дополнительные пары ключ, значение.
+    public static Timer timer(MeterRegistry registry, String name, String operation, String... tags) {
+        return Timer.builder(name)
+                .tags(tags)
+                .tag("operation", operation)
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(1_000))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+    }
+
+    public static void record(Timer timer, long startNanos) {
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Таймеры операций сервисов: filmorate.service{operation=...}.
+ */
+@Component
+public class ServiceMetrics {
+    public static final String NAME = "filmorate.service";
+
+    private final Timer topRated;
+    private final Timer like;
+    private final Timer commonFriends;
+
+    public ServiceMetrics(MeterRegistry registry) {
+        topRated = OperationTimers.timer(registry, NAME, "findTopRated");
+        like = OperationTimers.timer(registry, NAME, "like");
+        commonFriends = OperationTimers.timer(registry, NAME, "getCommonFriends");
+    }
+
+    public void topRated(long startNanos) {
+        OperationTimers.record(topRated, startNanos);
+    }
+
+    public void like(long startNanos) {
+        OperationTimers.record(like, startNanos);
+    }
+
+    public void commonFriends(long startNanos) {
+        OperationTimers.record(commonFriends, startNanos);
+    }
+}
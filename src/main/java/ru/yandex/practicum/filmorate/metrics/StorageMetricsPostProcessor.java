@@ -0,0 +1,136 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.jdbc.JdbcFilmStorage;
+import ru.yandex.practicum.filmorate.storage.jdbc.JdbcUserStorage;
+import ru.yandex.practicum.filmorate.storage.shard.ShardedFilmStorage;
+import ru.yandex.practicum.filmorate.storage.shard.ShardedUserStorage;
+
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Оборачивает хранилища в таймеры и регистрирует датчики размеров. Выполняется раньше остальных
+ * обёрток (кэша), поэтому таймеры хранилища меряют само хранилище, а датчики видят его исходный класс:
+ * filmorate.entities{type=films|users}, filmorate.edges{type=likes|friends}, filmorate.index.size{index=...},
+ * а для хранилищ из нескольких частей - filmorate.shard.entities{type, shard} по каждой части.
+ * Хранилища в памяти ведут счётчики связей при каждом изменении, поэтому снятие метрик не обходит
+ * каталог; JDBC-хранилища считают строки запросом COUNT(*).
+ */
+@Component
+public class StorageMetricsPostProcessor implements BeanPostProcessor, Ordered {
+    public static final String NAME = "filmorate.storage";
+
+    private final ObjectProvider<MeterRegistry> registry;
+
+    public StorageMetricsPostProcessor(ObjectProvider<MeterRegistry> registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof FilmStorage films && !(bean instanceof MeteredFilmStorage)) {
+            MeterRegistry meters = registry.getObject();
+            if (bean instanceof InMemoryFilmStorage storage) {
+                Gauge.builder("filmorate.entities", storage, InMemoryFilmStorage::count)
+                        .tag("type", "films")
+                        .register(meters);
+                Gauge.builder("filmorate.edges", storage, InMemoryFilmStorage::countLikes)
+                        .tag("type", "likes")
+                        .register(meters);
+                Gauge.builder("filmorate.index.size", storage, InMemoryFilmStorage::popularityIndexSize)
+                        .tag("index", "popularity")
+                        .register(meters);
+                Gauge.builder("filmorate.index.size", storage, InMemoryFilmStorage::likedFilmsIndexSize)
+                        .tag("index", "likedFilms")
+                        .register(meters);
+                Gauge.builder("filmorate.index.size", storage, InMemoryFilmStorage::namesIndexSize)
+                        .tag("index", "names")
+                        .register(meters);
+                Gauge.builder("filmorate.index.size", storage, InMemoryFilmStorage::releaseDatesIndexSize)
+                        .tag("index", "releaseDates")
+                        .register(meters);
+                Gauge.builder("filmorate.index.size", storage, InMemoryFilmStorage::durationsIndexSize)
+                        .tag("index", "durations")
+                        .register(meters);
+                Gauge.builder("filmorate.index.size", storage, InMemoryFilmStorage::textIndexSize)
+                        .tag("index", "terms")
+                        .register(meters);
+            }
+            if (bean instanceof ShardedFilmStorage storage) {
+                registerTotals(meters, "films", "likes", storage,
+                        s -> s.shards().stream().mapToLong(InMemoryFilmStorage::count).sum(),
+                        s -> s.shards().stream().mapToLong(InMemoryFilmStorage::countLikes).sum());
+                registerShards(meters, "films", storage.shards(), InMemoryFilmStorage::count);
+            }
+            if (bean instanceof JdbcFilmStorage storage) {
+                registerTotals(meters, "films", "likes", storage, JdbcFilmStorage::count, JdbcFilmStorage::countLikes);
+            }
+            return new MeteredFilmStorage(films, meters);
+        }
+        if (bean instanceof UserStorage users && !(bean instanceof MeteredUserStorage)) {
+            MeterRegistry meters = registry.getObject();
+            if (bean instanceof InMemoryUserStorage storage) {
+                Gauge.builder("filmorate.entities", storage, InMemoryUserStorage::count)
+                        .tag("type", "users")
+                        .register(meters);
+                Gauge.builder("filmorate.edges", storage, InMemoryUserStorage::countFriendEdges)
+                        .tag("type", "friends")
+                        .register(meters);
+                Gauge.builder("filmorate.index.size", storage, InMemoryUserStorage::emailIndexSize)
+                        .tag("index", "emails")
+                        .register(meters);
+                Gauge.builder("filmorate.index.size", storage, InMemoryUserStorage::loginIndexSize)
+                        .tag("index", "logins")
+                        .register(meters);
+            }
+            if (bean instanceof ShardedUserStorage storage) {
+                registerTotals(meters, "users", "friends", storage,
+                        s -> s.shards().stream().mapToLong(InMemoryUserStorage::count).sum(),
+                        s -> s.shards().stream().mapToLong(InMemoryUserStorage::countFriendEdges).sum());
+                registerShards(meters, "users", storage.shards(), InMemoryUserStorage::count);
+            }
+            if (bean instanceof JdbcUserStorage storage) {
+                registerTotals(meters, "users", "friends", storage, JdbcUserStorage::count,
+                        JdbcUserStorage::countFriendEdges);
+            }
+            return new MeteredUserStorage(users, meters);
+        }
+        return bean;
+    }
+
+    // Датчик держит хранилище по слабой ссылке, поэтому к нему привязан сам бин, а не временный объект.
+    private static <S> void registerTotals(MeterRegistry meters, String type, String edgeType, S storage,
+                                           ToDoubleFunction<S> count, ToDoubleFunction<S> countEdges) {
+        Gauge.builder("filmorate.entities", storage, count)
+                .tag("type", type)
+                .register(meters);
+        Gauge.builder("filmorate.edges", storage, countEdges)
+                .tag("type", edgeType)
+                .register(meters);
+    }
+
+    private static <S> void registerShards(MeterRegistry meters, String type, List<? extends S> shards,
+                                           ToDoubleFunction<S> count) {
+        for (int i = 0; i < shards.size(); i++) {
+            Gauge.builder("filmorate.shard.entities", shards.get(i), count)
+                    .tag("type", type)
+                    .tag("shard", String.valueOf(i))
+                    .register(meters);
+        }
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
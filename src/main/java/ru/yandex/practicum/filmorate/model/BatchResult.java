@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// Результат одного элемента пакетного запроса; результаты идут в порядке элементов запроса.
+@Getter
+@RequiredArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchResult {
+    public static final BatchResult ADDED = new BatchResult(Status.ADDED, null);
+    public static final BatchResult UNCHANGED = new BatchResult(Status.UNCHANGED, null);
+
+    private final Status status;
+    private final String error;
+
+    public static BatchResult notFound(String objectName, long id) {
+        return new BatchResult(Status.NOT_FOUND, String.format("Не найден %s: %d", objectName, id));
+    }
+
+    public enum Status {
+        ADDED,
+        UNCHANGED,
+        NOT_FOUND
+    }
+}
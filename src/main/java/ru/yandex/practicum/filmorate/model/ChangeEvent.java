@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// Событие потока изменений: seq - номер по порядку, version - версия сущности id после изменения,
+// at - время в миллисекундах от эпохи.
+@Getter
+@RequiredArgsConstructor
+public class ChangeEvent {
+    private final long seq;
+    private final ChangeType type;
+    private final long id;
+    private final long relatedId;
+    private final long version;
+    private final long at;
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+// Вид изменения в потоке событий. Для лайков id - фильм, relatedId - пользователь;
+// для дружбы id и relatedId - оба пользователя; для остальных relatedId = 0.
+public enum ChangeType {
+    FILM_CREATED,
+    FILM_UPDATED,
+    FILM_REMOVED,
+    LIKE_ADDED,
+    LIKE_REMOVED,
+    USER_CREATED,
+    USER_UPDATED,
+    USER_REMOVED,
+    FRIEND_ADDED,
+    FRIEND_REMOVED
+}
@@ -1,15 +1,18 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import ru.yandex.practicum.filmorate.util.IdSet;
 
 import java.time.LocalDate;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Data
 @AllArgsConstructor
+@JsonFilter("projection")
 @EqualsAndHashCode(of = { "id" })
 public class Film {
     private long id;
@@ -18,5 +21,8 @@ public class Film {
     private LocalDate releaseDate;
     private int duration;
 
-    private final Set<Long> likes = new HashSet<>();
+    private final IdSet likes = new IdSet();
+    // Растёт при каждом изменении, включая лайки; в теле ответа не выводится, отдаётся в ETag.
+    @JsonIgnore
+    private final AtomicLong version = new AtomicLong();
 }
@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.Locale;
+
+// Условия выборки фильмов: префикс названия без учёта регистра и диапазоны даты выхода и длительности
+// включительно; null - условие не задано.
+@Getter
+@RequiredArgsConstructor
+public class FilmQuery {
+    private final String namePrefix;
+    private final LocalDate releasedFrom;
+    private final LocalDate releasedTo;
+    private final Integer minDuration;
+    private final Integer maxDuration;
+
+    // Ключ индекса названий: по нему же сравнивается префикс.
+    public static String nameKey(String name) {
+        return name != null ? name.toLowerCase(Locale.ROOT) : null;
+    }
+
+    public boolean hasReleaseRange() {
+        return releasedFrom != null || releasedTo != null;
+    }
+
+    public boolean hasDurationRange() {
+        return minDuration != null || maxDuration != null;
+    }
+
+    public boolean matches(Film film) {
+        if (namePrefix != null && (film.getName() == null
+                || !nameKey(film.getName()).startsWith(nameKey(namePrefix)))) {
+            return false;
+        }
+        LocalDate released = film.getReleaseDate();
+        if (hasReleaseRange() && (released == null
+                || releasedFrom != null && released.isBefore(releasedFrom)
+                || releasedTo != null && released.isAfter(releasedTo))) {
+            return false;
+        }
+        return (minDuration == null || film.getDuration() >= minDuration)
+                && (maxDuration == null || film.getDuration() <= maxDuration);
+    }
+}
@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+// Страница выдачи по курсору: nextCursor - id последнего элемента, если дальше есть ещё, иначе null.
+@Getter
+@RequiredArgsConstructor
+public class Page<T> {
+    private final List<T> items;
+    private final Long nextCursor;
+
+    public static <T> Page<T> of(List<T> itemsAndOneMore, int limit, ToLongFunction<T> id) {
+        if (itemsAndOneMore.size() <= limit) {
+            return new Page<>(itemsAndOneMore, null);
+        }
+        List<T> items = itemsAndOneMore.subList(0, limit);
+        return new Page<>(items, id.applyAsLong(items.get(limit - 1)));
+    }
+}
@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+
+// Окно для рейтинга "популярно за период": значение параметра period и длительность.
+@Getter
+@RequiredArgsConstructor
+public enum TrendingPeriod {
+    HOUR("1h", Duration.ofHours(1)),
+    DAY("24h", Duration.ofDays(1)),
+    WEEK("7d", Duration.ofDays(7));
+
+    private final String code;
+    private final Duration duration;
+
+    public static Optional<TrendingPeriod> of(String code) {
+        return Arrays.stream(values()).filter(p -> p.code.equals(code)).findFirst();
+    }
+}
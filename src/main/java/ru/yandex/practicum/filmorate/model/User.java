@@ -1,15 +1,18 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import ru.yandex.practicum.filmorate.util.IdSet;
 
 import java.time.LocalDate;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Data
 @AllArgsConstructor
+@JsonFilter("projection")
 @EqualsAndHashCode(of = { "email" })
 public class User {
     private long id;
@@ -18,5 +21,8 @@ public class User {
     private String name;
     private LocalDate birthday;
 
-    private final Set<Long> friends = new HashSet<>();
+    private final IdSet friends = new IdSet();
+    // Растёт при каждом изменении, включая друзей; в теле ответа не выводится, отдаётся в ETag.
+    @JsonIgnore
+    private final AtomicLong version = new AtomicLong();
 }
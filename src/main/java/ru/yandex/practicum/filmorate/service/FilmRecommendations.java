@@ -0,0 +1,170 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.util.IdSet;
+import ru.yandex.practicum.filmorate.util.LongIntMap;
+import ru.yandex.practicum.filmorate.util.VersionStripes;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Рекомендации фильмов по лайкам: пользователи с наибольшим числом общих лайков ("соседи")
+ * и фильмы, которые понравились им, но ещё не отмечены пользователем.
+ * <p>
+ * Соседи ищутся по обратному индексу хранилища (пользователь -> фильмы): для каждого своего фильма
+ * перебираются поставившие ему лайк, общие лайки считаются в LongIntMap. Фильмы берутся по возрастанию
+ * числа лайков - редкие совпадения говорят о вкусе больше, чем лайк хиту, - пока не исчерпан бюджет
+ * MAX_EDGES. Затем у MAX_NEIGHBOURS лучших соседей их фильмы набирают вес, равный числу общих лайков.
+ * <p>
+ * Результат кэшируется на refresh-interval (Caffeine, не больше cache.max-size записей): по его
+ * истечении запись выбрасывается и пересчитывается при следующем запросе. Свой лайк сбрасывает запись
+ * пользователя сразу, чужие учитываются при следующем пересчёте. С precompute=true записи живут два
+ * интервала, а фоновый проход раз в интервал пересчитывает записи пользователей, запрашивавших
+ * рекомендации за последний интервал, и запросы не ждут расчёта; остальные записи просто истекают.
+ */
+@Component
+public class FilmRecommendations implements DisposableBean {
+    public static final int MAX_COUNT = 100;
+    static final int MAX_NEIGHBOURS = 50;
+    static final int MAX_EDGES = 1 << 20;
+
+    private final FilmStorage filmStorage;
+    private final long refreshNanos;
+    private final Cache<Long, Entry> cache;
+    private final VersionStripes versions = new VersionStripes();
+    private final ScheduledExecutorService scheduler;
+
+    private static final Logger log = LoggerFactory.getLogger(FilmRecommendations.class);
+
+    public FilmRecommendations(FilmStorage filmStorage,
+                               @Value("${filmorate.recommendations.refresh-interval:1m}") Duration refreshInterval,
+                               @Value("${filmorate.recommendations.precompute:false}") boolean precompute,
+                               @Value("${filmorate.recommendations.cache.max-size:100000}") long maxSize) {
+        this.filmStorage = filmStorage;
+        this.refreshNanos = refreshInterval.toNanos();
+        // С фоновым пересчётом запись должна дожить до следующего прохода, который её перезапишет.
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(precompute ? refreshInterval.multipliedBy(2) : refreshInterval)
+                .build();
+        if (!precompute) {
+            scheduler = null;
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "recommendations-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = refreshInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::refresh, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // До MAX_COUNT id рекомендованных фильмов, лучшие первыми.
+    public long[] recommend(long userId) {
+        Entry entry = cache.getIfPresent(userId);
+        long now = System.nanoTime();
+        if (entry != null) {
+            entry.lastAccess = now;
+            return entry.ranked;
+        }
+        return computeAndCache(userId, now);
+    }
+
+    public void likesChanged(long userId) {
+        versions.invalidate(cache.asMap(), userId);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private long[] computeAndCache(long userId, long lastAccess) {
+        long version = versions.get(userId);
+        long[] ranked = compute(userId);
+        versions.putIfUnchanged(cache.asMap(), userId, version, new Entry(ranked, lastAccess));
+        return ranked;
+    }
+
+    // Пересчёт записей, которые запрашивались с прошлого прохода; остальные истекают сами.
+    private void refresh() {
+        long start = System.nanoTime();
+        int refreshed = 0;
+        for (Map.Entry<Long, Entry> e : cache.asMap().entrySet()) {
+            if (start - e.getValue().lastAccess > refreshNanos) {
+                continue;
+            }
+            try {
+                computeAndCache(e.getKey(), e.getValue().lastAccess);
+                refreshed++;
+            } catch (RuntimeException ex) {
+                log.warn("Не удалось пересчитать рекомендации пользователя id={}", e.getKey(), ex);
+            }
+        }
+        if (refreshed > 0) {
+            log.debug("Рекомендации пересчитаны для {} пользователей, {} мс.", refreshed,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    private long[] compute(long userId) {
+        IdSet own = filmStorage.getLikedFilms(userId);
+        IdSet[] likers = Arrays.stream(own.toLongArray())
+                .mapToObj(filmStorage::get)
+                .flatMap(f -> f.map(Film::getLikes).stream())
+                .sorted(Comparator.comparingInt(IdSet::size))
+                .toArray(IdSet[]::new);
+
+        LongIntMap overlap = new LongIntMap();
+        long edges = 0;
+        for (IdSet users : likers) {
+            if (edges > 0 && edges + users.size() > MAX_EDGES) {
+                break;
+            }
+            edges += users.size();
+            users.forEachId(other -> {
+                if (other != userId) {
+                    overlap.increment(other);
+                }
+            });
+        }
+
+        LongIntMap scores = new LongIntMap();
+        for (long neighbour : overlap.top(MAX_NEIGHBOURS)) {
+            int weight = overlap.get(neighbour);
+            filmStorage.getLikedFilms(neighbour).forEachId(filmId -> {
+                if (!own.contains(filmId)) {
+                    scores.add(filmId, weight);
+                }
+            });
+        }
+        return scores.top(MAX_COUNT);
+    }
+
+    private static final class Entry {
+        private final long[] ranked;
+        private volatile long lastAccess;
+
+        Entry(long[] ranked, long lastAccess) {
+            this.ranked = ranked;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -6,27 +6,89 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.metrics.ServiceMetrics;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.ErrMsg;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmQuery;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.Page;
+import ru.yandex.practicum.filmorate.model.TrendingPeriod;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.TrendingIndex;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.util.IdLookup;
 
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class FilmService {
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
+    private final FilmRecommendations recommendations;
+    private final ServiceMetrics metrics;
+    // Номер изменения фильмов и лайков; растёт после записи в хранилище, поэтому ответ, построенный
+    // после чтения номера, не старше этого номера (см. ResponseCache).
+    private final AtomicLong changes = new AtomicLong();
 
     private static final Logger log = LoggerFactory.getLogger(FilmService.class);
 
+    private static final int MAX_SEARCH_COUNT = 100;
+
+    private static final ErrMsg ERR_MSG_BAD_CURSOR = new ErrMsg(
+            "after/limit",
+            "Курсор не может быть отрицательным, размер страницы должен быть положительным.");
+    private static final ErrMsg ERR_MSG_BAD_COUNT = new ErrMsg(
+            "count",
+            "Количество должно быть от 1 до " + FilmRecommendations.MAX_COUNT + ".");
+    private static final ErrMsg ERR_MSG_BAD_SEARCH_COUNT = new ErrMsg(
+            "count",
+            "Количество должно быть от 1 до " + MAX_SEARCH_COUNT + ".");
+    private static final ErrMsg ERR_MSG_BAD_TRENDING_COUNT = new ErrMsg(
+            "count",
+            "Количество должно быть от 1 до " + TrendingIndex.MAX_COUNT + ".");
+    private static final ErrMsg ERR_MSG_BAD_LIMIT = new ErrMsg(
+            "limit",
+            "Размер выдачи должен быть положительным.");
+    private static final ErrMsg ERR_MSG_BAD_RELEASE_RANGE = new ErrMsg(
+            "releasedFrom/releasedTo",
+            "Начало диапазона дат не может быть позже конца.");
+    private static final ErrMsg ERR_MSG_BAD_DURATION_RANGE = new ErrMsg(
+            "minDuration/maxDuration",
+            "Минимальная продолжительность не может быть больше максимальной.");
+    private static final ErrMsg ERR_MSG_BLANK_QUERY = new ErrMsg(
+            "q",
+            "Поисковый запрос не может быть пустым.");
+    private static final ErrMsg ERR_MSG_BAD_PERIOD = new ErrMsg(
+            "period",
+            "Период должен быть одним из: " + Arrays.stream(TrendingPeriod.values())
+                    .map(TrendingPeriod::getCode)
+                    .collect(Collectors.joining(", ")) + ".");
+
     public Collection<Film> findAll() {
         return filmStorage.getAll();
     }
 
+    // Фильмы с id больше after, не больше limit штук.
+    public Page<Film> findPage(long after, int limit) {
+        validateCursor(after, limit);
+        return Page.of(filmStorage.getAllAfter(after).limit(limit + 1L).toList(), limit, Film::getId);
+    }
+
+    public Stream<Film> stream(long after, int limit) {
+        validateCursor(after, limit);
+        return filmStorage.getAllAfter(after).limit(limit);
+    }
+
     public Film findById(long id) {
         return filmStorage.get(id).orElseThrow(
                 () -> new NotFoundException(Film.class.getSimpleName(), String.valueOf(id))
@@ -34,32 +96,97 @@ public class FilmService {
     }
 
     public Collection<Film> findTopRated(int count) {
-        return filmStorage.getAll().stream()
-                //.sorted(Comparator.comparing(f -> f.getLikes().size()).reserved())
-                .sorted((f1, f2) -> Integer.compare(f2.getLikes().size(), f1.getLikes().size()))
-                .limit(count)
-                .toList();
+        long start = System.nanoTime();
+        try {
+            return filmStorage.getTopRated(count);
+        } finally {
+            metrics.topRated(start);
+        }
+    }
+
+    // Не больше limit фильмов, подходящих под query, без полного обхода каталога.
+    public Collection<Film> findByAttributes(FilmQuery query, int limit) {
+        ErrMsg errMsg = null;
+        if (limit <= 0) {
+            errMsg = ERR_MSG_BAD_LIMIT;
+        } else if (query.getReleasedFrom() != null && query.getReleasedTo() != null
+                && query.getReleasedFrom().isAfter(query.getReleasedTo())) {
+            errMsg = ERR_MSG_BAD_RELEASE_RANGE;
+        } else if (query.getMinDuration() != null && query.getMaxDuration() != null
+                && query.getMinDuration() > query.getMaxDuration()) {
+            errMsg = ERR_MSG_BAD_DURATION_RANGE;
+        }
+        if (errMsg != null) {
+            log.warn("Ошибка валидации {}. {}", errMsg.getParam(), errMsg.getMsg());
+            throw new ValidationException(errMsg.getParam(), errMsg.getMsg());
+        }
+        try (Stream<Film> found = filmStorage.findByAttributes(query)) {
+            return found.limit(limit).toList();
+        }
+    }
+
+    // Поиск по названию и описанию, лучшие совпадения первыми.
+    public List<Film> search(String query, int count, boolean boostByLikes) {
+        ErrMsg errMsg = null;
+        if (query == null || query.isBlank()) {
+            errMsg = ERR_MSG_BLANK_QUERY;
+        } else if (count <= 0 || count > MAX_SEARCH_COUNT) {
+            errMsg = ERR_MSG_BAD_SEARCH_COUNT;
+        }
+        if (errMsg != null) {
+            log.warn("Ошибка валидации {}. {}", errMsg.getParam(), errMsg.getMsg());
+            throw new ValidationException(errMsg.getParam(), errMsg.getMsg());
+        }
+        return filmStorage.search(query, count, boostByLikes);
+    }
+
+    // Самые популярные фильмы за последний период (1h, 24h, 7d); рейтинг обновляется планировщиком.
+    public Collection<Film> findTrending(int count, String period) {
+        TrendingPeriod trendingPeriod = TrendingPeriod.of(period).orElseThrow(() -> {
+            log.warn("Ошибка валидации {}. {}", ERR_MSG_BAD_PERIOD.getParam(), ERR_MSG_BAD_PERIOD.getMsg());
+            return new ValidationException(ERR_MSG_BAD_PERIOD.getParam(), ERR_MSG_BAD_PERIOD.getMsg());
+        });
+        if (count <= 0 || count > TrendingIndex.MAX_COUNT) {
+            log.warn("Ошибка валидации {}. {}", ERR_MSG_BAD_TRENDING_COUNT.getParam(),
+                    ERR_MSG_BAD_TRENDING_COUNT.getMsg());
+            throw new ValidationException(ERR_MSG_BAD_TRENDING_COUNT.getParam(), ERR_MSG_BAD_TRENDING_COUNT.getMsg());
+        }
+        return filmStorage.getTrending(trendingPeriod, count);
+    }
+
+    public long changes() {
+        return changes.get();
     }
 
     public Film create(Film film) {
         validateFilm(film);
         filmStorage.add(film);
-        log.info("Фильм id=" + film.getId() + " создан.");
+        changes.incrementAndGet();
+        log.info("Фильм id={} создан.", film.getId());
         return film;
     }
 
-    public Film update(Film newFilm) {
+    // expectedVersion - версия, от которой клиент вносил изменения (Versions.ANY - без проверки).
+    public Film update(Film newFilm, long expectedVersion) {
         validateFilm(newFilm);
-        Film oldFilm = filmStorage.get(newFilm.getId()).orElseThrow(
+        filmStorage.update(newFilm, expectedVersion).orElseThrow(
                 () -> new NotFoundException(Film.class.getSimpleName(), String.valueOf(newFilm.getId()))
         );
-        newFilm.getLikes().addAll(oldFilm.getLikes());
-        filmStorage.update(newFilm);
-        log.info("Фильм id=" + newFilm.getId() + " обновлён.");
+        changes.incrementAndGet();
+        log.info("Фильм id={} обновлён.", newFilm.getId());
         return newFilm;
     }
 
     public long like(long filmId, long userId) {
+        long start = System.nanoTime();
+        try {
+            return addLike(filmId, userId);
+        } finally {
+            metrics.like(start);
+        }
+    }
+
+    private long addLike(long filmId, long userId) {
         Film film = filmStorage.get(filmId).orElseThrow(
                 () -> new NotFoundException(Film.class.getSimpleName(), String.valueOf(filmId))
         );
@@ -67,10 +194,66 @@ public class FilmService {
                 () -> new NotFoundException(User.class.getSimpleName(), String.valueOf(userId))
         );
 
-        film.getLikes().add(userId);
-        filmStorage.update(film);
-        log.info("Пользователь id=" + userId + " поставил лайк фильму id=" + filmId + ".");
-        return film.getLikes().size();
+        if (filmStorage.addLike(filmId, userId)) {
+            changes.incrementAndGet();
+            recommendations.likesChanged(userId);
+        }
+        log.info("Пользователь id={} поставил лайк фильму id={}.", userId, filmId);
+        return likesCount(film);
+    }
+
+    // Все id пакета проверяются за один проход, найденные лайки применяются одним вызовом хранилища.
+    public List<BatchResult> likeAll(List<Like> likes) {
+        IdLookup films = new IdLookup(id -> filmStorage.get(id).isPresent());
+        IdLookup users = new IdLookup(id -> userStorage.getUserById(id).isPresent());
+        BatchResult[] results = new BatchResult[likes.size()];
+        long[] filmIds = new long[likes.size()];
+        long[] userIds = new long[likes.size()];
+        int[] positions = new int[likes.size()];
+        int count = 0;
+        for (int i = 0; i < likes.size(); i++) {
+            Like like = likes.get(i);
+            if (!films.exists(like.getFilmId())) {
+                results[i] = BatchResult.notFound(Film.class.getSimpleName(), like.getFilmId());
+            } else if (!users.exists(like.getUserId())) {
+                results[i] = BatchResult.notFound(User.class.getSimpleName(), like.getUserId());
+            } else {
+                filmIds[count] = like.getFilmId();
+                userIds[count] = like.getUserId();
+                positions[count++] = i;
+            }
+        }
+
+        boolean[] added = filmStorage.addLikes(Arrays.copyOf(filmIds, count), Arrays.copyOf(userIds, count));
+        int addedCount = 0;
+        for (int k = 0; k < count; k++) {
+            results[positions[k]] = added[k] ? BatchResult.ADDED : BatchResult.UNCHANGED;
+            if (added[k]) {
+                recommendations.likesChanged(userIds[k]);
+                addedCount++;
+            }
+        }
+        if (addedCount > 0) {
+            changes.incrementAndGet();
+        }
+        log.info("Пакет лайков: добавлено {}, без изменений {}, не найдено {}.",
+                addedCount, count - addedCount, likes.size() - count);
+        return Arrays.asList(results);
+    }
+
+    public Collection<Film> getRecommendations(long userId, int count) {
+        if (count <= 0 || count > FilmRecommendations.MAX_COUNT) {
+            log.warn("Ошибка валидации {}. {}", ERR_MSG_BAD_COUNT.getParam(), ERR_MSG_BAD_COUNT.getMsg());
+            throw new ValidationException(ERR_MSG_BAD_COUNT.getParam(), ERR_MSG_BAD_COUNT.getMsg());
+        }
+        userStorage.getUserById(userId).orElseThrow(
+                () -> new NotFoundException(User.class.getSimpleName(), String.valueOf(userId))
+        );
+        return Arrays.stream(recommendations.recommend(userId))
+                .mapToObj(filmStorage::get)
+                .flatMap(Optional::stream)
+                .limit(count)
+                .toList();
     }
 
     public long unlike(long filmId, long userId) {
@@ -81,10 +264,24 @@ public class FilmService {
                 () -> new NotFoundException(User.class.getSimpleName(), String.valueOf(userId))
         );
 
-        film.getLikes().remove(userId);
-        filmStorage.update(film);
-        log.info("Пользователь id=" + userId + " убрал лайк фильма id=" + filmId + ".");
-        return film.getLikes().size();
+        if (filmStorage.removeLike(filmId, userId)) {
+            changes.incrementAndGet();
+            recommendations.likesChanged(userId);
+        }
+        log.info("Пользователь id={} убрал лайк фильма id={}.", userId, filmId);
+        return likesCount(film);
+    }
+
+    // Хранилище может отдавать копии (база, кэш) - число лайков перечитывается после изменения.
+    private long likesCount(Film film) {
+        return filmStorage.get(film.getId()).orElse(film).getLikes().size();
+    }
+
+    private static void validateCursor(long after, int limit) {
+        if (after < 0 || limit <= 0) {
+            log.warn("Ошибка валидации {}. {}", ERR_MSG_BAD_CURSOR.getParam(), ERR_MSG_BAD_CURSOR.getMsg());
+            throw new ValidationException(ERR_MSG_BAD_CURSOR.getParam(), ERR_MSG_BAD_CURSOR.getMsg());
+        }
     }
 
     private static void validateFilm(Film film) {
@@ -121,7 +318,7 @@ public class FilmService {
         }
 
         if (errMsg != null) {
-            log.warn(String.format("Ошибка валидации %s. %s", errMsg.getParam(), errMsg.getMsg()));
+            log.warn("Ошибка валидации {}. {}", errMsg.getParam(), errMsg.getMsg());
             throw new ValidationException(errMsg.getParam(), errMsg.getMsg());
         }
         log.trace("Валидации объекта Film прошла успешно.");
@@ -0,0 +1,142 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.util.IdSet;
+import ru.yandex.practicum.filmorate.util.LongIntMap;
+import ru.yandex.practicum.filmorate.util.VersionStripes;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * "Возможно, вы знакомы": друзья друзей, которые ещё не в друзьях, по убыванию числа общих друзей.
+ * <p>
+ * Друзья друзей считаются параллельно в ForkJoinPool: список друзей делится на части с равным числом
+ * связей, пока на часть приходится больше LEAF_EDGES, каждая часть считает своё, результаты складываются.
+ * Чтобы время ответа не росло без предела у пользователей с тысячами друзей, просматривается
+ * не больше MAX_EDGES связей второго уровня (друзья берутся по возрастанию id до исчерпания бюджета).
+ * <p>
+ * Результат кэшируется для каждого пользователя (Caffeine: не больше cache.max-size записей, запись
+ * без обращений дольше cache.expire-after-access выбрасывается). Изменение дружбы a-b меняет второй
+ * круг только у a, b и их друзей, поэтому сбрасываются только их записи; расчёт, начатый до изменения,
+ * устаревший результат в кэш не кладёт ({@link VersionStripes}).
+ */
+@Component
+public class FriendSuggestions {
+    public static final int MAX_COUNT = 100;
+    static final int MAX_EDGES = 1 << 20;
+    static final int LEAF_EDGES = 1 << 14;
+
+    private final UserStorage userStorage;
+    private final Cache<Long, long[]> cache;
+    private final VersionStripes versions = new VersionStripes();
+
+    public FriendSuggestions(UserStorage userStorage,
+                             @Value("${filmorate.suggestions.cache.max-size:100000}") long maxSize,
+                             @Value("${filmorate.suggestions.cache.expire-after-access:10m}") Duration expireAfterAccess) {
+        this.userStorage = userStorage;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(expireAfterAccess)
+                .build();
+    }
+
+    // До MAX_COUNT id предложенных пользователей, лучшие первыми.
+    public long[] suggest(User user) {
+        long id = user.getId();
+        long[] cached = cache.getIfPresent(id);
+        if (cached != null) {
+            return cached;
+        }
+        long version = versions.get(id);
+        long[] ranked = compute(user).top(MAX_COUNT);
+        versions.putIfUnchanged(cache.asMap(), id, version, ranked);
+        return ranked;
+    }
+
+    public void friendshipChanged(long id, long friendId) {
+        invalidate(id);
+        invalidate(friendId);
+        userStorage.getUserById(id).ifPresent(u -> u.getFriends().forEachId(this::invalidate));
+        userStorage.getUserById(friendId).ifPresent(u -> u.getFriends().forEachId(this::invalidate));
+    }
+
+    private void invalidate(long id) {
+        versions.invalidate(cache.asMap(), id);
+    }
+
+    private LongIntMap compute(User user) {
+        long[] friendIds = user.getFriends().toSortedArray();
+        IdSet[] friendSets = new IdSet[friendIds.length];
+        long[] edgesBefore = new long[friendIds.length + 1];
+        int n = 0;
+        for (long friendId : friendIds) {
+            IdSet friends = userStorage.getUserById(friendId).map(User::getFriends).orElse(null);
+            if (friends == null) {
+                continue;
+            }
+            if (n > 0 && edgesBefore[n] + friends.size() > MAX_EDGES) {
+                break;
+            }
+            friendSets[n] = friends;
+            edgesBefore[n + 1] = edgesBefore[n] + friends.size();
+            n++;
+        }
+        TwoHop task = new TwoHop(user.getId(), user.getFriends(), friendSets, edgesBefore, 0, n);
+        return edgesBefore[n] <= LEAF_EDGES ? task.compute() : ForkJoinPool.commonPool().invoke(task);
+    }
+
+    private static final class TwoHop extends RecursiveTask<LongIntMap> {
+        private final long self;
+        private final IdSet own;
+        private final IdSet[] friendSets;
+        private final long[] edgesBefore;
+        private final int from;
+        private final int to;
+
+        TwoHop(long self, IdSet own, IdSet[] friendSets, long[] edgesBefore, int from, int to) {
+            this.self = self;
+            this.own = own;
+            this.friendSets = friendSets;
+            this.edgesBefore = edgesBefore;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected LongIntMap compute() {
+            long edges = edgesBefore[to] - edgesBefore[from];
+            if (edges <= LEAF_EDGES || to - from < 2) {
+                LongIntMap counts = new LongIntMap((int) Math.min(edges, LEAF_EDGES));
+                for (int i = from; i < to; i++) {
+                    friendSets[i].forEachId(candidate -> {
+                        if (candidate != self && !own.contains(candidate)) {
+                            counts.increment(candidate);
+                        }
+                    });
+                }
+                return counts;
+            }
+            int mid = Arrays.binarySearch(edgesBefore, from + 1, to, (edgesBefore[from] + edgesBefore[to]) >>> 1);
+            mid = Math.min(Math.max(mid >= 0 ? mid : -mid - 1, from + 1), to - 1);
+            TwoHop left = new TwoHop(self, own, friendSets, edgesBefore, from, mid);
+            TwoHop right = new TwoHop(self, own, friendSets, edgesBefore, mid, to);
+            left.fork();
+            LongIntMap counts = right.compute();
+            LongIntMap leftCounts = left.join();
+            if (leftCounts.size() > counts.size()) {
+                leftCounts.addAll(counts);
+                return leftCounts;
+            }
+            counts.addAll(leftCounts);
+            return counts;
+        }
+    }
+}
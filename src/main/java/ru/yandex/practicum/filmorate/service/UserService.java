@@ -6,20 +6,29 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.metrics.ServiceMetrics;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.ErrMsg;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.util.IdLookup;
 
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class UserService {
 
     private final UserStorage userStorage;
+    private final FriendSuggestions friendSuggestions;
+    private final ServiceMetrics metrics;
 
     private static final Logger log = LoggerFactory.getLogger(UserService.class);
 
@@ -42,6 +51,16 @@ public class UserService {
             "User.birthday",
             "Некорректная дата.");
 
+    private static final ErrMsg ERR_MSG_BAD_PAGE = new ErrMsg(
+            "from/size",
+            "Смещение не может быть отрицательным, размер страницы должен быть положительным.");
+    private static final ErrMsg ERR_MSG_BAD_COUNT = new ErrMsg(
+            "count",
+            "Количество должно быть от 1 до " + FriendSuggestions.MAX_COUNT + ".");
+    private static final ErrMsg ERR_MSG_BAD_CURSOR = new ErrMsg(
+            "after/limit",
+            "Курсор не может быть отрицательным, размер страницы должен быть положительным.");
+
     private static final Pattern EMAIL = Pattern.compile("^[A-Z0-9._%+-]+@[A-Z0-9.-]+\\.[A-Z]{2,6}$",
             Pattern.CASE_INSENSITIVE);
 
@@ -49,6 +68,17 @@ public class UserService {
         return userStorage.getAll();
     }
 
+    // Пользователи с id больше after, не больше limit штук.
+    public Page<User> findPage(long after, int limit) {
+        validateCursor(after, limit);
+        return Page.of(userStorage.getAllAfter(after).limit(limit + 1L).toList(), limit, User::getId);
+    }
+
+    public Stream<User> stream(long after, int limit) {
+        validateCursor(after, limit);
+        return userStorage.getAllAfter(after).limit(limit);
+    }
+
     public User findById(long id) {
         return userStorage.getUserById(id).orElseThrow(
                 () -> new NotFoundException(User.class.getSimpleName(), String.valueOf(id))
@@ -58,13 +88,11 @@ public class UserService {
     public User create(User user) {
         validateUser(user);
         if (userStorage.getUserByLogin(user.getLogin()).isPresent()) {
-            log.warn(String.format("Ошибка валидации %s. %s", ERR_MSG_LOGIN_IN_USE.getParam(),
-                    ERR_MSG_LOGIN_IN_USE.getMsg()));
+            log.warn("Ошибка валидации {}. {}", ERR_MSG_LOGIN_IN_USE.getParam(), ERR_MSG_LOGIN_IN_USE.getMsg());
             throw new ValidationException(ERR_MSG_LOGIN_IN_USE.getParam(), ERR_MSG_LOGIN_IN_USE.getMsg());
         }
         if (userStorage.getUserByEmail(user.getEmail()).isPresent()) {
-            log.warn(String.format("Ошибка валидации %s. %s", ERR_MSG_EMAIL_IN_USE.getParam(),
-                    ERR_MSG_EMAIL_IN_USE.getMsg()));
+            log.warn("Ошибка валидации {}. {}", ERR_MSG_EMAIL_IN_USE.getParam(), ERR_MSG_EMAIL_IN_USE.getMsg());
             throw new ValidationException(ERR_MSG_EMAIL_IN_USE.getParam(), ERR_MSG_EMAIL_IN_USE.getMsg());
         }
 
@@ -72,11 +100,12 @@ public class UserService {
             user.setName(user.getLogin());
         }
         userStorage.add(user);
-        log.info("Пользователь id=" + user.getId() + " создан.");
+        log.info("Пользователь id={} создан.", user.getId());
         return user;
     }
 
-    public User update(User newUser) {
+    // expectedVersion - версия, от которой клиент вносил изменения (Versions.ANY - без проверки).
+    public User update(User newUser, long expectedVersion) {
         validateUser(newUser);
         User oldUser = userStorage.getUserById(newUser.getId()).orElseThrow(
                 () -> new NotFoundException(User.class.getSimpleName(), String.valueOf(newUser.getId()))
@@ -84,26 +113,23 @@ public class UserService {
 
         if (userStorage.getUserByLogin(newUser.getLogin()).orElse(oldUser).getId() !=
                 newUser.getId()) {
-            log.warn(String.format("Ошибка валидации %s. %s", ERR_MSG_LOGIN_IN_USE.getParam(),
-                    ERR_MSG_LOGIN_IN_USE.getMsg()));
+            log.warn("Ошибка валидации {}. {}", ERR_MSG_LOGIN_IN_USE.getParam(), ERR_MSG_LOGIN_IN_USE.getMsg());
             throw new ValidationException(ERR_MSG_LOGIN_IN_USE.getParam(), ERR_MSG_LOGIN_IN_USE.getMsg());
         }
         if (userStorage.getUserByEmail(newUser.getEmail()).orElse(oldUser).getId() !=
                 newUser.getId()) {
-        log.warn(String.format("Ошибка валидации %s. %s", ERR_MSG_EMAIL_IN_USE.getParam(),
-                    ERR_MSG_EMAIL_IN_USE.getMsg()));
+        log.warn("Ошибка валидации {}. {}", ERR_MSG_EMAIL_IN_USE.getParam(), ERR_MSG_EMAIL_IN_USE.getMsg());
             throw new ValidationException(ERR_MSG_EMAIL_IN_USE.getParam(), ERR_MSG_EMAIL_IN_USE.getMsg());
         }
 
         if (newUser.getName() == null || newUser.getName().isBlank()) {
             newUser.setName(newUser.getLogin());
         }
-        newUser.getFriends().addAll(oldUser.getFriends());
 
-        if (userStorage.update(newUser).isPresent()) {
-            log.info("Пользователь id=" + newUser.getId() + " обновлен.");
+        if (userStorage.update(newUser, expectedVersion).isPresent()) {
+            log.info("Пользователь id={} обновлен.", newUser.getId());
         } else {
-            log.info("Ошибка сохранения пользователя id=" + newUser.getId() + ".");
+            log.info("Ошибка сохранения пользователя id={}.", newUser.getId());
         }
         return newUser;
     }
@@ -120,10 +146,46 @@ public class UserService {
                 () -> new NotFoundException(User.class.getSimpleName(), String.valueOf(id)));
         User u2 = userStorage.getUserById(friendId).orElseThrow(
                 () -> new NotFoundException(User.class.getSimpleName(), String.valueOf(friendId)));
-        u1.getFriends().add(friendId);
-        u2.getFriends().add(id);
-        log.info("Пользователи id=" + id + " и id=" + friendId + " стали друзьями.");
-        return List.of(u1, u2);
+        if (userStorage.addFriend(id, friendId)) {
+            friendSuggestions.friendshipChanged(id, friendId);
+        }
+        log.info("Пользователи id={} и id={} стали друзьями.", id, friendId);
+        return friendPair(u1, u2);
+    }
+
+    // Все id пакета проверяются за один проход, найденные пары применяются одним вызовом хранилища.
+    public List<BatchResult> assignFriends(List<Friendship> friendships) {
+        IdLookup users = new IdLookup(id -> userStorage.getUserById(id).isPresent());
+        BatchResult[] results = new BatchResult[friendships.size()];
+        long[] ids = new long[friendships.size()];
+        long[] friendIds = new long[friendships.size()];
+        int[] positions = new int[friendships.size()];
+        int count = 0;
+        for (int i = 0; i < friendships.size(); i++) {
+            Friendship friendship = friendships.get(i);
+            if (!users.exists(friendship.getUserId())) {
+                results[i] = BatchResult.notFound(User.class.getSimpleName(), friendship.getUserId());
+            } else if (!users.exists(friendship.getFriendId())) {
+                results[i] = BatchResult.notFound(User.class.getSimpleName(), friendship.getFriendId());
+            } else {
+                ids[count] = friendship.getUserId();
+                friendIds[count] = friendship.getFriendId();
+                positions[count++] = i;
+            }
+        }
+
+        boolean[] added = userStorage.addFriends(Arrays.copyOf(ids, count), Arrays.copyOf(friendIds, count));
+        int addedCount = 0;
+        for (int k = 0; k < count; k++) {
+            results[positions[k]] = added[k] ? BatchResult.ADDED : BatchResult.UNCHANGED;
+            if (added[k]) {
+                addedCount++;
+                friendSuggestions.friendshipChanged(ids[k], friendIds[k]);
+            }
+        }
+        log.info("Пакет дружб: добавлено {}, без изменений {}, не найдено {}.",
+                addedCount, count - addedCount, friendships.size() - count);
+        return Arrays.asList(results);
     }
 
     public Collection<User> removeFromFriends(long id, long friendId) {
@@ -131,19 +193,57 @@ public class UserService {
                 () -> new NotFoundException(User.class.getSimpleName(), String.valueOf(id)));
         User u2 = userStorage.getUserById(friendId).orElseThrow(
                 () -> new NotFoundException(User.class.getSimpleName(), String.valueOf(friendId)));
-        u1.getFriends().remove(friendId);
-        u2.getFriends().remove(id);
-        log.info("Пользователи id=" + id + " и id=" + friendId + " больше не друзья.");
-        return List.of(u1, u2);
+        if (userStorage.removeFriend(id, friendId)) {
+            friendSuggestions.friendshipChanged(id, friendId);
+        }
+        log.info("Пользователи id={} и id={} больше не друзья.", id, friendId);
+        return friendPair(u1, u2);
+    }
+
+    // Хранилище может отдавать копии (база, кэш) - пара перечитывается после изменения дружбы.
+    private Collection<User> friendPair(User u1, User u2) {
+        Collection<User> pair = userStorage.getUsersByIds(List.of(u1.getId(), u2.getId()));
+        return pair.size() == 2 ? pair : List.of(u1, u2);
     }
 
-    public Collection<User> getCommonFriends(long id1, long id2) {
-        User u1 = userStorage.getUserById(id1).orElseThrow(
+    // Друзья друзей по убыванию числа общих друзей.
+    public Collection<User> getSuggestedFriends(long id, int count) {
+        if (count <= 0 || count > FriendSuggestions.MAX_COUNT) {
+            log.warn("Ошибка валидации {}. {}", ERR_MSG_BAD_COUNT.getParam(), ERR_MSG_BAD_COUNT.getMsg());
+            throw new ValidationException(ERR_MSG_BAD_COUNT.getParam(), ERR_MSG_BAD_COUNT.getMsg());
+        }
+        User user = userStorage.getUserById(id).orElseThrow(
+                () -> new NotFoundException(User.class.getSimpleName(), String.valueOf(id)));
+        long[] ranked = friendSuggestions.suggest(user);
+        return userStorage.getUsersByIds(Arrays.stream(ranked, 0, Math.min(count, ranked.length)).boxed().toList());
+    }
+
+    public Collection<User> getCommonFriends(long id1, long id2, int from, int size) {
+        long start = System.nanoTime();
+        try {
+            return findCommonFriends(id1, id2, from, size);
+        } finally {
+            metrics.commonFriends(start);
+        }
+    }
+
+    private Collection<User> findCommonFriends(long id1, long id2, int from, int size) {
+        if (from < 0 || size <= 0) {
+            log.warn("Ошибка валидации {}. {}", ERR_MSG_BAD_PAGE.getParam(), ERR_MSG_BAD_PAGE.getMsg());
+            throw new ValidationException(ERR_MSG_BAD_PAGE.getParam(), ERR_MSG_BAD_PAGE.getMsg());
+        }
+        userStorage.getUserById(id1).orElseThrow(
                 () -> new NotFoundException(User.class.getSimpleName(), String.valueOf(id1)));
-        User u2 = userStorage.getUserById(id2).orElseThrow(
+        userStorage.getUserById(id2).orElseThrow(
                 () -> new NotFoundException(User.class.getSimpleName(), String.valueOf(id2)));
-        return userStorage.getUsersByIds(
-                u1.getFriends().stream().filter(u2.getFriends()::contains).toList());
+        return userStorage.getCommonFriends(id1, id2, from, size);
+    }
+
+    private static void validateCursor(long after, int limit) {
+        if (after < 0 || limit <= 0) {
+            log.warn("Ошибка валидации {}. {}", ERR_MSG_BAD_CURSOR.getParam(), ERR_MSG_BAD_CURSOR.getMsg());
+            throw new ValidationException(ERR_MSG_BAD_CURSOR.getParam(), ERR_MSG_BAD_CURSOR.getMsg());
+        }
     }
 
     private static void validateUser(User user) {
@@ -159,7 +259,7 @@ public class UserService {
         }
 
         if (errMsg != null) {
-            log.warn(String.format("Ошибка валидации %s. %s", errMsg.getParam(), errMsg.getMsg()));
+            log.warn("Ошибка валидации {}. {}", errMsg.getParam(), errMsg.getMsg());
             throw new ValidationException(errMsg.getParam(), errMsg.getMsg());
         }
         log.trace("Валидации объекта User прошла успешно.");
@@ -0,0 +1,65 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Stream;
+
+/**
+ * Упорядоченный индекс по значению атрибута: пары (значение, id) в skip list.
+ * Обновление - O(log n), выборка диапазона - O(log n + k) без обхода всего каталога.
+ * Как и в PopularityIndex, изменения по одному id должны выполняться последовательно
+ * (под блокировкой хранилища), чтение возможно без блокировок.
+ */
+public class AttributeIndex<K extends Comparable<? super K>> {
+    private final NavigableSet<Entry<K>> entries = new ConcurrentSkipListSet<>(
+            Comparator.<Entry<K>, K>comparing(Entry::key).thenComparingLong(Entry::id));
+    private final Map<Long, Entry<K>> keys = new ConcurrentHashMap<>();
+
+    // Значение null не индексируется.
+    public void put(long id, K key) {
+        Entry<K> old = keys.get(id);
+        if (old != null && old.key().equals(key)) {
+            return;
+        }
+        if (key != null) {
+            Entry<K> entry = new Entry<>(key, id);
+            entries.add(entry);
+            keys.put(id, entry);
+        } else {
+            keys.remove(id);
+        }
+        if (old != null) {
+            entries.remove(old);
+        }
+    }
+
+    public void remove(long id) {
+        Entry<K> old = keys.remove(id);
+        if (old != null) {
+            entries.remove(old);
+        }
+    }
+
+    // Id со значением в [from, to] по возрастанию значения, затем id; null - граница не задана.
+    // Обход ленивый и видит изменения, сделанные во время обхода.
+    public Stream<Long> range(K from, K to) {
+        NavigableSet<Entry<K>> range = entries;
+        if (from != null) {
+            range = range.tailSet(new Entry<>(from, Long.MIN_VALUE), true);
+        }
+        if (to != null) {
+            range = range.headSet(new Entry<>(to, Long.MAX_VALUE), true);
+        }
+        return range.stream().map(Entry::id);
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    private record Entry<K>(K key, long id) {
+    }
+}
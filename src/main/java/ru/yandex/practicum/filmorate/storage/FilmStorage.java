@@ -1,18 +1,54 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmQuery;
+import ru.yandex.practicum.filmorate.model.TrendingPeriod;
+import ru.yandex.practicum.filmorate.util.IdSet;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface FilmStorage {
     void add(Film film);
 
-    Optional<Film> update(Film film);
+    // Замена фильма, если его версия равна expectedVersion (Versions.ANY - без проверки),
+    // иначе PreconditionFailedException.
+    Optional<Film> update(Film film, long expectedVersion);
+
+    default Optional<Film> update(Film film) {
+        return update(film, Versions.ANY);
+    }
 
     Optional<Film> remove(long id);
 
     Optional<Film> get(long id);
 
     Collection<Film> getAll();
+
+    Stream<Film> getAllAfter(long afterId);
+
+    Collection<Film> getTopRated(int count);
+
+    // Фильмы, подходящие под query, лениво, в порядке индекса, по которому идёт выборка.
+    Stream<Film> findByAttributes(FilmQuery query);
+
+    // До count фильмов по релевантности названия и описания запросу; boostByLikes - с поправкой на лайки.
+    List<Film> search(String query, int count, boolean boostByLikes);
+
+    // До count фильмов с наибольшим числом лайков за period, по состоянию на последний refreshTrending().
+    Collection<Film> getTrending(TrendingPeriod period, int count);
+
+    // Сдвигает окна трендов к текущему времени и пересчитывает рейтинги; вызывается планировщиком.
+    void refreshTrending();
+
+    IdSet getLikedFilms(long userId);
+
+    boolean addLike(long filmId, long userId);
+
+    // Пакет лайков; i-й элемент результата - добавлен ли лайк (filmIds[i], userIds[i]).
+    boolean[] addLikes(long[] filmIds, long[] userIds);
+
+    boolean removeLike(long filmId, long userId);
 }
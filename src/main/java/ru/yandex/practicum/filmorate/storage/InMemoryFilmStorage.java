@@ -1,38 +1,443 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.events.ChangeEventBus;
+import ru.yandex.practicum.filmorate.model.ChangeType;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmQuery;
+import ru.yandex.practicum.filmorate.model.TrendingPeriod;
+import ru.yandex.practicum.filmorate.util.IdSet;
 
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+import java.util.stream.Stream;
 
 @Component
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "memory", matchIfMissing = true)
 public class InMemoryFilmStorage implements FilmStorage {
-    private final Map<Long, Film> films = new HashMap<>();
+    // Упорядочены по id для постраничной выдачи по курсору.
+    private final NavigableMap<Long, Film> films = new ConcurrentSkipListMap<>();
+    private final PopularityIndex popularity = new PopularityIndex();
+    private final TrendingIndex trending = new TrendingIndex(System.currentTimeMillis());
+    // Вторичные индексы для выборок по атрибутам, обновляются вместе с films под блокировкой фильма.
+    private final AttributeIndex<String> names = new AttributeIndex<>();
+    private final AttributeIndex<LocalDate> releaseDates = new AttributeIndex<>();
+    private final AttributeIndex<Integer> durations = new AttributeIndex<>();
+    private final TextIndex text = new TextIndex();
+    private final StripedLock locks = new StripedLock();
+    // Обратный индекс лайков: пользователь -> фильмы. Меняется под блокировкой фильма и, внутри неё,
+    // под блокировкой пользователя, потому что лайки одного пользователя ставятся разным фильмам.
+    private final Map<Long, IdSet> likedFilms = new ConcurrentHashMap<>();
+    private final StripedLock userLocks = new StripedLock();
 
-    private long lastId = 0;
+    private final AtomicLong lastId = new AtomicLong();
+    // Число лайков у фильмов в памяти: меняется вместе с лайками, датчик не обходит каталог.
+    private final LongAdder likeCount = new LongAdder();
+    private volatile ChangeEventBus changeEvents;
+
+    // Без шины (например, в бенчмарках) события не публикуются. Публикация идёт под блокировкой
+    // фильма, поэтому события одного фильма выходят в порядке изменений.
+    @Autowired(required = false)
+    public void setChangeEvents(ChangeEventBus changeEvents) {
+        this.changeEvents = changeEvents;
+    }
 
     public void add(Film film) {
-        film.setId(getNextId());
-        films.put(film.getId(), film);
+        add(film, getNextId());
+    }
+
+    // Добавление с id, назначенным снаружи: в хранилище из нескольких частей id раздаёт маршрутизатор.
+    protected void add(Film film, long id) {
+        locks.lock(id);
+        try {
+            lastId.accumulateAndGet(id, Math::max);
+            film.setId(id);
+            Versions.next(film.getVersion(), null);
+            saved(film);
+            films.put(id, film);
+            popularity.put(id, film.getLikes().size());
+            reindex(id, null, film);
+            indexAttributes(film);
+            publish(ChangeType.FILM_CREATED, id, 0, film);
+        } finally {
+            locks.unlock(id);
+        }
     }
 
-    public Optional<Film> update(Film film) {
-        return Optional.ofNullable(films.replace(film.getId(), film));
+    // Лайки хранимого фильма переносятся в новый объект под той же блокировкой, что и like/unlike,
+    // поэтому лайк, поставленный во время обновления, не теряется.
+    public Optional<Film> update(Film film, long expectedVersion) {
+        locks.lock(film.getId());
+        try {
+            Film oldFilm = find(film.getId());
+            if (oldFilm == null) {
+                return Optional.empty();
+            }
+            Versions.check(oldFilm.getVersion(), expectedVersion, Film.class.getSimpleName(), film.getId());
+            if (oldFilm != film) {
+                film.getLikes().addAll(oldFilm.getLikes());
+            }
+            Versions.next(film.getVersion(), oldFilm.getVersion());
+            saved(film);
+            films.put(film.getId(), film);
+            popularity.put(film.getId(), film.getLikes().size());
+            reindex(film.getId(), oldFilm, film);
+            indexAttributes(film);
+            publish(ChangeType.FILM_UPDATED, film.getId(), 0, film);
+            return Optional.of(oldFilm);
+        } finally {
+            locks.unlock(film.getId());
+        }
     }
 
     public Optional<Film> remove(long id) {
-        return Optional.ofNullable(films.remove(id));
+        locks.lock(id);
+        try {
+            find(id);
+            popularity.remove(id);
+            trending.remove(id);
+            Film film = films.remove(id);
+            if (film != null) {
+                reindex(id, film, null);
+                names.remove(id);
+                releaseDates.remove(id);
+                durations.remove(id);
+                text.remove(id);
+                removed(id);
+                publish(ChangeType.FILM_REMOVED, id, 0, film);
+            }
+            return Optional.ofNullable(film);
+        } finally {
+            locks.unlock(id);
+        }
     }
 
     public Optional<Film> get(long id) {
-        return Optional.ofNullable(films.get(id));
+        return Optional.ofNullable(find(id));
     }
 
     public Collection<Film> getAll() {
+        awaitLoaded();
         return List.copyOf(films.values());
     }
 
+    // Ленивый обход по возрастанию id без копирования; видит изменения, сделанные во время обхода.
+    public Stream<Film> getAllAfter(long afterId) {
+        awaitLoaded();
+        return films.tailMap(afterId, false).values().stream();
+    }
+
+    public Collection<Film> getTopRated(int count) {
+        awaitLoaded();
+        return popularity.top(count).stream().map(films::get).filter(Objects::nonNull).toList();
+    }
+
+    public Collection<Film> getTrending(TrendingPeriod period, int count) {
+        awaitLoaded();
+        return Arrays.stream(trending.top(period)).mapToObj(films::get).filter(Objects::nonNull).limit(count).toList();
+    }
+
+    // Выборка идёт по одному индексу - названия, даты выхода или длительности, в этом порядке, если
+    // условие на атрибут задано, - остальные условия проверяются на найденных фильмах.
+    // Фильмы упорядочены по атрибуту выбранного индекса, без условий - по id.
+    public Stream<Film> findByAttributes(FilmQuery query) {
+        awaitLoaded();
+        Stream<Long> ids;
+        if (query.getNamePrefix() != null) {
+            String prefix = FilmQuery.nameKey(query.getNamePrefix());
+            ids = names.range(prefix, prefix + Character.MAX_VALUE);
+        } else if (query.hasReleaseRange()) {
+            ids = releaseDates.range(query.getReleasedFrom(), query.getReleasedTo());
+        } else if (query.hasDurationRange()) {
+            ids = durations.range(query.getMinDuration(), query.getMaxDuration());
+        } else {
+            ids = films.keySet().stream();
+        }
+        return ids.map(films::get).filter(Objects::nonNull).filter(query::matches);
+    }
+
+    public List<Film> search(String query, int count, boolean boostByLikes) {
+        awaitLoaded();
+        long[] ranked = text.search(query, count, boostByLikes ? this::likes : null);
+        return Arrays.stream(ranked).mapToObj(films::get).filter(Objects::nonNull).toList();
+    }
+
+    // Рейтинг трендов и выдача поиска с числами, по которым они упорядочены, - для слияния частей.
+    protected TrendingIndex.Ranking getTrendingRanking(TrendingPeriod period) {
+        awaitLoaded();
+        return trending.ranking(period);
+    }
+
+    protected List<TextIndex.Hit> searchHits(String query, int count, boolean boostByLikes) {
+        awaitLoaded();
+        return text.searchHits(query, count, boostByLikes ? this::likes : null);
+    }
+
+    public void refreshTrending() {
+        trending.advance(System.currentTimeMillis());
+    }
+
+    // Размеры для метрик. Число фильмов и лайков считается обходом, поэтому только при сборе метрик.
+    public long count() {
+        return films.size();
+    }
+
+    public long countLikes() {
+        return likeCount.sum();
+    }
+
+    public int popularityIndexSize() {
+        return popularity.size();
+    }
+
+    public int likedFilmsIndexSize() {
+        return likedFilms.size();
+    }
+
+    public int namesIndexSize() {
+        return names.size();
+    }
+
+    public int releaseDatesIndexSize() {
+        return releaseDates.size();
+    }
+
+    public int durationsIndexSize() {
+        return durations.size();
+    }
+
+    public int textIndexSize() {
+        return text.termCount();
+    }
+
+    // Фильмы, которым пользователь поставил лайк; множество нельзя изменять.
+    public IdSet getLikedFilms(long userId) {
+        awaitLoaded();
+        IdSet liked = likedFilms.get(userId);
+        return liked != null ? liked : new IdSet();
+    }
+
+    public boolean addLike(long filmId, long userId) {
+        locks.lock(filmId);
+        try {
+            boolean added = like(filmId, userId, System.currentTimeMillis());
+            if (added) {
+                publish(ChangeType.LIKE_ADDED, filmId, userId, films.get(filmId));
+            }
+            return added;
+        } finally {
+            locks.unlock(filmId);
+        }
+    }
+
+    public boolean[] addLikes(long[] filmIds, long[] userIds) {
+        boolean[] added = new boolean[filmIds.length];
+        long likedAt = System.currentTimeMillis();
+        locks.forEachGrouped(filmIds, i -> {
+            added[i] = like(filmIds[i], userIds[i], likedAt);
+            if (added[i]) {
+                publish(ChangeType.LIKE_ADDED, filmIds[i], userIds[i], films.get(filmIds[i]));
+            }
+        });
+        return added;
+    }
+
+    public boolean removeLike(long filmId, long userId) {
+        locks.lock(filmId);
+        try {
+            Film film = find(filmId);
+            if (film == null || !film.getLikes().remove(userId)) {
+                return false;
+            }
+            likeCount.decrement();
+            film.getVersion().incrementAndGet();
+            popularity.put(filmId, film.getLikes().size());
+            trending.unrecord(filmId, userId);
+            unindex(filmId, userId);
+            likeRemoved(filmId, userId);
+            publish(ChangeType.LIKE_REMOVED, filmId, userId, film);
+            return true;
+        } finally {
+            locks.unlock(filmId);
+        }
+    }
+
+    // Лайк из журнала с исходным временем; 0 - время неизвестно, в тренды не попадает.
+    protected boolean restoreLike(long filmId, long userId, long likedAt) {
+        locks.lock(filmId);
+        try {
+            return like(filmId, userId, likedAt);
+        } finally {
+            locks.unlock(filmId);
+        }
+    }
+
+    // Загрузка фильма с уже назначенным id (восстановление из снимка или журнала).
+    protected void restore(Film film) {
+        locks.lock(film.getId());
+        try {
+            Film oldFilm = films.put(film.getId(), film);
+            Versions.next(film.getVersion(), oldFilm != null ? oldFilm.getVersion() : null);
+            popularity.put(film.getId(), film.getLikes().size());
+            reindex(film.getId(), oldFilm, film);
+            indexAttributes(film);
+            lastId.accumulateAndGet(film.getId(), Math::max);
+        } finally {
+            locks.unlock(film.getId());
+        }
+    }
+
+    // Фильм, которого ещё нет в памяти, загружается loader'ом под блокировкой фильма.
+    protected Film materialize(long id, LongFunction<Film> loader) {
+        locks.lock(id);
+        try {
+            Film film = films.get(id);
+            if (film != null) {
+                return film;
+            }
+            film = loader.apply(id);
+            if (film != null) {
+                Versions.next(film.getVersion(), null);
+                films.put(id, film);
+                popularity.put(id, film.getLikes().size());
+                reindex(id, null, film);
+                indexAttributes(film);
+            }
+            return film;
+        } finally {
+            locks.unlock(id);
+        }
+    }
+
+    // Для хранилищ, которые поднимают данные с диска лениво: загрузка фильма, которого нет в памяти,
+    // и ожидание полной загрузки перед операциями над всем каталогом.
+    protected Film load(long id) {
+        return null;
+    }
+
+    protected void awaitLoaded() {
+    }
+
+    // Изменения, повторяемые при восстановлении из журнала, в поток событий не попадают.
+    protected boolean isReplaying() {
+        return false;
+    }
+
+    protected long getLastId() {
+        return lastId.get();
+    }
+
+    protected void restoreLastId(long id) {
+        lastId.accumulateAndGet(id, Math::max);
+    }
+
+    // Вызываются под блокировкой фильма в порядке изменений. saved - до того, как фильм попадёт
+    // в хранилище: если он бросил исключение, хранилище не меняется; остальные - сразу после изменения.
+    protected void saved(Film film) {
+    }
+
+    protected void removed(long id) {
+    }
+
+    protected void likeAdded(long filmId, long userId, long likedAt) {
+    }
+
+    protected void likeRemoved(long filmId, long userId) {
+    }
+
+    // Вызывается под блокировкой фильма.
+    private boolean like(long filmId, long userId, long likedAt) {
+        Film film = find(filmId);
+        if (film == null || !film.getLikes().add(userId)) {
+            return false;
+        }
+        likeCount.increment();
+        film.getVersion().incrementAndGet();
+        popularity.put(filmId, film.getLikes().size());
+        trending.record(filmId, userId, likedAt);
+        index(filmId, userId);
+        likeAdded(filmId, userId, likedAt);
+        return true;
+    }
+
+    // Вызываются под блокировкой фильма.
+    private void index(long filmId, long userId) {
+        userLocks.lock(userId);
+        try {
+            likedFilms.computeIfAbsent(userId, id -> new IdSet()).add(filmId);
+        } finally {
+            userLocks.unlock(userId);
+        }
+    }
+
+    private void unindex(long filmId, long userId) {
+        userLocks.lock(userId);
+        try {
+            IdSet liked = likedFilms.get(userId);
+            if (liked != null && liked.remove(filmId) && liked.isEmpty()) {
+                likedFilms.remove(userId, liked);
+            }
+        } finally {
+            userLocks.unlock(userId);
+        }
+    }
+
+    private void reindex(long filmId, Film oldFilm, Film newFilm) {
+        IdSet oldLikes = oldFilm != null ? oldFilm.getLikes() : new IdSet();
+        IdSet newLikes = newFilm != null ? newFilm.getLikes() : new IdSet();
+        likeCount.add(newLikes.size() - oldLikes.size());
+        oldLikes.forEachId(userId -> {
+            if (!newLikes.contains(userId)) {
+                unindex(filmId, userId);
+            }
+        });
+        newLikes.forEachId(userId -> {
+            if (!oldLikes.contains(userId)) {
+                index(filmId, userId);
+            }
+        });
+    }
+
+    // Вызывается под блокировкой фильма.
+    private void publish(ChangeType type, long id, long relatedId, Film film) {
+        ChangeEventBus events = changeEvents;
+        if (events != null && !isReplaying()) {
+            long version = film != null ? film.getVersion().get() : 0;
+            announce(() -> events.publish(type, id, relatedId, version));
+        }
+    }
+
+    // Отдаёт событие в шину. Файловое хранилище откладывает публикацию до сброса журнала.
+    protected void announce(Runnable publication) {
+        publication.run();
+    }
+
+    // Вызывается под блокировкой фильма.
+    private void indexAttributes(Film film) {
+        names.put(film.getId(), FilmQuery.nameKey(film.getName()));
+        releaseDates.put(film.getId(), film.getReleaseDate());
+        durations.put(film.getId(), film.getDuration());
+        text.put(film.getId(), film.getName(), film.getDescription());
+    }
+
+    private int likes(long id) {
+        Film film = films.get(id);
+        return film != null ? film.getLikes().size() : 0;
+    }
+
+    private Film find(long id) {
+        Film film = films.get(id);
+        return film != null ? film : load(id);
+    }
+
     private long getNextId() {
-        return ++lastId;
+        return lastId.incrementAndGet();
     }
 }
@@ -2,105 +2,434 @@ package ru.yandex.practicum.filmorate.storage;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.events.ChangeEventBus;
 import ru.yandex.practicum.filmorate.exception.StorageException;
+import ru.yandex.practicum.filmorate.model.ChangeType;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.util.IdIntersection;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+import java.util.stream.Stream;
 
 @Component
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "memory", matchIfMissing = true)
 public class InMemoryUserStorage implements UserStorage {
-    private long lastId = 0;
+    private final AtomicLong lastId = new AtomicLong();
+    // Число связей дружбы (в обе стороны) у пользователей в памяти: датчик не обходит всех пользователей.
+    private final LongAdder friendEdges = new LongAdder();
 
-    private final Map<Long, User> users = new HashMap<>();
-    private final Map<String, User> emails = new HashMap<>();
-    private final Map<String, User> logins = new HashMap<>();
+    // Упорядочены по id для постраничной выдачи по курсору.
+    private final NavigableMap<Long, User> users = new ConcurrentSkipListMap<>();
+    private final Map<String, User> emails = new ConcurrentHashMap<>();
+    private final Map<String, User> logins = new ConcurrentHashMap<>();
+    private final StripedLock locks = new StripedLock();
+    private volatile ChangeEventBus changeEvents;
 
     private static final Logger log = LoggerFactory.getLogger(InMemoryUserStorage.class);
 
-    public void add(User user) {
-        if (logins.containsKey(user.getLogin())) {
-            String err = String.format("Логин %s используется пользователем id=%s",
-                    user.getLogin(), logins.get(user.getLogin()).getId());
-            log.warn(err);
-            throw new StorageException(err);
-        }
-        if (emails.containsKey(user.getEmail())) {
-            String err = String.format("Email %s используется пользователем id=%s",
-                    user.getEmail(), emails.get(user.getEmail()).getId());
-            log.warn(err);
-            throw new StorageException(err);
-        }
+    // Без шины (например, в бенчмарках) события не публикуются. Публикация идёт под блокировкой
+    // пользователя (обоих - для дружбы), поэтому события одного пользователя выходят в порядке изменений.
+    @Autowired(required = false)
+    public void setChangeEvents(ChangeEventBus changeEvents) {
+        this.changeEvents = changeEvents;
+    }
 
-        user.setId(getNextId());
-        users.put(user.getId(), user);
-        emails.put(user.getEmail(), user);
-        logins.put(user.getLogin(), user);
+    // Логин и email занимаются через putIfAbsent, поэтому два одновременных add/update
+    // не могут получить одинаковые значения.
+    public void add(User user) {
+        awaitLoaded();
+        add(user, getNextId());
     }
 
-    public Optional<User> update(User newUser) {
-        if (logins.containsKey(newUser.getLogin())
-                && logins.get(newUser.getLogin()).getId() != newUser.getId()) {
-            String err = String.format("Логин %s используется пользователем id=%s",
-                    newUser.getLogin(), logins.get(newUser.getLogin()).getId());
-            log.warn(err);
-            throw new StorageException(err);
-        }
-        if (emails.containsKey(newUser.getEmail())
-                && emails.get(newUser.getLogin()).getId() != newUser.getId()) {
-            String err = String.format("Email %s используется пользователем id=%s",
-                    newUser.getEmail(), emails.get(newUser.getEmail()).getId());
-            log.warn(err);
-            throw new StorageException(err);
+    // Добавление с id, назначенным снаружи: в хранилище из нескольких частей id раздаёт маршрутизатор.
+    protected void add(User user, long id) {
+        locks.lock(id);
+        try {
+            lastId.accumulateAndGet(id, Math::max);
+            user.setId(id);
+            Versions.next(user.getVersion(), null);
+            reserve(logins, user.getLogin(), user, "Логин");
+            try {
+                reserve(emails, user.getEmail(), user, "Email");
+                saved(user);
+            } catch (RuntimeException e) {
+                logins.remove(user.getLogin(), user);
+                emails.remove(user.getEmail(), user);
+                throw e;
+            }
+            users.put(id, user);
+            friendEdges.add(user.getFriends().size());
+            publish(ChangeType.USER_CREATED, id, 0, user);
+        } finally {
+            locks.unlock(id);
         }
+    }
 
-        User oldUser = users.replace(newUser.getId(), newUser);
-        if (oldUser == null) {
-            return Optional.empty();
-        }
-        if (!oldUser.getEmail().equals(newUser.getEmail())) {
-            emails.remove(oldUser.getEmail());
-            emails.put(newUser.getEmail(), newUser);
-        }
-        if (!oldUser.getLogin().equals(newUser.getLogin())) {
-            logins.remove(oldUser.getLogin());
-            logins.put(newUser.getLogin(), newUser);
+    // Друзья хранимого пользователя переносятся в новый объект под той же блокировкой,
+    // что и addFriend/removeFriend.
+    public Optional<User> update(User newUser, long expectedVersion) {
+        awaitLoaded();
+        locks.lock(newUser.getId());
+        try {
+            User oldUser = find(newUser.getId());
+            if (oldUser == null) {
+                return Optional.empty();
+            }
+            Versions.check(oldUser.getVersion(), expectedVersion, User.class.getSimpleName(), newUser.getId());
+            reserve(logins, newUser.getLogin(), newUser, "Логин");
+            try {
+                reserve(emails, newUser.getEmail(), newUser, "Email");
+            } catch (StorageException e) {
+                release(logins, newUser.getLogin(), newUser, oldUser.getLogin(), oldUser);
+                throw e;
+            }
+
+            if (oldUser != newUser) {
+                newUser.getFriends().addAll(oldUser.getFriends());
+            }
+            Versions.next(newUser.getVersion(), oldUser.getVersion());
+            try {
+                saved(newUser);
+            } catch (RuntimeException e) {
+                release(logins, newUser.getLogin(), newUser, oldUser.getLogin(), oldUser);
+                release(emails, newUser.getEmail(), newUser, oldUser.getEmail(), oldUser);
+                throw e;
+            }
+            users.put(newUser.getId(), newUser);
+            friendEdges.add(newUser.getFriends().size() - oldUser.getFriends().size());
+            if (!oldUser.getEmail().equals(newUser.getEmail())) {
+                emails.remove(oldUser.getEmail(), oldUser);
+            }
+            if (!oldUser.getLogin().equals(newUser.getLogin())) {
+                logins.remove(oldUser.getLogin(), oldUser);
+            }
+            publish(ChangeType.USER_UPDATED, newUser.getId(), 0, newUser);
+            return Optional.of(newUser);
+        } finally {
+            locks.unlock(newUser.getId());
         }
-        return Optional.of(newUser);
     }
 
     public Optional<User> remove(long id) {
-        User user = users.remove(id);
-        if (user == null) {
-            return Optional.empty();
+        locks.lock(id);
+        try {
+            find(id);
+            User user = users.remove(id);
+            if (user == null) {
+                return Optional.empty();
+            }
+            friendEdges.add(-user.getFriends().size());
+            emails.remove(user.getEmail(), user);
+            logins.remove(user.getLogin(), user);
+            removed(id);
+            publish(ChangeType.USER_REMOVED, id, 0, user);
+            return Optional.of(user);
+        } finally {
+            locks.unlock(id);
         }
-        emails.remove(user.getEmail());
-        logins.remove(user.getLogin());
-        return Optional.of(user);
     }
 
     public Optional<User> getUserById(long id) {
-        return Optional.ofNullable(users.get(id));
+        return Optional.ofNullable(find(id));
     }
 
     public Collection<User> getUsersByIds(Collection<Long> ids) {
-        return ids.stream().map(users::get).filter(Objects::nonNull).toList();
+        return ids.stream().map(this::find).filter(Objects::nonNull).toList();
     }
 
     public Collection<User> getAll() {
+        awaitLoaded();
         return List.copyOf(users.values());
     }
 
+    // Ленивый обход по возрастанию id без копирования; видит изменения, сделанные во время обхода.
+    public Stream<User> getAllAfter(long afterId) {
+        awaitLoaded();
+        return users.tailMap(afterId, false).values().stream();
+    }
+
+    public Collection<User> getCommonFriends(long id1, long id2, int from, int size) {
+        User u1 = find(id1);
+        User u2 = find(id2);
+        if (u1 == null || u2 == null) {
+            return List.of();
+        }
+        long[] ids = IdIntersection.intersect(u1.getFriends(), u2.getFriends(), from, size);
+        List<User> page = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            User user = find(id);
+            if (user != null) {
+                page.add(user);
+            }
+        }
+        return page;
+    }
+
+    // Размеры для метрик. Число пользователей и связей считается обходом, поэтому только при сборе метрик.
+    public long count() {
+        return users.size();
+    }
+
+    // Дружба хранится у обоих пользователей, поэтому каждая считается дважды.
+    public long countFriendEdges() {
+        return friendEdges.sum();
+    }
+
+    public int emailIndexSize() {
+        return emails.size();
+    }
+
+    public int loginIndexSize() {
+        return logins.size();
+    }
+
     public Optional<User> getUserByEmail(String email) {
+        awaitLoaded();
         return Optional.ofNullable(emails.get(email));
     }
 
     public Optional<User> getUserByLogin(String login) {
+        awaitLoaded();
         return Optional.ofNullable(logins.get(login));
     }
 
+    public boolean addFriend(long id, long friendId) {
+        locks.lock(id, friendId);
+        try {
+            return befriend(id, friendId);
+        } finally {
+            locks.unlock(id, friendId);
+        }
+    }
+
+    public boolean[] addFriends(long[] ids, long[] friendIds) {
+        boolean[] added = new boolean[ids.length];
+        locks.forEachGrouped(ids, friendIds, i -> added[i] = befriend(ids[i], friendIds[i]));
+        return added;
+    }
+
+    public boolean removeFriend(long id, long friendId) {
+        locks.lock(id, friendId);
+        try {
+            User u1 = find(id);
+            User u2 = find(friendId);
+            if (u1 == null || u2 == null) {
+                return false;
+            }
+            boolean removed = removeFriendId(u1, friendId);
+            removed = removeFriendId(u2, id) || removed;
+            if (removed) {
+                u1.getVersion().incrementAndGet();
+                u2.getVersion().incrementAndGet();
+                friendRemoved(id, friendId);
+                publish(ChangeType.FRIEND_REMOVED, id, friendId, u1);
+            }
+            return removed;
+        } finally {
+            locks.unlock(id, friendId);
+        }
+    }
+
+    // Половина дружбы для хранилища из нескольких частей, где друзья лежат в разных частях:
+    // friendId добавляется в друзья id (убирается из них) под блокировкой id. Событие публикует
+    // половина с publish = true, с версией пользователя id.
+    protected boolean link(long id, long friendId, boolean publish) {
+        locks.lock(id);
+        try {
+            User user = find(id);
+            if (user == null || !addFriendId(user, friendId)) {
+                return false;
+            }
+            user.getVersion().incrementAndGet();
+            if (publish) {
+                publish(ChangeType.FRIEND_ADDED, id, friendId, user);
+            }
+            return true;
+        } finally {
+            locks.unlock(id);
+        }
+    }
+
+    protected boolean unlink(long id, long friendId, boolean publish) {
+        locks.lock(id);
+        try {
+            User user = find(id);
+            if (user == null || !removeFriendId(user, friendId)) {
+                return false;
+            }
+            user.getVersion().incrementAndGet();
+            if (publish) {
+                publish(ChangeType.FRIEND_REMOVED, id, friendId, user);
+            }
+            return true;
+        } finally {
+            locks.unlock(id);
+        }
+    }
+
+    // Загрузка пользователя с уже назначенным id (восстановление из снимка или журнала).
+    protected void restore(User user) {
+        locks.lock(user.getId());
+        try {
+            User oldUser = users.put(user.getId(), user);
+            Versions.next(user.getVersion(), oldUser != null ? oldUser.getVersion() : null);
+            friendEdges.add(user.getFriends().size() - (oldUser != null ? oldUser.getFriends().size() : 0));
+            if (oldUser != null) {
+                emails.remove(oldUser.getEmail(), oldUser);
+                logins.remove(oldUser.getLogin(), oldUser);
+            }
+            emails.put(user.getEmail(), user);
+            logins.put(user.getLogin(), user);
+            lastId.accumulateAndGet(user.getId(), Math::max);
+        } finally {
+            locks.unlock(user.getId());
+        }
+    }
+
+    // Пользователь, которого ещё нет в памяти, загружается loader'ом под блокировкой пользователя.
+    // Логин и email уже могли перейти к другому пользователю по более новым записям журнала.
+    protected User materialize(long id, LongFunction<User> loader) {
+        locks.lock(id);
+        try {
+            User user = users.get(id);
+            if (user != null) {
+                return user;
+            }
+            user = loader.apply(id);
+            if (user != null) {
+                Versions.next(user.getVersion(), null);
+                users.put(id, user);
+                friendEdges.add(user.getFriends().size());
+                emails.putIfAbsent(user.getEmail(), user);
+                logins.putIfAbsent(user.getLogin(), user);
+            }
+            return user;
+        } finally {
+            locks.unlock(id);
+        }
+    }
+
+    // Для хранилищ, которые поднимают данные с диска лениво: загрузка пользователя, которого нет в памяти,
+    // и ожидание полной загрузки перед поиском по логину/email и операциями над всеми пользователями.
+    protected User load(long id) {
+        return null;
+    }
+
+    protected void awaitLoaded() {
+    }
+
+    // Изменения, повторяемые при восстановлении из журнала, в поток событий не попадают.
+    protected boolean isReplaying() {
+        return false;
+    }
+
+    protected long getLastId() {
+        return lastId.get();
+    }
+
+    protected void restoreLastId(long id) {
+        lastId.accumulateAndGet(id, Math::max);
+    }
+
+    // Вызываются под блокировкой пользователя (обоих - для дружбы). saved - до того, как пользователь
+    // попадёт в хранилище: если он бросил исключение, хранилище не меняется; остальные - сразу после изменения.
+    protected void saved(User user) {
+    }
+
+    protected void removed(long id) {
+    }
+
+    protected void friendAdded(long id, long friendId) {
+    }
+
+    protected void friendRemoved(long id, long friendId) {
+    }
+
+    // Ключ принадлежит тому же пользователю (по id) - он перезаписывается новым объектом.
+    private static void reserve(Map<String, User> index, String key, User user, String keyName) {
+        User owner = index.putIfAbsent(key, user);
+        if (owner == null || owner == user) {
+            return;
+        }
+        if (owner.getId() == user.getId() && index.replace(key, owner, user)) {
+            return;
+        }
+        String err = String.format("%s %s используется пользователем id=%s", keyName, key, owner.getId());
+        log.warn(err);
+        throw new StorageException(err);
+    }
+
+    private static void release(Map<String, User> index, String key, User user, String oldKey, User oldUser) {
+        if (key.equals(oldKey)) {
+            index.replace(key, user, oldUser);
+        } else {
+            index.remove(key, user);
+        }
+    }
+
+    // Вызывается под блокировкой обоих пользователей.
+    private boolean befriend(long id, long friendId) {
+        User u1 = find(id);
+        User u2 = find(friendId);
+        if (u1 == null || u2 == null) {
+            return false;
+        }
+        boolean added = addFriendId(u1, friendId);
+        added = addFriendId(u2, id) || added;
+        if (added) {
+            u1.getVersion().incrementAndGet();
+            u2.getVersion().incrementAndGet();
+            friendAdded(id, friendId);
+            publish(ChangeType.FRIEND_ADDED, id, friendId, u1);
+        }
+        return added;
+    }
+
+    // Вызываются под блокировкой пользователя: связь и счётчик связей меняются вместе.
+    private boolean addFriendId(User user, long friendId) {
+        if (!user.getFriends().add(friendId)) {
+            return false;
+        }
+        friendEdges.increment();
+        return true;
+    }
+
+    private boolean removeFriendId(User user, long friendId) {
+        if (!user.getFriends().remove(friendId)) {
+            return false;
+        }
+        friendEdges.decrement();
+        return true;
+    }
+
+    private void publish(ChangeType type, long id, long relatedId, User user) {
+        ChangeEventBus events = changeEvents;
+        if (events != null && !isReplaying()) {
+            long version = user.getVersion().get();
+            announce(() -> events.publish(type, id, relatedId, version));
+        }
+    }
+
+    // Отдаёт событие в шину. Файловое хранилище откладывает публикацию до сброса журнала.
+    protected void announce(Runnable publication) {
+        publication.run();
+    }
+
+    private User find(long id) {
+        User user = users.get(id);
+        return user != null ? user : load(id);
+    }
+
     private long getNextId() {
-        return ++lastId;
+        return lastId.incrementAndGet();
     }
 
 }
@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Рейтинг фильмов по числу лайков.
+ * Обновление - O(log n), выборка первых k - O(k) без сортировки всего каталога.
+ * Изменения по одному id должны выполняться последовательно (под блокировкой хранилища),
+ * чтение возможно без блокировок.
+ */
+public class PopularityIndex {
+    private static final Comparator<Rank> ORDER = Comparator
+            .comparingInt(Rank::likes).reversed()
+            .thenComparingLong(Rank::id);
+
+    private final NavigableSet<Rank> ranking = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<Long, Rank> ranks = new ConcurrentHashMap<>();
+
+    public void put(long id, int likes) {
+        Rank rank = new Rank(id, likes);
+        Rank old = ranks.put(id, rank);
+        if (old != null) {
+            ranking.remove(old);
+        }
+        ranking.add(rank);
+    }
+
+    public void remove(long id) {
+        Rank old = ranks.remove(id);
+        if (old != null) {
+            ranking.remove(old);
+        }
+    }
+
+    public List<Long> top(int count) {
+        List<Long> ids = new ArrayList<>(Math.min(Math.max(count, 0), ranks.size()));
+        Iterator<Rank> it = ranking.iterator();
+        while (ids.size() < count && it.hasNext()) {
+            ids.add(it.next().id());
+        }
+        return ids;
+    }
+
+    public int size() {
+        return ranks.size();
+    }
+
+    private record Rank(long id, int likes) {
+    }
+}
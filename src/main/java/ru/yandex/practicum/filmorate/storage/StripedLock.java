@@ -0,0 +1,126 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+/**
+ * Набор блокировок, между которыми распределяются идентификаторы сущностей.
+ * Операции над разными сущностями в основном идут параллельно, а над одной - последовательно.
+ */
+public class StripedLock {
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    public StripedLock() {
+        this(Runtime.getRuntime().availableProcessors() * 8);
+    }
+
+    public StripedLock(int minStripes) {
+        int stripes = Integer.highestOneBit(Math.max(minStripes - 1, 1)) << 1;
+        locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        mask = stripes - 1;
+    }
+
+    public void lock(long id) {
+        locks[stripe(id)].lock();
+    }
+
+    public void unlock(long id) {
+        locks[stripe(id)].unlock();
+    }
+
+    // Две полосы всегда захватываются в порядке возрастания номера, чтобы не было взаимных блокировок.
+    public void lock(long id1, long id2) {
+        int s1 = stripe(id1);
+        int s2 = stripe(id2);
+        locks[Math.min(s1, s2)].lock();
+        if (s1 != s2) {
+            locks[Math.max(s1, s2)].lock();
+        }
+    }
+
+    public void unlock(long id1, long id2) {
+        int s1 = stripe(id1);
+        int s2 = stripe(id2);
+        if (s1 != s2) {
+            locks[Math.max(s1, s2)].unlock();
+        }
+        locks[Math.min(s1, s2)].unlock();
+    }
+
+    // Пакетная обработка: элементы группируются по полосе id, и каждая полоса захватывается один раз
+    // на всю свою группу. action получает номер элемента в пакете.
+    public void forEachGrouped(long[] ids, IntConsumer action) {
+        long[] order = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            order[i] = (long) stripe(ids[i]) << 32 | i;
+        }
+        Arrays.sort(order);
+        int from = 0;
+        while (from < order.length) {
+            int stripe = (int) (order[from] >>> 32);
+            int to = from;
+            while (to < order.length && (int) (order[to] >>> 32) == stripe) {
+                to++;
+            }
+            locks[stripe].lock();
+            try {
+                for (int k = from; k < to; k++) {
+                    action.accept((int) order[k]);
+                }
+            } finally {
+                locks[stripe].unlock();
+            }
+            from = to;
+        }
+    }
+
+    // То же для пар id: группа - пара полос, захватываемая в обычном порядке.
+    public void forEachGrouped(long[] ids1, long[] ids2, IntConsumer action) {
+        long[] order = new long[ids1.length];
+        for (int i = 0; i < ids1.length; i++) {
+            int s1 = stripe(ids1[i]);
+            int s2 = stripe(ids2[i]);
+            order[i] = (long) (Math.min(s1, s2) * locks.length + Math.max(s1, s2)) << 32 | i;
+        }
+        Arrays.sort(order);
+        int from = 0;
+        while (from < order.length) {
+            int key = (int) (order[from] >>> 32);
+            int to = from;
+            while (to < order.length && (int) (order[to] >>> 32) == key) {
+                to++;
+            }
+            int low = key / locks.length;
+            int high = key % locks.length;
+            locks[low].lock();
+            if (high != low) {
+                locks[high].lock();
+            }
+            try {
+                for (int k = from; k < to; k++) {
+                    action.accept((int) order[k]);
+                }
+            } finally {
+                if (high != low) {
+                    locks[high].unlock();
+                }
+                locks[low].unlock();
+            }
+            from = to;
+        }
+    }
+
+    public int stripes() {
+        return locks.length;
+    }
+
+    public int stripe(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
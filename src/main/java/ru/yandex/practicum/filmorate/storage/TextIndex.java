@@ -0,0 +1,214 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.util.IdSet;
+import ru.yandex.practicum.filmorate.util.LongIntMap;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongToIntFunction;
+
+/**
+ * Полнотекстовый индекс названий и описаний фильмов с ранжированием BM25.
+ * <p>
+ * Текст разбивается на слова из букв и цифр, приводится к нижнему регистру, ё заменяется на е.
+ * Для каждого слова хранится множество фильмов (IdSet), для каждого фильма - его слова и их частоты;
+ * слово названия весит как NAME_WEIGHT слов описания. Изменения выполняются под общей блокировкой
+ * (фильмы создаются и меняются редко), поиск идёт без блокировок.
+ * <p>
+ * Кандидаты - все фильмы с самым редким словом запроса, затем фильмы с остальными словами от редких
+ * к частым, пока кандидатов меньше MAX_CANDIDATES; частые слова после этого только добавляют вес уже
+ * найденным фильмам. Фильмы с самым редким словом оцениваются все, поэтому запрос из одного слова
+ * находит лучший по BM25 и по лайкам фильм, сколько бы фильмов слово ни содержали. Запрос из редкого
+ * и очень частого слова не обходит половину каталога, а фильм, где есть только частое слово,
+ * может не попасть в выдачу - его вклад в BM25 всё равно мал.
+ */
+public class TextIndex {
+    static final int NAME_WEIGHT = 3;
+    static final int MAX_CANDIDATES = 5_000;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // Множитель 1 + LIKES_WEIGHT * ln(1 + лайки) при поиске с учётом лайков.
+    private static final double LIKES_WEIGHT = 0.2;
+
+    private final Map<String, Term> terms = new ConcurrentHashMap<>();
+    private final Map<Long, Doc> docs = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile long totalLength;
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                token.append(c == 'ё' || c == 'Ё' ? 'е' : c);
+            } else if (!token.isEmpty()) {
+                tokens.add(token.toString().toLowerCase(Locale.ROOT));
+                token.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    public void put(long filmId, String name, String description) {
+        Map<String, Integer> counts = new HashMap<>();
+        tokenize(name).forEach(token -> counts.merge(token, NAME_WEIGHT, Integer::sum));
+        tokenize(description).forEach(token -> counts.merge(token, 1, Integer::sum));
+        lock.lock();
+        try {
+            unindex(filmId);
+            Term[] docTerms = new Term[counts.size()];
+            int[] tfs = new int[counts.size()];
+            int length = 0;
+            int i = 0;
+            for (Map.Entry<String, Integer> count : counts.entrySet()) {
+                Term term = terms.computeIfAbsent(count.getKey(), Term::new);
+                term.films.add(filmId);
+                docTerms[i] = term;
+                tfs[i++] = count.getValue();
+                length += count.getValue();
+            }
+            docs.put(filmId, new Doc(docTerms, tfs, length));
+            totalLength += length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(long filmId) {
+        lock.lock();
+        try {
+            unindex(filmId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // До count id по убыванию релевантности; likes != null - с поправкой на число лайков.
+    public long[] search(String query, int count, LongToIntFunction likes) {
+        return searchHits(query, count, likes).stream().mapToLong(Hit::filmId).toArray();
+    }
+
+    // То же с оценками - для слияния выдачи нескольких индексов.
+    public List<Hit> searchHits(String query, int count, LongToIntFunction likes) {
+        Set<String> tokens = new LinkedHashSet<>(tokenize(query));
+        List<Term> queryTerms = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            Term term = terms.get(token);
+            if (term != null && !term.films.isEmpty()) {
+                queryTerms.add(term);
+            }
+        }
+        int n = docs.size();
+        if (queryTerms.isEmpty() || n == 0 || count <= 0) {
+            return List.of();
+        }
+        queryTerms.sort(Comparator.comparingInt(term -> term.films.size()));
+        double[] idf = new double[queryTerms.size()];
+        for (int t = 0; t < idf.length; t++) {
+            int df = queryTerms.get(t).films.size();
+            idf[t] = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+        }
+
+        LongIntMap candidates = new LongIntMap(queryTerms.get(0).films.size());
+        queryTerms.get(0).films.forEachId(filmId -> candidates.add(filmId, 1));
+        for (Term term : queryTerms.subList(1, queryTerms.size())) {
+            if (candidates.size() >= MAX_CANDIDATES) {
+                break;
+            }
+            boolean complete = term.films.forEachIdWhile(filmId -> {
+                candidates.add(filmId, 1);
+                return candidates.size() < MAX_CANDIDATES;
+            });
+            if (!complete) {
+                break;
+            }
+        }
+
+        double avgLength = Math.max(1.0, (double) totalLength / n);
+        PriorityQueue<Hit> top = new PriorityQueue<>(count + 1, Comparator.comparingDouble(Hit::score));
+        candidates.forEach((filmId, ignored) -> {
+            Doc doc = docs.get(filmId);
+            if (doc == null) {
+                return;
+            }
+            double score = 0;
+            double norm = K1 * (1 - B + B * doc.length / avgLength);
+            for (int t = 0; t < idf.length; t++) {
+                int tf = doc.tf(queryTerms.get(t));
+                if (tf > 0) {
+                    score += idf[t] * tf * (K1 + 1) / (tf + norm);
+                }
+            }
+            if (likes != null) {
+                score *= 1 + LIKES_WEIGHT * Math.log1p(likes.applyAsInt(filmId));
+            }
+            if (top.size() < count) {
+                top.add(new Hit(filmId, score));
+            } else if (score > top.peek().score()) {
+                top.poll();
+                top.add(new Hit(filmId, score));
+            }
+        });
+        Hit[] ranked = new Hit[top.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            ranked[i] = top.poll();
+        }
+        return List.of(ranked);
+    }
+
+    public int termCount() {
+        return terms.size();
+    }
+
+    // Вызывается под блокировкой индекса.
+    private void unindex(long filmId) {
+        Doc old = docs.remove(filmId);
+        if (old == null) {
+            return;
+        }
+        for (Term term : old.terms) {
+            if (term.films.remove(filmId) && term.films.isEmpty()) {
+                terms.remove(term.text, term);
+            }
+        }
+        totalLength -= old.length;
+    }
+
+    // Сравнивается по ссылке: у слова один объект, пока в нём есть фильмы.
+    private static final class Term {
+        private final String text;
+        private final IdSet films = new IdSet();
+
+        Term(String text) {
+            this.text = text;
+        }
+    }
+
+    // Слова фильма и их частоты с учётом веса названия; length - сумма частот.
+    private record Doc(Term[] terms, int[] tfs, int length) {
+        int tf(Term term) {
+            for (int i = 0; i < terms.length; i++) {
+                if (terms[i] == term) {
+                    return tfs[i];
+                }
+            }
+            return 0;
+        }
+    }
+
+    public record Hit(long filmId, double score) {
+    }
+}
@@ -0,0 +1,225 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.TrendingPeriod;
+import ru.yandex.practicum.filmorate.util.IdSet;
+import ru.yandex.practicum.filmorate.util.LongIntMap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Рейтинг фильмов по лайкам за последний час, сутки и неделю с точностью до BUCKET_MILLIS.
+ * <p>
+ * Лайки раскладываются по корзинам в 5 минут (фильм -> поставившие лайк), а для каждого окна ведётся
+ * сумма по корзинам, которые в него попадают. Лайк и его отмена меняют одну корзину и суммы окон;
+ * когда корзина выходит из окна, её счётчики вычитаются из суммы, корзины старше недели выбрасываются.
+ * Поэтому поддержка рейтинга не требует пересчёта лайков, а её стоимость пропорциональна числу
+ * лайков за последние 5 минут.
+ * <p>
+ * Данные разбиты на SHARDS частей по id фильма, у каждой своя блокировка, чтобы лайки разным фильмам
+ * не ждали друг друга. Первые MAX_COUNT фильмов каждого окна пересчитываются в advance()
+ * (его вызывает планировщик) и читаются без блокировок.
+ */
+public class TrendingIndex {
+    public static final int MAX_COUNT = 100;
+    static final long BUCKET_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final int SHARDS = 64;
+    private static final TrendingPeriod[] PERIODS = TrendingPeriod.values();
+    private static final int[] WINDOWS = Arrays.stream(PERIODS)
+            .mapToInt(p -> (int) (p.getDuration().toMillis() / BUCKET_MILLIS))
+            .toArray();
+    private static final int RING = WINDOWS[TrendingPeriod.WEEK.ordinal()];
+
+    private final Shard[] shards = new Shard[SHARDS];
+    private volatile Ranking[] ranked = new Ranking[PERIODS.length];
+
+    public TrendingIndex(long nowMillis) {
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(nowMillis / BUCKET_MILLIS);
+        }
+        Arrays.fill(ranked, new Ranking(new long[0], new int[0]));
+    }
+
+    // Лайк, поставленный в likedAt; слишком старые не учитываются.
+    public void record(long filmId, long userId, long likedAt) {
+        Shard shard = shard(filmId);
+        long bucket = likedAt / BUCKET_MILLIS;
+        shard.lock.lock();
+        try {
+            if (bucket > shard.current) {
+                shard.advance(bucket);
+            }
+            if (bucket <= shard.current - RING) {
+                return;
+            }
+            int slot = (int) (bucket % RING);
+            if (shard.buckets[slot] == null) {
+                shard.buckets[slot] = new HashMap<>();
+                shard.bucketIds[slot] = bucket;
+            }
+            if (shard.buckets[slot].computeIfAbsent(filmId, id -> new IdSet()).add(userId)) {
+                shard.addToWindows(bucket, filmId, 1);
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    // Отмена лайка: он ищется с последней корзины к первой.
+    public void unrecord(long filmId, long userId) {
+        Shard shard = shard(filmId);
+        shard.lock.lock();
+        try {
+            for (long bucket = shard.current; bucket > shard.current - RING; bucket--) {
+                Map<Long, IdSet> films = shard.bucket(bucket);
+                IdSet users = films != null ? films.get(filmId) : null;
+                if (users != null && users.remove(userId)) {
+                    if (users.isEmpty()) {
+                        films.remove(filmId);
+                    }
+                    shard.addToWindows(bucket, filmId, -1);
+                    return;
+                }
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    public void remove(long filmId) {
+        Shard shard = shard(filmId);
+        shard.lock.lock();
+        try {
+            for (Map<Long, IdSet> films : shard.buckets) {
+                if (films != null) {
+                    films.remove(filmId);
+                }
+            }
+            for (LongIntMap totals : shard.totals) {
+                totals.remove(filmId);
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    // Сдвигает окна к nowMillis и пересчитывает первые MAX_COUNT фильмов каждого окна.
+    public void advance(long nowMillis) {
+        long bucket = nowMillis / BUCKET_MILLIS;
+        LongIntMap[] candidates = new LongIntMap[PERIODS.length];
+        for (int p = 0; p < PERIODS.length; p++) {
+            candidates[p] = new LongIntMap(MAX_COUNT * 2);
+        }
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                if (bucket > shard.current) {
+                    shard.advance(bucket);
+                }
+                for (int p = 0; p < PERIODS.length; p++) {
+                    LongIntMap totals = shard.totals[p];
+                    for (long filmId : totals.top(MAX_COUNT)) {
+                        candidates[p].add(filmId, totals.get(filmId));
+                    }
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        Ranking[] next = new Ranking[PERIODS.length];
+        for (int p = 0; p < PERIODS.length; p++) {
+            long[] ids = candidates[p].top(MAX_COUNT);
+            int[] likes = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                likes[i] = candidates[p].get(ids[i]);
+            }
+            next[p] = new Ranking(ids, likes);
+        }
+        ranked = next;
+    }
+
+    // До MAX_COUNT id по убыванию числа лайков за период, на момент последнего advance().
+    public long[] top(TrendingPeriod period) {
+        return ranked[period.ordinal()].ids();
+    }
+
+    // То же вместе с числом лайков за период - для слияния рейтингов нескольких хранилищ.
+    public Ranking ranking(TrendingPeriod period) {
+        return ranked[period.ordinal()];
+    }
+
+    // ids по убыванию likes, при равенстве - по возрастанию id; массивы не изменяются.
+    public record Ranking(long[] ids, int[] likes) {
+    }
+
+    private Shard shard(long filmId) {
+        long h = filmId * 0x9E3779B97F4A7C15L;
+        return shards[(int) (h ^ (h >>> 32)) & (SHARDS - 1)];
+    }
+
+    private static final class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        // Корзина с номером b (время / BUCKET_MILLIS) лежит в слоте b % RING.
+        @SuppressWarnings("unchecked")
+        private final Map<Long, IdSet>[] buckets = new Map[RING];
+        private final long[] bucketIds = new long[RING];
+        // Суммы по корзинам (current - длина окна, current] для каждого периода.
+        private final LongIntMap[] totals = new LongIntMap[PERIODS.length];
+        private long current;
+
+        Shard(long current) {
+            this.current = current;
+            for (int p = 0; p < PERIODS.length; p++) {
+                totals[p] = new LongIntMap();
+            }
+        }
+
+        Map<Long, IdSet> bucket(long bucket) {
+            int slot = (int) (bucket % RING);
+            return bucketIds[slot] == bucket ? buckets[slot] : null;
+        }
+
+        void addToWindows(long bucket, long filmId, int delta) {
+            for (int p = 0; p < PERIODS.length; p++) {
+                if (bucket > current - WINDOWS[p]) {
+                    add(totals[p], filmId, delta);
+                }
+            }
+        }
+
+        // Корзины, вышедшие из окна, вычитаются из его суммы; вышедшие из недельного - освобождаются.
+        void advance(long to) {
+            if (to - current >= RING) {
+                Arrays.fill(buckets, null);
+                Arrays.fill(bucketIds, 0);
+                for (int p = 0; p < PERIODS.length; p++) {
+                    totals[p] = new LongIntMap();
+                }
+                current = to;
+                return;
+            }
+            for (long next = current + 1; next <= to; next++) {
+                for (int p = 0; p < PERIODS.length; p++) {
+                    Map<Long, IdSet> leaving = bucket(next - WINDOWS[p]);
+                    if (leaving != null) {
+                        LongIntMap window = totals[p];
+                        leaving.forEach((filmId, users) -> add(window, filmId, -users.size()));
+                    }
+                }
+                int slot = (int) (next % RING);
+                buckets[slot] = null;
+                bucketIds[slot] = 0;
+            }
+            current = to;
+        }
+
+        private static void add(LongIntMap totals, long filmId, int delta) {
+            if (totals.add(filmId, delta) <= 0) {
+                totals.remove(filmId);
+            }
+        }
+    }
+}
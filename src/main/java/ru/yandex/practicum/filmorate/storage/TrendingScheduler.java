@@ -0,0 +1,49 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Раз в refresh-interval сдвигает окна трендов к текущему времени и пересчитывает рейтинги,
+ * чтобы запросы /films/popular?period= читали готовый список.
+ */
+@Component
+public class TrendingScheduler implements DisposableBean {
+    private final FilmStorage filmStorage;
+    private final ScheduledExecutorService scheduler;
+
+    private static final Logger log = LoggerFactory.getLogger(TrendingScheduler.class);
+
+    public TrendingScheduler(FilmStorage filmStorage,
+                             @Value("${filmorate.trending.refresh-interval:30s}") Duration refreshInterval) {
+        this.filmStorage = filmStorage;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "trending-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = refreshInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::refresh, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    private void refresh() {
+        try {
+            filmStorage.refreshTrending();
+        } catch (RuntimeException e) {
+            log.error("Не удалось обновить рейтинг трендов", e);
+        }
+    }
+}
@@ -4,12 +4,19 @@ import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.Collection;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 
 public interface UserStorage {
     void add(User film);
 
-    Optional<User> update(User film);
+    // Замена пользователя, если его версия равна expectedVersion (Versions.ANY - без проверки),
+    // иначе PreconditionFailedException.
+    Optional<User> update(User user, long expectedVersion);
+
+    default Optional<User> update(User user) {
+        return update(user, Versions.ANY);
+    }
 
     Optional<User> remove(long id);
 
@@ -19,7 +26,18 @@ public interface UserStorage {
 
     Collection<User> getAll();
 
+    Stream<User> getAllAfter(long afterId);
+
+    Collection<User> getCommonFriends(long id1, long id2, int from, int size);
+
     Optional<User> getUserByEmail(String email);
 
     Optional<User> getUserByLogin(String login);
+
+    boolean addFriend(long id, long friendId);
+
+    // Пакет дружб; i-й элемент результата - изменилась ли дружба (ids[i], friendIds[i]).
+    boolean[] addFriends(long[] ids, long[] friendIds);
+
+    boolean removeFriend(long id, long friendId);
 }
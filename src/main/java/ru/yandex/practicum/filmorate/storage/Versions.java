@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.exception.PreconditionFailedException;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Версии сущностей для условных изменений. Версия растёт при каждом изменении сущности, включая
+ * лайки и дружбу, и меняется только под блокировкой сущности в хранилище, поэтому проверка
+ * ожидаемой версии и запись выполняются как одно сравнение с обменом.
+ */
+public final class Versions {
+    // Изменение без проверки версии.
+    public static final long ANY = -1;
+    public static final long INITIAL = 1;
+
+    private Versions() {
+    }
+
+    static void check(AtomicLong version, long expected, String objectName, long id) {
+        if (expected != ANY && version.get() != expected) {
+            throw new PreconditionFailedException(objectName, String.valueOf(id));
+        }
+    }
+
+    // Версия нового объекта, заменяющего old (null - объекта ещё не было).
+    static void next(AtomicLong version, AtomicLong old) {
+        version.set(old != null ? old.get() + 1 : INITIAL);
+    }
+}
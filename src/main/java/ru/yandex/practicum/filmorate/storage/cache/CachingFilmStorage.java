@@ -0,0 +1,137 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmQuery;
+import ru.yandex.practicum.filmorate.model.TrendingPeriod;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.util.IdSet;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище фильмов с кэшем get(id) перед другим хранилищем. Запись идёт в хранилище,
+ * затем запись кэша сбрасывается; списки и топ не кэшируются.
+ */
+public class CachingFilmStorage implements FilmStorage {
+    private final FilmStorage delegate;
+    private final ReadThroughCache<Film> cache;
+
+    public CachingFilmStorage(FilmStorage delegate, long maxWeight, Duration negativeTtl) {
+        this.delegate = delegate;
+        this.cache = new ReadThroughCache<>(maxWeight, negativeTtl, CachingFilmStorage::weigh);
+    }
+
+    @Override
+    public void add(Film film) {
+        delegate.add(film);
+        cache.invalidate(film.getId());
+    }
+
+    @Override
+    public Optional<Film> update(Film film, long expectedVersion) {
+        try {
+            return delegate.update(film, expectedVersion);
+        } finally {
+            cache.invalidate(film.getId());
+        }
+    }
+
+    @Override
+    public Optional<Film> remove(long id) {
+        try {
+            return delegate.remove(id);
+        } finally {
+            cache.invalidate(id);
+        }
+    }
+
+    @Override
+    public Optional<Film> get(long id) {
+        return cache.get(id, delegate::get);
+    }
+
+    @Override
+    public Collection<Film> getAll() {
+        return delegate.getAll();
+    }
+
+    @Override
+    public Stream<Film> getAllAfter(long afterId) {
+        return delegate.getAllAfter(afterId);
+    }
+
+    @Override
+    public Collection<Film> getTopRated(int count) {
+        return delegate.getTopRated(count);
+    }
+
+    @Override
+    public Stream<Film> findByAttributes(FilmQuery query) {
+        return delegate.findByAttributes(query);
+    }
+
+    @Override
+    public List<Film> search(String query, int count, boolean boostByLikes) {
+        return delegate.search(query, count, boostByLikes);
+    }
+
+    @Override
+    public Collection<Film> getTrending(TrendingPeriod period, int count) {
+        return delegate.getTrending(period, count);
+    }
+
+    @Override
+    public void refreshTrending() {
+        delegate.refreshTrending();
+    }
+
+    @Override
+    public IdSet getLikedFilms(long userId) {
+        return delegate.getLikedFilms(userId);
+    }
+
+    @Override
+    public boolean addLike(long filmId, long userId) {
+        try {
+            return delegate.addLike(filmId, userId);
+        } finally {
+            cache.invalidate(filmId);
+        }
+    }
+
+    @Override
+    public boolean[] addLikes(long[] filmIds, long[] userIds) {
+        try {
+            return delegate.addLikes(filmIds, userIds);
+        } finally {
+            cache.invalidateAll(filmIds);
+        }
+    }
+
+    @Override
+    public boolean removeLike(long filmId, long userId) {
+        try {
+            return delegate.removeLike(filmId, userId);
+        } finally {
+            cache.invalidate(filmId);
+        }
+    }
+
+    public CacheStats cacheStats() {
+        return cache.stats();
+    }
+
+    public long cacheSize() {
+        return cache.size();
+    }
+
+    // Примерно в 8-байтовых единицах: сам объект и по единице на лайк.
+    private static int weigh(Film film) {
+        return 16 + film.getLikes().size();
+    }
+}
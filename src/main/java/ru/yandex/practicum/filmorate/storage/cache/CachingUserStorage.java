@@ -0,0 +1,127 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище пользователей с кэшем get(id) и getUsersByIds перед другим хранилищем. Запись идёт
+ * в хранилище, затем записи кэша затронутых пользователей сбрасываются; поиск по email и логину,
+ * списки и общие друзья не кэшируются.
+ */
+public class CachingUserStorage implements UserStorage {
+    private final UserStorage delegate;
+    private final ReadThroughCache<User> cache;
+
+    public CachingUserStorage(UserStorage delegate, long maxWeight, Duration negativeTtl) {
+        this.delegate = delegate;
+        this.cache = new ReadThroughCache<>(maxWeight, negativeTtl, CachingUserStorage::weigh);
+    }
+
+    @Override
+    public void add(User user) {
+        delegate.add(user);
+        cache.invalidate(user.getId());
+    }
+
+    @Override
+    public Optional<User> update(User user, long expectedVersion) {
+        try {
+            return delegate.update(user, expectedVersion);
+        } finally {
+            cache.invalidate(user.getId());
+        }
+    }
+
+    @Override
+    public Optional<User> remove(long id) {
+        try {
+            return delegate.remove(id);
+        } finally {
+            cache.invalidate(id);
+        }
+    }
+
+    @Override
+    public Optional<User> getUserById(long id) {
+        return cache.get(id, delegate::getUserById);
+    }
+
+    @Override
+    public Collection<User> getUsersByIds(Collection<Long> ids) {
+        return cache.getAll(ids, delegate::getUsersByIds, User::getId);
+    }
+
+    @Override
+    public Collection<User> getAll() {
+        return delegate.getAll();
+    }
+
+    @Override
+    public Stream<User> getAllAfter(long afterId) {
+        return delegate.getAllAfter(afterId);
+    }
+
+    @Override
+    public Collection<User> getCommonFriends(long id1, long id2, int from, int size) {
+        return delegate.getCommonFriends(id1, id2, from, size);
+    }
+
+    @Override
+    public Optional<User> getUserByEmail(String email) {
+        return delegate.getUserByEmail(email);
+    }
+
+    @Override
+    public Optional<User> getUserByLogin(String login) {
+        return delegate.getUserByLogin(login);
+    }
+
+    @Override
+    public boolean addFriend(long id, long friendId) {
+        try {
+            return delegate.addFriend(id, friendId);
+        } finally {
+            cache.invalidate(id);
+            cache.invalidate(friendId);
+        }
+    }
+
+    @Override
+    public boolean[] addFriends(long[] ids, long[] friendIds) {
+        try {
+            return delegate.addFriends(ids, friendIds);
+        } finally {
+            cache.invalidateAll(ids);
+            cache.invalidateAll(friendIds);
+        }
+    }
+
+    @Override
+    public boolean removeFriend(long id, long friendId) {
+        try {
+            return delegate.removeFriend(id, friendId);
+        } finally {
+            cache.invalidate(id);
+            cache.invalidate(friendId);
+        }
+    }
+
+    public CacheStats cacheStats() {
+        return cache.stats();
+    }
+
+    public long cacheSize() {
+        return cache.size();
+    }
+
+    // Примерно в 8-байтовых единицах: сам объект и по единице на друга.
+    private static int weigh(User user) {
+        return 16 + user.getFriends().size();
+    }
+}
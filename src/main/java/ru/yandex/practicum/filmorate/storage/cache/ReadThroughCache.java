@@ -0,0 +1,118 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Кэш объектов по id перед хранилищем: Caffeine (вытеснение W-TinyLFU) с ограничением по весу,
+ * отсутствующие id тоже кэшируются, но не дольше negativeTtl.
+ * <p>
+ * Одиночное чтение идёт через Cache.get, и invalidate того же id ждёт окончания загрузки, поэтому
+ * загруженное до записи значение не переживёт её. Пакетное чтение Caffeine так не защищает: для него
+ * у каждой полосы id есть счётчик версий, и загруженный пакетом объект кладётся в кэш, только если
+ * версия его полосы не изменилась с начала чтения.
+ */
+final class ReadThroughCache<T> {
+    private static final int VERSION_STRIPES = 1024;
+
+    private final Cache<Long, Optional<T>> cache;
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    ReadThroughCache(long maxWeight, Duration negativeTtl, ToIntFunction<T> weigher) {
+        long negativeNanos = negativeTtl.toNanos();
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .<Long, Optional<T>>weigher((id, value) -> value.map(weigher::applyAsInt).orElse(1))
+                .expireAfter(new Expiry<Long, Optional<T>>() {
+                    @Override
+                    public long expireAfterCreate(Long id, Optional<T> value, long currentTime) {
+                        return value.isPresent() ? Long.MAX_VALUE : negativeNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Long id, Optional<T> value, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterCreate(id, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Long id, Optional<T> value, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    Optional<T> get(long id, LongFunction<Optional<T>> loader) {
+        return cache.get(id, key -> loader.apply(key));
+    }
+
+    // Найденные объекты в порядке ids, отсутствующие пропускаются.
+    List<T> getAll(Collection<Long> ids, Function<Collection<Long>, Collection<T>> loader, ToLongFunction<T> idOf) {
+        Map<Long, Optional<T>> present = new HashMap<>(cache.getAllPresent(ids));
+        if (present.size() < ids.size()) {
+            List<Long> missing = ids.stream().filter(id -> !present.containsKey(id)).distinct().toList();
+            long[] before = new long[missing.size()];
+            for (int i = 0; i < before.length; i++) {
+                before[i] = versions.get(stripe(missing.get(i)));
+            }
+            Map<Long, Optional<T>> loaded = new HashMap<>(missing.size() * 2);
+            for (T item : loader.apply(missing)) {
+                loaded.put(idOf.applyAsLong(item), Optional.of(item));
+            }
+            for (int i = 0; i < before.length; i++) {
+                Long id = missing.get(i);
+                Optional<T> value = loaded.getOrDefault(id, Optional.empty());
+                long version = before[i];
+                cache.asMap().compute(id, (key, old) -> versions.get(stripe(key)) == version ? value : old);
+                present.put(id, value);
+            }
+        }
+        List<T> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            present.getOrDefault(id, Optional.empty()).ifPresent(result::add);
+        }
+        return result;
+    }
+
+    void invalidate(long id) {
+        versions.incrementAndGet(stripe(id));
+        cache.invalidate(id);
+    }
+
+    void invalidateAll(long[] ids) {
+        for (long id : ids) {
+            invalidate(id);
+        }
+    }
+
+    CacheStats stats() {
+        return cache.stats();
+    }
+
+    long size() {
+        return cache.estimatedSize();
+    }
+
+    private static int stripe(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (VERSION_STRIPES - 1);
+    }
+}
@@ -0,0 +1,107 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Оборачивает выбранные хранилища фильмов и пользователей в кэширующие, не меняя сами хранилища:
+ * включается filmorate.storage.cache.enabled=true для любого filmorate.storage.type.
+ * Раз в stats-interval пишет в лог попадания и промахи, если с прошлого раза были обращения; они же
+ * публикуются в метрики filmorate.cache.requests{cache=..., result=hit|miss}, filmorate.cache.evictions
+ * и filmorate.cache.size.
+ */
+@Component
+@ConditionalOnProperty(name = "filmorate.storage.cache.enabled", havingValue = "true")
+public class StorageCachePostProcessor implements BeanPostProcessor, DisposableBean {
+    private final long maxWeight;
+    private final Duration negativeTtl;
+    private final long statsInterval;
+    private final ObjectProvider<MeterRegistry> registry;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "storage-cache-stats");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Logger log = LoggerFactory.getLogger(StorageCachePostProcessor.class);
+
+    public StorageCachePostProcessor(@Value("${filmorate.storage.cache.max-weight:8000000}") long maxWeight,
+                                     @Value("${filmorate.storage.cache.negative-ttl:30s}") Duration negativeTtl,
+                                     @Value("${filmorate.storage.cache.stats-interval:1m}") Duration statsInterval,
+                                     ObjectProvider<MeterRegistry> registry) {
+        this.maxWeight = maxWeight;
+        this.registry = registry;
+        this.negativeTtl = negativeTtl;
+        this.statsInterval = statsInterval.toMillis();
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof FilmStorage films && !(bean instanceof CachingFilmStorage)) {
+            CachingFilmStorage caching = new CachingFilmStorage(films, maxWeight, negativeTtl);
+            schedule("films", caching::cacheStats, caching::cacheSize);
+            log.info("Хранилище фильмов {} обёрнуто в кэш, вес до {}.", beanName, maxWeight);
+            return caching;
+        }
+        if (bean instanceof UserStorage users && !(bean instanceof CachingUserStorage)) {
+            CachingUserStorage caching = new CachingUserStorage(users, maxWeight, negativeTtl);
+            schedule("users", caching::cacheStats, caching::cacheSize);
+            log.info("Хранилище пользователей {} обёрнуто в кэш, вес до {}.", beanName, maxWeight);
+            return caching;
+        }
+        return bean;
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    private static void bind(MeterRegistry meters, String name, Supplier<CacheStats> stats, LongSupplier size) {
+        FunctionCounter.builder("filmorate.cache.requests", stats, s -> s.get().hitCount())
+                .tags("cache", name, "result", "hit")
+                .register(meters);
+        FunctionCounter.builder("filmorate.cache.requests", stats, s -> s.get().missCount())
+                .tags("cache", name, "result", "miss")
+                .register(meters);
+        FunctionCounter.builder("filmorate.cache.evictions", stats, s -> s.get().evictionCount())
+                .tag("cache", name)
+                .register(meters);
+        Gauge.builder("filmorate.cache.size", size, LongSupplier::getAsLong)
+                .tag("cache", name)
+                .register(meters);
+    }
+
+    private void schedule(String name, Supplier<CacheStats> stats, LongSupplier size) {
+        registry.ifAvailable(meters -> bind(meters, name, stats, size));
+        long[] lastRequests = new long[1];
+        scheduler.scheduleWithFixedDelay(() -> {
+            CacheStats s = stats.get();
+            if (s.requestCount() == lastRequests[0]) {
+                return;
+            }
+            lastRequests[0] = s.requestCount();
+            log.info("Кэш {}: записей {}, попаданий {}, промахов {} ({}% попаданий), вытеснено {}.", name,
+                    size.getAsLong(), s.hitCount(), s.missCount(), Math.round(s.hitRate() * 100), s.evictionCount());
+        }, statsInterval, statsInterval, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,168 @@
+package ru.yandex.practicum.filmorate.storage.file;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.StorageException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+// Данные читаются из памяти, каждое изменение дописывается в журнал до ответа клиенту,
+// а его события уходят в шину только после сброса журнала.
+@Component
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "file")
+public class FileFilmStorage extends InMemoryFilmStorage {
+    private final FileStorageEngine engine;
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    // Удалённые после снимка id: их записи в снимке больше не действительны.
+    private final Set<Long> removedIds = ConcurrentHashMap.newKeySet();
+    private volatile MappedSnapshot snapshot;
+
+    public FileFilmStorage(FileStorageEngine engine) {
+        this.engine = engine;
+        engine.register(this);
+    }
+
+    @Override
+    public void add(Film film) {
+        engine.write(() -> super.add(film));
+    }
+
+    @Override
+    public Optional<Film> update(Film film, long expectedVersion) {
+        return engine.write(() -> super.update(film, expectedVersion));
+    }
+
+    @Override
+    public Optional<Film> remove(long id) {
+        return engine.write(() -> super.remove(id));
+    }
+
+    @Override
+    public boolean addLike(long filmId, long userId) {
+        return engine.write(() -> super.addLike(filmId, userId));
+    }
+
+    // Весь пакет ждёт одного сброса журнала.
+    @Override
+    public boolean[] addLikes(long[] filmIds, long[] userIds) {
+        return engine.write(() -> super.addLikes(filmIds, userIds));
+    }
+
+    @Override
+    public boolean removeLike(long filmId, long userId) {
+        return engine.write(() -> super.removeLike(filmId, userId));
+    }
+
+    @Override
+    protected void announce(Runnable publication) {
+        engine.announce(publication);
+    }
+
+    @Override
+    protected void saved(Film film) {
+        engine.append(Records.FILM_SAVED_V2, out -> Records.writeFilm(out, film));
+    }
+
+    @Override
+    protected void removed(long id) {
+        if (snapshot != null) {
+            removedIds.add(id);
+        }
+        engine.append(Records.FILM_REMOVED, out -> out.writeLong(id));
+    }
+
+    @Override
+    protected void likeAdded(long filmId, long userId, long likedAt) {
+        engine.append(Records.LIKE_ADDED_AT, out -> {
+            out.writeLong(filmId);
+            out.writeLong(userId);
+            out.writeLong(likedAt);
+        });
+    }
+
+    @Override
+    protected void likeRemoved(long filmId, long userId) {
+        engine.append(Records.LIKE_REMOVED, out -> {
+            out.writeLong(filmId);
+            out.writeLong(userId);
+        });
+    }
+
+    void replay(byte type, DataInput in) throws IOException {
+        switch (type) {
+            case Records.FILM_SAVED -> restore(Records.readFilmLegacy(in));
+            case Records.FILM_SAVED_V2 -> restore(Records.readFilm(in));
+            case Records.FILM_REMOVED -> super.remove(in.readLong());
+            case Records.LIKE_ADDED -> restoreLike(in.readLong(), in.readLong(), 0);
+            case Records.LIKE_ADDED_AT -> restoreLike(in.readLong(), in.readLong(), in.readLong());
+            case Records.LIKE_REMOVED -> super.removeLike(in.readLong(), in.readLong());
+            default -> throw new IOException("Неизвестный тип записи фильма: " + type);
+        }
+    }
+
+    void readSnapshot(DataInput in) throws IOException {
+        restoreLastId(in.readLong());
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            restore(Records.readFilmLegacy(in));
+        }
+    }
+
+    @Override
+    protected Film load(long id) {
+        MappedSnapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        return materialize(id, i -> fromSnapshot(current, i));
+    }
+
+    @Override
+    protected boolean isReplaying() {
+        return engine.isRecovering();
+    }
+
+    @Override
+    protected void awaitLoaded() {
+        try {
+            loaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Прервано ожидание загрузки фильмов из снимка");
+        }
+    }
+
+    long lastId() {
+        return getLastId();
+    }
+
+    // Фильмы снимка читаются по запросу, пока фоновый прогрев не перенесёт в память все записи.
+    void attach(MappedSnapshot snapshot) {
+        restoreLastId(snapshot.getLastFilmId());
+        this.snapshot = snapshot;
+    }
+
+    void warmUp() {
+        MappedSnapshot current = snapshot;
+        try {
+            if (current != null) {
+                current.forEachFilmId(id -> materialize(id, i -> fromSnapshot(current, i)));
+                snapshot = null;
+            }
+        } finally {
+            loaded.countDown();
+        }
+    }
+
+    // Вызывается под блокировкой id. После прогрева снимок уже не нужен: всё, что не удалено, в памяти.
+    private Film fromSnapshot(MappedSnapshot current, long id) {
+        return snapshot != current || removedIds.contains(id) ? null : current.readFilm(id);
+    }
+}
@@ -0,0 +1,295 @@
+package ru.yandex.practicum.filmorate.storage.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.StorageException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Файловое хранилище: журнал изменений фильмов и пользователей плюс периодические снимки.
+ * <p>
+ * Снимок пишется без остановки записи: сначала журнал переходит на новый сегмент, затем в файл
+ * выгружается текущее состояние. Все записи журнала идемпотентны (сохранение целиком, удаление,
+ * добавление/удаление связи), поэтому при восстановлении достаточно загрузить снимок и проиграть
+ * журнал с начала того сегмента, даже если часть его изменений уже попала в снимок.
+ * <p>
+ * Снимок ({@link MappedSnapshot}) при старте только отображается в память: запросы читают из него
+ * нужные записи по индексу, а фоновый поток тем временем переносит в память все остальные.
+ */
+@Component
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "file")
+public class FileStorageEngine implements SmartInitializingSingleton, DisposableBean {
+    private static final int SNAPSHOT_MAGIC = MappedSnapshot.MAGIC;
+    // Версия 1 - последовательный снимок, который целиком читается при старте; версии 2 и 3 отображаются
+    // в память, сейчас пишется версия 3.
+    private static final int SNAPSHOT_VERSION_V1 = 1;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private final Path dir;
+    private final Duration snapshotInterval;
+    private final long snapshotMinRecords;
+    private final WriteAheadLog wal;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "storage-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private FileFilmStorage films;
+    private FileUserStorage users;
+    private volatile boolean recovering = true;
+    private volatile Duration recoveryTime = Duration.ZERO;
+    private volatile Thread warmUp;
+    private volatile long snapshotLsn;
+    // События изменения, выполняемого в этом потоке: публикуются только после сброса журнала.
+    private final ThreadLocal<List<Runnable>> pending = new ThreadLocal<>();
+
+    private static final Logger log = LoggerFactory.getLogger(FileStorageEngine.class);
+
+    public FileStorageEngine(@Value("${filmorate.storage.file.dir:data}") Path dir,
+                             @Value("${filmorate.storage.file.fsync:true}") boolean fsync,
+                             @Value("${filmorate.storage.file.snapshot-interval:10m}") Duration snapshotInterval,
+                             @Value("${filmorate.storage.file.snapshot-min-records:10000}") long snapshotMinRecords) {
+        this.dir = dir;
+        this.snapshotInterval = snapshotInterval;
+        this.snapshotMinRecords = snapshotMinRecords;
+        this.wal = new WriteAheadLog(dir, fsync);
+    }
+
+    void register(FileFilmStorage films) {
+        this.films = films;
+    }
+
+    void register(FileUserStorage users) {
+        this.users = users;
+    }
+
+    void append(byte type, WriteAheadLog.Body body) {
+        if (!recovering) {
+            wal.append(type, body);
+        }
+    }
+
+    void sync() {
+        if (!recovering) {
+            wal.sync();
+        }
+    }
+
+    // Изменение плюс сброс журнала. События изменения уходят в шину, только когда его записи
+    // на диске: при ошибке записи или сброса подписчики изменения не видят.
+    <T> T write(Supplier<T> change) {
+        if (pending.get() != null) {
+            return change.get();
+        }
+        List<Runnable> events = new ArrayList<>();
+        pending.set(events);
+        try {
+            T result = change.get();
+            sync();
+            events.forEach(Runnable::run);
+            return result;
+        } finally {
+            pending.remove();
+        }
+    }
+
+    void write(Runnable change) {
+        write(() -> {
+            change.run();
+            return null;
+        });
+    }
+
+    void announce(Runnable publication) {
+        List<Runnable> events = pending.get();
+        if (events != null) {
+            events.add(publication);
+        } else {
+            publication.run();
+        }
+    }
+
+    boolean isRecovering() {
+        return recovering;
+    }
+
+    public Duration getRecoveryTime() {
+        return recoveryTime;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        recover();
+        long period = snapshotInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::snapshotIfNeeded, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public void recover() {
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(dir);
+            long replayFrom = loadSnapshot();
+            long nextLsn = wal.replay(replayFrom, this::apply);
+            wal.open(nextLsn);
+            snapshotLsn = replayFrom;
+            recovering = false;
+            recoveryTime = Duration.ofNanos(System.nanoTime() - start);
+            log.info("Хранилище восстановлено из {} за {} мс: снимок до записи {}, журнал до записи {}.",
+                    dir, recoveryTime.toMillis(), replayFrom, nextLsn);
+            warmUp = new Thread(this::warmUp, "storage-warmup");
+            warmUp.setDaemon(true);
+            warmUp.start();
+        } catch (IOException e) {
+            throw new StorageException("Не удалось восстановить хранилище из " + dir + ": " + e.getMessage());
+        }
+    }
+
+    // Ждёт, пока все записи снимка окажутся в памяти.
+    public void awaitWarmUp() throws InterruptedException {
+        Thread thread = warmUp;
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    public void snapshot() throws IOException {
+        long replayFrom = wal.rotate();
+        Path target = dir.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, replayFrom, SNAPSHOT_SUFFIX));
+        Path tmp = dir.resolve(target.getFileName() + ".tmp");
+        long start = System.nanoTime();
+        // Последний id читается после выгрузки, чтобы он был не меньше любого id в снимке.
+        List<User> userList = List.copyOf(users.getAll());
+        List<Film> filmList = List.copyOf(films.getAll());
+        MappedSnapshot.write(tmp, replayFrom, users.lastId(), userList, films.lastId(), filmList);
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // Переименование должно дойти до диска раньше удалений: иначе после сбоя может не остаться
+        // ни нового снимка, ни старого, ни отрезанных сегментов журнала.
+        syncDir();
+        for (Path old : snapshots()) {
+            if (!old.equals(target)) {
+                Files.deleteIfExists(old);
+            }
+        }
+        wal.truncateBefore(replayFrom);
+        snapshotLsn = replayFrom;
+        log.info("Снимок хранилища {} записан за {} мс.", target.getFileName(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        scheduler.shutdownNow();
+        wal.close();
+    }
+
+    private void syncDir() throws IOException {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private void snapshotIfNeeded() {
+        try {
+            if (wal.getNextLsn() - snapshotLsn >= snapshotMinRecords) {
+                snapshot();
+            }
+        } catch (Exception e) {
+            log.error("Ошибка записи снимка хранилища", e);
+        }
+    }
+
+    private void warmUp() {
+        long start = System.nanoTime();
+        try {
+            users.warmUp();
+            films.warmUp();
+            log.info("Снимок хранилища загружен в память за {} мс.",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (RuntimeException e) {
+            log.error("Ошибка загрузки снимка хранилища, записи будут читаться из снимка по запросу", e);
+        }
+    }
+
+    private long loadSnapshot() throws IOException {
+        List<Path> snapshots = snapshots();
+        if (snapshots.isEmpty()) {
+            return 0;
+        }
+        Path latest = snapshots.get(snapshots.size() - 1);
+        if (versionOf(latest) >= MappedSnapshot.LEGACY_VERSION) {
+            MappedSnapshot snapshot = MappedSnapshot.open(latest);
+            users.attach(snapshot);
+            films.attach(snapshot);
+            log.info("Снимок {} отображён в память: {} пользователей, {} фильмов.", latest.getFileName(),
+                    snapshot.getUserCount(), snapshot.getFilmCount());
+            return snapshot.getReplayFrom();
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(latest), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION_V1) {
+                throw new IOException("Неизвестный формат снимка " + latest);
+            }
+            long replayFrom = in.readLong();
+            users.readSnapshot(in);
+            films.readSnapshot(in);
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Снимок " + latest + " повреждён");
+            }
+            return replayFrom;
+        }
+    }
+
+    private static int versionOf(Path snapshot) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(snapshot))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Неизвестный формат снимка " + snapshot);
+            }
+            return in.readInt();
+        }
+    }
+
+    private void apply(byte type, DataInput in) throws IOException {
+        switch (type) {
+            case Records.FILM_SAVED, Records.FILM_SAVED_V2, Records.FILM_REMOVED, Records.LIKE_ADDED,
+                    Records.LIKE_ADDED_AT, Records.LIKE_REMOVED ->
+                    films.replay(type, in);
+            case Records.USER_SAVED, Records.USER_SAVED_V2, Records.USER_REMOVED, Records.FRIEND_ADDED,
+                    Records.FRIEND_REMOVED ->
+                    users.replay(type, in);
+            default -> throw new IOException("Неизвестный тип записи журнала: " + type);
+        }
+    }
+
+    private List<Path> snapshots() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files
+                    .filter(p -> p.getFileName().toString().startsWith(SNAPSHOT_PREFIX))
+                    .filter(p -> p.getFileName().toString().endsWith(SNAPSHOT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
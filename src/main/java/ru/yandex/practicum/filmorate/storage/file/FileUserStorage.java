@@ -0,0 +1,166 @@
+package ru.yandex.practicum.filmorate.storage.file;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.StorageException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+// Данные читаются из памяти, каждое изменение дописывается в журнал до ответа клиенту,
+// а его события уходят в шину только после сброса журнала.
+@Component
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "file")
+public class FileUserStorage extends InMemoryUserStorage {
+    private final FileStorageEngine engine;
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    // Удалённые после снимка id: их записи в снимке больше не действительны.
+    private final Set<Long> removedIds = ConcurrentHashMap.newKeySet();
+    private volatile MappedSnapshot snapshot;
+
+    public FileUserStorage(FileStorageEngine engine) {
+        this.engine = engine;
+        engine.register(this);
+    }
+
+    @Override
+    public void add(User user) {
+        engine.write(() -> super.add(user));
+    }
+
+    @Override
+    public Optional<User> update(User user, long expectedVersion) {
+        return engine.write(() -> super.update(user, expectedVersion));
+    }
+
+    @Override
+    public Optional<User> remove(long id) {
+        return engine.write(() -> super.remove(id));
+    }
+
+    @Override
+    public boolean addFriend(long id, long friendId) {
+        return engine.write(() -> super.addFriend(id, friendId));
+    }
+
+    // Весь пакет ждёт одного сброса журнала.
+    @Override
+    public boolean[] addFriends(long[] ids, long[] friendIds) {
+        return engine.write(() -> super.addFriends(ids, friendIds));
+    }
+
+    @Override
+    public boolean removeFriend(long id, long friendId) {
+        return engine.write(() -> super.removeFriend(id, friendId));
+    }
+
+    @Override
+    protected void announce(Runnable publication) {
+        engine.announce(publication);
+    }
+
+    @Override
+    protected void saved(User user) {
+        engine.append(Records.USER_SAVED_V2, out -> Records.writeUser(out, user));
+    }
+
+    @Override
+    protected void removed(long id) {
+        if (snapshot != null) {
+            removedIds.add(id);
+        }
+        engine.append(Records.USER_REMOVED, out -> out.writeLong(id));
+    }
+
+    @Override
+    protected void friendAdded(long id, long friendId) {
+        engine.append(Records.FRIEND_ADDED, out -> {
+            out.writeLong(id);
+            out.writeLong(friendId);
+        });
+    }
+
+    @Override
+    protected void friendRemoved(long id, long friendId) {
+        engine.append(Records.FRIEND_REMOVED, out -> {
+            out.writeLong(id);
+            out.writeLong(friendId);
+        });
+    }
+
+    void replay(byte type, DataInput in) throws IOException {
+        switch (type) {
+            case Records.USER_SAVED -> restore(Records.readUserLegacy(in));
+            case Records.USER_SAVED_V2 -> restore(Records.readUser(in));
+            case Records.USER_REMOVED -> super.remove(in.readLong());
+            case Records.FRIEND_ADDED -> super.addFriend(in.readLong(), in.readLong());
+            case Records.FRIEND_REMOVED -> super.removeFriend(in.readLong(), in.readLong());
+            default -> throw new IOException("Неизвестный тип записи пользователя: " + type);
+        }
+    }
+
+    void readSnapshot(DataInput in) throws IOException {
+        restoreLastId(in.readLong());
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            restore(Records.readUserLegacy(in));
+        }
+    }
+
+    @Override
+    protected User load(long id) {
+        MappedSnapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        return materialize(id, i -> fromSnapshot(current, i));
+    }
+
+    @Override
+    protected boolean isReplaying() {
+        return engine.isRecovering();
+    }
+
+    @Override
+    protected void awaitLoaded() {
+        try {
+            loaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Прервано ожидание загрузки пользователей из снимка");
+        }
+    }
+
+    long lastId() {
+        return getLastId();
+    }
+
+    // Пользователи снимка читаются по запросу, пока фоновый прогрев не перенесёт в память все записи.
+    void attach(MappedSnapshot snapshot) {
+        restoreLastId(snapshot.getLastUserId());
+        this.snapshot = snapshot;
+    }
+
+    void warmUp() {
+        MappedSnapshot current = snapshot;
+        try {
+            if (current != null) {
+                current.forEachUserId(id -> materialize(id, i -> fromSnapshot(current, i)));
+                snapshot = null;
+            }
+        } finally {
+            loaded.countDown();
+        }
+    }
+
+    // Вызывается под блокировкой id. После прогрева снимок уже не нужен: всё, что не удалено, в памяти.
+    private User fromSnapshot(MappedSnapshot current, long id) {
+        return snapshot != current || removedIds.contains(id) ? null : current.readUser(id);
+    }
+}
@@ -0,0 +1,328 @@
+package ru.yandex.practicum.filmorate.storage.file;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Снимок хранилища, который читается через отображение файла в память, без разбора целиком.
+ * <pre>
+ * [заголовок: magic, версия, replayFrom, lastUserId, lastFilmId]
+ * [записи пользователей по возрастанию id][записи фильмов по возрастанию id]
+ * [индекс пользователей: (id, смещение) * n][индекс фильмов: (id, смещение) * m]
+ * [окончание: смещение и размер каждого индекса, magic]
+ * </pre>
+ * Файл отображается кусками по 1 ГБ; записи не пересекают границу куска (при необходимости перед
+ * записью вставляется выравнивание), поэтому каждая запись и элемент индекса читаются из одного буфера.
+ * Поиск по id - двоичный поиск в индексе, O(log n) без загрузки остальных записей.
+ */
+final class MappedSnapshot {
+    static final int MAGIC = 0x464C4D53;
+    static final int VERSION = 3;
+    // Версия 2 отличается только строками в формате writeUTF.
+    static final int LEGACY_VERSION = 2;
+    static final int HEADER_SIZE = 32;
+    static final int FOOTER_SIZE = 40;
+    private static final int ENTRY_SIZE = 16;
+    private static final long CHUNK = 1L << 30;
+
+    private final ByteBuffer[] chunks;
+    private final long chunk;
+    private final boolean legacyStrings;
+    private final long replayFrom;
+    private final long lastUserId;
+    private final long lastFilmId;
+    private final long userIndex;
+    private final long userCount;
+    private final long filmIndex;
+    private final long filmCount;
+
+    private MappedSnapshot(ByteBuffer[] chunks, long chunk) throws IOException {
+        this.chunks = chunks;
+        this.chunk = chunk;
+        int version = getInt(4);
+        if (getInt(0) != MAGIC || version != VERSION && version != LEGACY_VERSION) {
+            throw new IOException("Неизвестный формат снимка");
+        }
+        legacyStrings = version == LEGACY_VERSION;
+        replayFrom = getLong(8);
+        lastUserId = getLong(16);
+        lastFilmId = getLong(24);
+        long footer = size() - FOOTER_SIZE;
+        userIndex = getLong(footer);
+        userCount = getLong(footer + 8);
+        filmIndex = getLong(footer + 16);
+        filmCount = getLong(footer + 24);
+        if (getInt(footer + 32) != MAGIC) {
+            throw new IOException("Снимок повреждён");
+        }
+    }
+
+    static MappedSnapshot open(Path path) throws IOException {
+        return open(path, CHUNK);
+    }
+
+    // Размер куска должен быть тем же, с которым снимок записан, и кратным ENTRY_SIZE.
+    static MappedSnapshot open(Path path, long chunk) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + FOOTER_SIZE) {
+                throw new IOException("Снимок " + path + " повреждён");
+            }
+            ByteBuffer[] chunks = new ByteBuffer[(int) ((size + chunk - 1) / chunk)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = i * chunk;
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(chunk, size - start));
+                chunks[i] = mapped;
+            }
+            return new MappedSnapshot(chunks, chunk);
+        }
+    }
+
+    static void write(Path path, long replayFrom, long lastUserId, List<User> users,
+                      long lastFilmId, List<Film> films) throws IOException {
+        write(path, CHUNK, replayFrom, lastUserId, users, lastFilmId, films);
+    }
+
+    static void write(Path path, long chunk, long replayFrom, long lastUserId, List<User> users,
+                      long lastFilmId, List<Film> films) throws IOException {
+        List<User> sortedUsers = new ArrayList<>(users);
+        sortedUsers.sort(Comparator.comparingLong(User::getId));
+        List<Film> sortedFilms = new ArrayList<>(films);
+        sortedFilms.sort(Comparator.comparingLong(Film::getId));
+
+        try (FileOutputStream file = new FileOutputStream(path.toFile());
+             Writer out = new Writer(new BufferedOutputStream(file, 1 << 16), chunk)) {
+            out.data.writeInt(MAGIC);
+            out.data.writeInt(VERSION);
+            out.data.writeLong(replayFrom);
+            out.data.writeLong(lastUserId);
+            out.data.writeLong(lastFilmId);
+
+            long[] userOffsets = new long[sortedUsers.size()];
+            for (int i = 0; i < userOffsets.length; i++) {
+                User user = sortedUsers.get(i);
+                userOffsets[i] = out.record(buf -> Records.writeUser(buf, user));
+            }
+            long[] filmOffsets = new long[sortedFilms.size()];
+            for (int i = 0; i < filmOffsets.length; i++) {
+                Film film = sortedFilms.get(i);
+                filmOffsets[i] = out.record(buf -> Records.writeFilm(buf, film));
+            }
+
+            out.align(ENTRY_SIZE);
+            long userIndex = out.position();
+            for (int i = 0; i < userOffsets.length; i++) {
+                out.data.writeLong(sortedUsers.get(i).getId());
+                out.data.writeLong(userOffsets[i]);
+            }
+            long filmIndex = out.position();
+            for (int i = 0; i < filmOffsets.length; i++) {
+                out.data.writeLong(sortedFilms.get(i).getId());
+                out.data.writeLong(filmOffsets[i]);
+            }
+            out.data.writeLong(userIndex);
+            out.data.writeLong(userOffsets.length);
+            out.data.writeLong(filmIndex);
+            out.data.writeLong(filmOffsets.length);
+            out.data.writeInt(MAGIC);
+            out.data.writeInt(0);
+            out.data.flush();
+            file.getFD().sync();
+        }
+    }
+
+    long getReplayFrom() {
+        return replayFrom;
+    }
+
+    long getLastUserId() {
+        return lastUserId;
+    }
+
+    long getLastFilmId() {
+        return lastFilmId;
+    }
+
+    long getUserCount() {
+        return userCount;
+    }
+
+    long getFilmCount() {
+        return filmCount;
+    }
+
+    User readUser(long id) {
+        long offset = find(userIndex, userCount, id);
+        return offset < 0 ? null : decode(offset, legacyStrings ? Records::readUserLegacy : Records::readUser);
+    }
+
+    Film readFilm(long id) {
+        long offset = find(filmIndex, filmCount, id);
+        return offset < 0 ? null : decode(offset, legacyStrings ? Records::readFilmLegacy : Records::readFilm);
+    }
+
+    void forEachUserId(LongConsumer action) {
+        for (long i = 0; i < userCount; i++) {
+            action.accept(getLong(userIndex + i * ENTRY_SIZE));
+        }
+    }
+
+    void forEachFilmId(LongConsumer action) {
+        for (long i = 0; i < filmCount; i++) {
+            action.accept(getLong(filmIndex + i * ENTRY_SIZE));
+        }
+    }
+
+    private long find(long index, long count, long id) {
+        long lo = 0;
+        long hi = count - 1;
+        while (lo <= hi) {
+            long mid = (lo + hi) >>> 1;
+            long entry = index + mid * ENTRY_SIZE;
+            long midId = getLong(entry);
+            if (midId < id) {
+                lo = mid + 1;
+            } else if (midId > id) {
+                hi = mid - 1;
+            } else {
+                return getLong(entry + 8);
+            }
+        }
+        return -1;
+    }
+
+    private <T> T decode(long offset, Decoder<T> decoder) {
+        ByteBuffer buffer = chunks[(int) (offset / chunk)].duplicate();
+        buffer.position((int) (offset % chunk));
+        try {
+            return decoder.read(new DataInputStream(new BufferInput(buffer)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Снимок повреждён: запись по смещению " + offset, e);
+        }
+    }
+
+    private long size() {
+        ByteBuffer last = chunks[chunks.length - 1];
+        return (chunks.length - 1) * chunk + last.capacity();
+    }
+
+    private int getInt(long position) {
+        return chunks[(int) (position / chunk)].getInt((int) (position % chunk));
+    }
+
+    private long getLong(long position) {
+        return chunks[(int) (position / chunk)].getLong((int) (position % chunk));
+    }
+
+    private interface Decoder<T> {
+        T read(DataInput in) throws IOException;
+    }
+
+    private static final class BufferInput extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+
+    // Считает смещение и не даёт записи пересечь границу куска отображения.
+    private static final class Writer implements Closeable {
+        private final CountingStream counter;
+        private final DataOutputStream data;
+        private final long chunk;
+        private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+        private final DataOutputStream recordData = new DataOutputStream(record);
+
+        Writer(OutputStream out, long chunk) {
+            counter = new CountingStream(out);
+            data = new DataOutputStream(counter);
+            this.chunk = chunk;
+        }
+
+        long position() {
+            return counter.count;
+        }
+
+        long record(WriteAheadLog.Body body) throws IOException {
+            record.reset();
+            body.write(recordData);
+            recordData.flush();
+            if (record.size() > chunk) {
+                throw new IOException("Запись снимка больше " + chunk + " байт");
+            }
+            long start = position();
+            if (start / chunk != (start + record.size() - 1) / chunk) {
+                pad((start / chunk + 1) * chunk - start);
+            }
+            long offset = position();
+            record.writeTo(data);
+            return offset;
+        }
+
+        void align(int alignment) throws IOException {
+            long rest = position() % alignment;
+            if (rest != 0) {
+                pad(alignment - rest);
+            }
+        }
+
+        private void pad(long bytes) throws IOException {
+            for (long i = 0; i < bytes; i++) {
+                data.write(0);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            data.close();
+        }
+    }
+
+    private static final class CountingStream extends FilterOutputStream {
+        private long count;
+
+        CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package ru.yandex.practicum.filmorate.storage.file;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.util.IdSet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+// Двоичное представление записей журнала и снимка. Строки - длина и байты UTF-8 (-1 - null);
+// FILM_SAVED, USER_SAVED и снимки версий 1-2 писались через writeUTF и читаются read*Legacy.
+final class Records {
+    static final byte FILM_SAVED = 1;
+    static final byte FILM_REMOVED = 2;
+    static final byte LIKE_ADDED = 3;
+    static final byte LIKE_REMOVED = 4;
+    static final byte USER_SAVED = 5;
+    static final byte USER_REMOVED = 6;
+    static final byte FRIEND_ADDED = 7;
+    static final byte FRIEND_REMOVED = 8;
+    // Лайк со временем; LIKE_ADDED без времени остаётся в старых журналах.
+    static final byte LIKE_ADDED_AT = 9;
+    static final byte FILM_SAVED_V2 = 10;
+    static final byte USER_SAVED_V2 = 11;
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private Records() {
+    }
+
+    static void writeFilm(DataOutput out, Film film) throws IOException {
+        out.writeLong(film.getId());
+        writeString(out, film.getName());
+        writeString(out, film.getDescription());
+        writeDate(out, film.getReleaseDate());
+        out.writeInt(film.getDuration());
+        writeIds(out, film.getLikes());
+    }
+
+    static Film readFilm(DataInput in) throws IOException {
+        return readFilm(in, Records::readString);
+    }
+
+    static Film readFilmLegacy(DataInput in) throws IOException {
+        return readFilm(in, Records::readLegacyString);
+    }
+
+    static void writeUser(DataOutput out, User user) throws IOException {
+        out.writeLong(user.getId());
+        writeString(out, user.getEmail());
+        writeString(out, user.getLogin());
+        writeString(out, user.getName());
+        writeDate(out, user.getBirthday());
+        writeIds(out, user.getFriends());
+    }
+
+    static User readUser(DataInput in) throws IOException {
+        return readUser(in, Records::readString);
+    }
+
+    static User readUserLegacy(DataInput in) throws IOException {
+        return readUser(in, Records::readLegacyString);
+    }
+
+    private interface StringReader {
+        String read(DataInput in) throws IOException;
+    }
+
+    private static Film readFilm(DataInput in, StringReader strings) throws IOException {
+        Film film = new Film(in.readLong(), strings.read(in), strings.read(in), readDate(in), in.readInt());
+        readIds(in, film.getLikes());
+        return film;
+    }
+
+    private static User readUser(DataInput in, StringReader strings) throws IOException {
+        User user = new User(in.readLong(), strings.read(in), strings.read(in), strings.read(in), readDate(in));
+        readIds(in, user.getFriends());
+        return user;
+    }
+
+    // В отличие от writeUTF, длина строки не ограничена 65535 байтами.
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String readLegacyString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeDate(DataOutput out, LocalDate date) throws IOException {
+        out.writeLong(date == null ? NO_DATE : date.toEpochDay());
+    }
+
+    private static LocalDate readDate(DataInput in) throws IOException {
+        long day = in.readLong();
+        return day == NO_DATE ? null : LocalDate.ofEpochDay(day);
+    }
+
+    private static void writeIds(DataOutput out, IdSet ids) throws IOException {
+        long[] values = ids.toLongArray();
+        out.writeInt(values.length);
+        for (long id : values) {
+            out.writeLong(id);
+        }
+    }
+
+    private static void readIds(DataInput in, IdSet ids) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            ids.add(in.readLong());
+        }
+    }
+}
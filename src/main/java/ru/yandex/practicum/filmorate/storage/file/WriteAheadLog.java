@@ -0,0 +1,336 @@
+package ru.yandex.practicum.filmorate.storage.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.yandex.practicum.filmorate.exception.StorageException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал изменений в сегментах wal-&lt;номер первой записи&gt;.log.
+ * Запись: [длина тела][CRC32 тела][тело = тип + данные].
+ * <p>
+ * Записи копятся в буфере, отдельный поток сбрасывает накопленное одной операцией записи и fsync
+ * (group commit), а {@link #sync()} ждёт, пока на диск попадут все записи, добавленные до вызова.
+ */
+class WriteAheadLog implements Closeable {
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+
+    private final Path dir;
+    private final boolean fsync;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasPending = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    // Порядок захвата: lock, затем io. Поток сброса не держит io, когда ждёт lock.
+    private final ReentrantLock io = new ReentrantLock();
+
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long nextLsn;
+    private long durableLsn;
+    private FileChannel channel;
+    private IOException failure;
+    private boolean closed;
+    private Thread flusher;
+
+    private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    WriteAheadLog(Path dir, boolean fsync) {
+        this.dir = dir;
+        this.fsync = fsync;
+    }
+
+    interface Body {
+        void write(DataOutput out) throws IOException;
+    }
+
+    interface Replay {
+        void apply(byte type, DataInput in) throws IOException;
+    }
+
+    // Проигрывает сегменты начиная с записи fromLsn; повреждённый хвост последнего сегмента отрезается.
+    long replay(long fromLsn, Replay replay) throws IOException {
+        List<Path> segments = segments();
+        long lsn = fromLsn;
+        for (int i = 0; i < segments.size(); i++) {
+            Path segment = segments.get(i);
+            long start = startOf(segment);
+            long end = i + 1 < segments.size() ? startOf(segments.get(i + 1)) : Long.MAX_VALUE;
+            if (end <= fromLsn) {
+                continue;
+            }
+            lsn = replaySegment(segment, start, fromLsn, replay, i + 1 == segments.size());
+        }
+        return lsn;
+    }
+
+    void open(long lsn) throws IOException {
+        lock.lock();
+        try {
+            nextLsn = lsn;
+            durableLsn = lsn - 1;
+            openSegment(lsn);
+            flusher = new Thread(this::flushLoop, "wal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long append(byte type, Body body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            body.write(out);
+        } catch (IOException e) {
+            throw new StorageException("Не удалось сформировать запись журнала: " + e.getMessage());
+        }
+        byte[] record = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(record);
+
+        lock.lock();
+        try {
+            checkState();
+            writeInt(pending, record.length);
+            writeInt(pending, (int) crc.getValue());
+            pending.write(record, 0, record.length);
+            hasPending.signal();
+            return nextLsn++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void sync() {
+        lock.lock();
+        try {
+            long target = nextLsn - 1;
+            while (durableLsn < target) {
+                checkState();
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Начинает новый сегмент и возвращает номер его первой записи: всё, что раньше, уже на диске.
+    long rotate() throws IOException {
+        lock.lock();
+        io.lock();
+        try {
+            checkState();
+            writeOut(pending.toByteArray());
+            pending.reset();
+            channel.force(false);
+            channel.close();
+            durableLsn = nextLsn - 1;
+            flushed.signalAll();
+            openSegment(nextLsn);
+            return nextLsn;
+        } finally {
+            io.unlock();
+            lock.unlock();
+        }
+    }
+
+    // Удаляет сегменты, все записи которых идут раньше lsn.
+    void truncateBefore(long lsn) throws IOException {
+        List<Path> segments = segments();
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (startOf(segments.get(i + 1)) <= lsn) {
+                Files.deleteIfExists(segments.get(i));
+            }
+        }
+    }
+
+    long getNextLsn() {
+        lock.lock();
+        try {
+            return nextLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            hasPending.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            byte[] batch;
+            long batchEnd;
+            lock.lock();
+            try {
+                while (pending.size() == 0 && !closed) {
+                    hasPending.awaitUninterruptibly();
+                }
+                if (pending.size() == 0) {
+                    return;
+                }
+                batch = pending.toByteArray();
+                pending.reset();
+                batchEnd = nextLsn - 1;
+                // io захватывается до отпускания lock, чтобы rotate() не открыл новый сегмент
+                // раньше, чем в старый будет дописана уже взятая пачка.
+                io.lock();
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                writeOut(batch);
+                if (fsync) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                error = e;
+            } finally {
+                io.unlock();
+            }
+
+            lock.lock();
+            try {
+                if (error != null) {
+                    failure = error;
+                    log.error("Ошибка записи журнала", error);
+                } else {
+                    durableLsn = Math.max(durableLsn, batchEnd);
+                }
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (error != null) {
+                return;
+            }
+        }
+    }
+
+    private void writeOut(byte[] batch) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(batch);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void checkState() {
+        if (failure != null) {
+            throw new StorageException("Журнал недоступен: " + failure.getMessage());
+        }
+        if (closed) {
+            throw new StorageException("Журнал закрыт");
+        }
+    }
+
+    private void openSegment(long start) throws IOException {
+        channel = FileChannel.open(dir.resolve(String.format("%s%020d%s", PREFIX, start, SUFFIX)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private long replaySegment(Path segment, long start, long fromLsn, Replay replay, boolean last)
+            throws IOException {
+        long lsn = start;
+        long goodBytes = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+            while (true) {
+                byte[] record = readRecord(in);
+                if (record == null) {
+                    break;
+                }
+                if (lsn >= fromLsn) {
+                    replay.apply(record[0], new DataInputStream(
+                            new ByteArrayInputStream(record, 1, record.length - 1)));
+                }
+                goodBytes += 8 + record.length;
+                lsn++;
+            }
+        }
+        if (goodBytes < Files.size(segment)) {
+            if (!last) {
+                throw new IOException("Повреждён сегмент журнала " + segment);
+            }
+            log.warn("Отрезан неполный хвост журнала {}: {} байт", segment, Files.size(segment) - goodBytes);
+            try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                ch.truncate(goodBytes);
+            }
+        }
+        return lsn;
+    }
+
+    private static byte[] readRecord(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int crc = in.readInt();
+            if (length <= 0 || length > (64 << 20)) {
+                return null;
+            }
+            byte[] record = new byte[length];
+            in.readFully(record);
+            CRC32 actual = new CRC32();
+            actual.update(record);
+            return (int) actual.getValue() == crc ? record : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> segments = new ArrayList<>(files
+                    .filter(p -> p.getFileName().toString().startsWith(PREFIX))
+                    .filter(p -> p.getFileName().toString().endsWith(SUFFIX))
+                    .toList());
+            segments.sort((p1, p2) -> Long.compare(startOf(p1), startOf(p2)));
+            return segments;
+        }
+    }
+
+    private static long startOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+}
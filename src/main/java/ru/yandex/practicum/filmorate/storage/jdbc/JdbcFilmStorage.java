@@ -0,0 +1,410 @@
+package ru.yandex.practicum.filmorate.storage.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.events.ChangeEventBus;
+import ru.yandex.practicum.filmorate.exception.PreconditionFailedException;
+import ru.yandex.practicum.filmorate.model.ChangeType;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmQuery;
+import ru.yandex.practicum.filmorate.model.TrendingPeriod;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.TextIndex;
+import ru.yandex.practicum.filmorate.storage.Versions;
+import ru.yandex.practicum.filmorate.util.IdSet;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Фильмы в реляционной базе (профиль jdbc, схема db/schema-h2.sql), лайки - таблица связей likes.
+ * <p>
+ * Топ, тренды и выборки по атрибутам - запросы по индексам схемы; списки читаются страницами
+ * по ключу, лайки к ним догружаются одним IN на страницу. Версия хранится в колонке version:
+ * update сравнивает её в WHERE, лайки увеличивают её через FINAL TABLE в той же транзакции.
+ * Блокировки берутся в одном порядке - сначала строки likes, затем строки films по возрастанию id,
+ * поэтому одиночные и пакетные лайки не взаимоблокируются. Версия для события читается в транзакции
+ * под блокировкой строки фильма, а само событие публикуется после фиксации: откаченное изменение
+ * событий не даёт. Номера событий одного фильма из разных транзакций могут идти не в порядке версий.
+ */
+@Component
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "jdbc")
+public class JdbcFilmStorage implements FilmStorage {
+    // Кандидатов поиска, читаемых из базы для ранжирования BM25.
+    static final int MAX_SEARCH_CANDIDATES = 5_000;
+    private static final String SELECT_FILMS = "SELECT " + JdbcRows.FILM_COLUMNS + " FROM films f ";
+    private static final String INSERT_LIKE = "INSERT INTO likes (film_id, user_id, liked_at) "
+            + "SELECT ?, ?, ? WHERE NOT EXISTS (SELECT 1 FROM likes WHERE film_id = ? AND user_id = ?)";
+    private static final String BUMP_VERSION =
+            "SELECT version FROM FINAL TABLE (UPDATE films SET version = version + ? WHERE id = ?)";
+
+    private final JdbcTemplate jdbc;
+    private final NamedParameterJdbcTemplate named;
+    private final TransactionTemplate tx;
+    private volatile ChangeEventBus changeEvents;
+
+    private static final Logger log = LoggerFactory.getLogger(JdbcFilmStorage.class);
+
+    public JdbcFilmStorage(JdbcTemplate jdbc, NamedParameterJdbcTemplate named, TransactionTemplate tx) {
+        this.jdbc = jdbc;
+        this.named = named;
+        this.tx = tx;
+    }
+
+    @Autowired(required = false)
+    public void setChangeEvents(ChangeEventBus changeEvents) {
+        this.changeEvents = changeEvents;
+    }
+
+    // Лайки из тела запроса не сохраняются: они ставятся только через addLike.
+    @Override
+    public void add(Film film) {
+        tx.executeWithoutResult(status -> {
+            KeyHolder key = new GeneratedKeyHolder();
+            jdbc.update(con -> {
+                PreparedStatement ps = con.prepareStatement("INSERT INTO films "
+                        + "(name, name_key, description, release_date, duration) VALUES (?, ?, ?, ?, ?)",
+                        new String[]{"id"});
+                ps.setString(1, film.getName());
+                ps.setString(2, FilmQuery.nameKey(film.getName()));
+                ps.setString(3, film.getDescription());
+                ps.setObject(4, film.getReleaseDate());
+                ps.setInt(5, film.getDuration());
+                return ps;
+            }, key);
+            film.setId(Objects.requireNonNull(key.getKey()).longValue());
+            film.getLikes().clear();
+            film.getVersion().set(Versions.INITIAL);
+            publish(ChangeType.FILM_CREATED, film.getId(), 0, Versions.INITIAL);
+        });
+    }
+
+    @Override
+    public Optional<Film> update(Film film, long expectedVersion) {
+        return tx.execute(status -> {
+            Film oldFilm = find(film.getId());
+            if (oldFilm == null) {
+                return Optional.empty();
+            }
+            List<Long> version = jdbc.queryForList("SELECT version FROM FINAL TABLE (UPDATE films "
+                            + "SET name = ?, name_key = ?, description = ?, release_date = ?, duration = ?, "
+                            + "version = version + 1 WHERE id = ? AND (? = -1 OR version = ?))", Long.class,
+                    film.getName(), FilmQuery.nameKey(film.getName()), film.getDescription(),
+                    film.getReleaseDate(), film.getDuration(), film.getId(), expectedVersion, expectedVersion);
+            if (version.isEmpty()) {
+                if (expectedVersion == Versions.ANY) {
+                    return Optional.empty();
+                }
+                throw new PreconditionFailedException(Film.class.getSimpleName(), String.valueOf(film.getId()));
+            }
+            film.getLikes().clear();
+            JdbcRows.withLikes(named, List.of(film));
+            film.getVersion().set(version.get(0));
+            publish(ChangeType.FILM_UPDATED, film.getId(), 0, version.get(0));
+            return Optional.of(oldFilm);
+        });
+    }
+
+    @Override
+    public Optional<Film> remove(long id) {
+        return tx.execute(status -> {
+            Film film = find(id);
+            if (film == null || jdbc.update("DELETE FROM films WHERE id = ?", id) == 0) {
+                return Optional.empty();
+            }
+            publish(ChangeType.FILM_REMOVED, id, 0, film.getVersion().get());
+            return Optional.of(film);
+        });
+    }
+
+    @Override
+    public Optional<Film> get(long id) {
+        return Optional.ofNullable(find(id));
+    }
+
+    @Override
+    public Collection<Film> getAll() {
+        Map<Long, Film> films = new LinkedHashMap<>();
+        jdbc.query(SELECT_FILMS + "ORDER BY f.id", JdbcRows::film).forEach(f -> films.put(f.getId(), f));
+        jdbc.query("SELECT film_id, user_id FROM likes", (RowCallbackHandler) rs -> {
+            Film film = films.get(rs.getLong(1));
+            if (film != null) {
+                film.getLikes().add(rs.getLong(2));
+            }
+        });
+        return films.values();
+    }
+
+    @Override
+    public Stream<Film> getAllAfter(long afterId) {
+        return JdbcRows.pages(last -> JdbcRows.withLikes(named, jdbc.query(
+                SELECT_FILMS + "WHERE f.id > ? ORDER BY f.id LIMIT ?", JdbcRows::film,
+                last != null ? last.getId() : afterId, JdbcRows.PAGE_SIZE)));
+    }
+
+    // Число лайков считается агрегатом по первичному ключу likes (film_id, user_id).
+    @Override
+    public Collection<Film> getTopRated(int count) {
+        return JdbcRows.withLikes(named, jdbc.query(SELECT_FILMS
+                + "JOIN (SELECT f2.id, COUNT(l.user_id) AS cnt FROM films f2 "
+                + "LEFT JOIN likes l ON l.film_id = f2.id GROUP BY f2.id "
+                + "ORDER BY cnt DESC, f2.id LIMIT ?) t ON t.id = f.id "
+                + "ORDER BY t.cnt DESC, f.id", JdbcRows::film, count));
+    }
+
+    // Тот же выбор индекса и порядок, что и в памяти: название, дата выхода, длительность, иначе id.
+    // Страницы продолжаются с последней пары (атрибут, id).
+    @Override
+    public Stream<Film> findByAttributes(FilmQuery query) {
+        String key;
+        Function<Film, Object> keyOf;
+        if (query.getNamePrefix() != null) {
+            key = "f.name_key";
+            keyOf = film -> FilmQuery.nameKey(film.getName());
+        } else if (query.hasReleaseRange()) {
+            key = "f.release_date";
+            keyOf = Film::getReleaseDate;
+        } else if (query.hasDurationRange()) {
+            key = "f.duration";
+            keyOf = Film::getDuration;
+        } else {
+            key = null;
+            keyOf = Film::getId;
+        }
+        StringBuilder where = new StringBuilder("WHERE 1 = 1");
+        MapSqlParameterSource params = new MapSqlParameterSource("limit", JdbcRows.PAGE_SIZE);
+        if (query.getNamePrefix() != null) {
+            String prefix = FilmQuery.nameKey(query.getNamePrefix());
+            where.append(" AND f.name_key >= :prefixFrom AND f.name_key < :prefixTo");
+            params.addValue("prefixFrom", prefix).addValue("prefixTo", prefix + Character.MAX_VALUE);
+        }
+        if (query.getReleasedFrom() != null) {
+            where.append(" AND f.release_date >= :releasedFrom");
+            params.addValue("releasedFrom", query.getReleasedFrom());
+        }
+        if (query.getReleasedTo() != null) {
+            where.append(" AND f.release_date <= :releasedTo");
+            params.addValue("releasedTo", query.getReleasedTo());
+        }
+        if (query.getMinDuration() != null) {
+            where.append(" AND f.duration >= :minDuration");
+            params.addValue("minDuration", query.getMinDuration());
+        }
+        if (query.getMaxDuration() != null) {
+            where.append(" AND f.duration <= :maxDuration");
+            params.addValue("maxDuration", query.getMaxDuration());
+        }
+        String order = key != null ? " ORDER BY " + key + ", f.id LIMIT :limit" : " ORDER BY f.id LIMIT :limit";
+        String after = key != null
+                ? " AND (" + key + " > :lastKey OR " + key + " = :lastKey AND f.id > :lastId)"
+                : " AND f.id > :lastId";
+        return JdbcRows.pages(last -> {
+            if (last == null) {
+                return JdbcRows.withLikes(named, named.query(SELECT_FILMS + where + order, params, JdbcRows::film));
+            }
+            MapSqlParameterSource next = new MapSqlParameterSource(params.getValues())
+                    .addValue("lastId", last.getId())
+                    .addValue("lastKey", keyOf.apply(last));
+            return JdbcRows.withLikes(named, named.query(SELECT_FILMS + where + after + order, next,
+                    JdbcRows::film));
+        });
+    }
+
+    // Кандидаты - фильмы, в названии или описании которых есть слово запроса как подстрока (без
+    // полнотекстового индекса это просмотр таблицы), до MAX_SEARCH_CANDIDATES. Их ранжирует BM25
+    // во временном TextIndex, поэтому частоты слов считаются по кандидатам, а не по всему каталогу.
+    @Override
+    public List<Film> search(String query, int count, boolean boostByLikes) {
+        List<String> tokens = TextIndex.tokenize(query).stream().distinct().toList();
+        if (tokens.isEmpty() || count <= 0) {
+            return List.of();
+        }
+        StringBuilder where = new StringBuilder();
+        MapSqlParameterSource params = new MapSqlParameterSource("limit", MAX_SEARCH_CANDIDATES);
+        for (int i = 0; i < tokens.size(); i++) {
+            where.append(i == 0 ? "WHERE " : " OR ")
+                    .append("REPLACE(f.name_key, 'ё', 'е') LIKE :t").append(i)
+                    .append(" OR REPLACE(LOWER(f.description), 'ё', 'е') LIKE :t").append(i);
+            params.addValue("t" + i, "%" + tokens.get(i) + "%");
+        }
+        TextIndex text = new TextIndex();
+        List<Long> candidates = new ArrayList<>();
+        named.query("SELECT f.id, f.name, f.description FROM films f " + where + " LIMIT :limit", params,
+                (RowCallbackHandler) rs -> {
+                    text.put(rs.getLong(1), rs.getString(2), rs.getString(3));
+                    candidates.add(rs.getLong(1));
+                });
+        Map<Long, Integer> likes = new HashMap<>();
+        if (boostByLikes) {
+            for (List<Long> chunk : JdbcRows.chunks(candidates)) {
+                named.query("SELECT film_id, COUNT(*) FROM likes WHERE film_id IN (:ids) GROUP BY film_id",
+                        Map.of("ids", chunk), (RowCallbackHandler) rs -> likes.put(rs.getLong(1), rs.getInt(2)));
+            }
+        }
+        long[] ranked = text.search(query, count, boostByLikes ? id -> likes.getOrDefault(id, 0) : null);
+        return findAll(Arrays.stream(ranked).boxed().toList());
+    }
+
+    // Считается по индексу likes (liked_at, film_id) на момент запроса; refreshTrending не нужен.
+    @Override
+    public Collection<Film> getTrending(TrendingPeriod period, int count) {
+        Timestamp since = new Timestamp(System.currentTimeMillis() - period.getDuration().toMillis());
+        return findAll(jdbc.queryForList("SELECT film_id FROM likes WHERE liked_at >= ? "
+                + "GROUP BY film_id ORDER BY COUNT(*) DESC, film_id LIMIT ?", Long.class, since, count));
+    }
+
+    @Override
+    public void refreshTrending() {
+    }
+
+    @Override
+    public IdSet getLikedFilms(long userId) {
+        IdSet films = new IdSet();
+        jdbc.query("SELECT film_id FROM likes WHERE user_id = ?",
+                (RowCallbackHandler) rs -> films.add(rs.getLong(1)), userId);
+        return films;
+    }
+
+    // Фильм или пользователь не найден (в том числе удалён параллельно) - лайк не ставится.
+    @Override
+    public boolean addLike(long filmId, long userId) {
+        try {
+            return Boolean.TRUE.equals(tx.execute(status -> {
+                Timestamp now = new Timestamp(System.currentTimeMillis());
+                if (jdbc.update(INSERT_LIKE, filmId, userId, now, filmId, userId) == 0) {
+                    return false;
+                }
+                long version = jdbc.queryForObject(BUMP_VERSION, Long.class, 1, filmId);
+                publish(ChangeType.LIKE_ADDED, filmId, userId, version);
+                return true;
+            }));
+        } catch (DataIntegrityViolationException e) {
+            return false;
+        }
+    }
+
+    // Один пакетный INSERT в порядке (фильм, пользователь) и одно увеличение версии на фильм.
+    // Если пакет не прошёл из-за параллельного удаления фильма или пользователя, лайки ставятся по одному.
+    @Override
+    public boolean[] addLikes(long[] filmIds, long[] userIds) {
+        Integer[] order = IntStream.range(0, filmIds.length).boxed().toArray(Integer[]::new);
+        Arrays.sort(order, Comparator.<Integer>comparingLong(i -> filmIds[i]).thenComparingLong(i -> userIds[i]));
+        boolean[] added = new boolean[filmIds.length];
+        try {
+            tx.executeWithoutResult(status -> {
+                Timestamp now = new Timestamp(System.currentTimeMillis());
+                List<Object[]> rows = new ArrayList<>(order.length);
+                for (int i : order) {
+                    rows.add(new Object[]{filmIds[i], userIds[i], now, filmIds[i], userIds[i]});
+                }
+                int[] counts = jdbc.batchUpdate(INSERT_LIKE, rows);
+                Map<Long, Integer> perFilm = new TreeMap<>();
+                for (int k = 0; k < order.length; k++) {
+                    if (counts[k] > 0) {
+                        added[order[k]] = true;
+                        perFilm.merge(filmIds[order[k]], 1, Integer::sum);
+                    }
+                }
+                jdbc.batchUpdate("UPDATE films SET version = version + ? WHERE id = ?",
+                        perFilm.entrySet().stream().map(e -> new Object[]{e.getValue(), e.getKey()}).toList());
+                publishLikes(filmIds, userIds, added, perFilm);
+            });
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Пакет лайков не записан ({}), лайки ставятся по одному.", e.getMostSpecificCause().getMessage());
+            for (int i = 0; i < filmIds.length; i++) {
+                added[i] = addLike(filmIds[i], userIds[i]);
+            }
+        }
+        return added;
+    }
+
+    @Override
+    public boolean removeLike(long filmId, long userId) {
+        return Boolean.TRUE.equals(tx.execute(status -> {
+            if (jdbc.update("DELETE FROM likes WHERE film_id = ? AND user_id = ?", filmId, userId) == 0) {
+                return false;
+            }
+            long version = jdbc.queryForObject(BUMP_VERSION, Long.class, 1, filmId);
+            publish(ChangeType.LIKE_REMOVED, filmId, userId, version);
+            return true;
+        }));
+    }
+
+    // Для датчиков: каждое снятие метрик - запрос COUNT(*).
+    public long count() {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM films", Long.class);
+    }
+
+    public long countLikes() {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM likes", Long.class);
+    }
+
+    private Film find(long id) {
+        Film film = JdbcRows.first(jdbc.query(SELECT_FILMS + "WHERE f.id = ?", JdbcRows::film, id));
+        return film != null ? JdbcRows.withLikes(named, List.of(film)).get(0) : null;
+    }
+
+    // Фильмы в порядке ids, отсутствующие пропускаются.
+    private List<Film> findAll(List<Long> ids) {
+        Map<Long, Film> films = new HashMap<>();
+        for (List<Long> chunk : JdbcRows.chunks(ids)) {
+            named.query(SELECT_FILMS + "WHERE f.id IN (:ids)", Map.of("ids", chunk), JdbcRows::film)
+                    .forEach(f -> films.put(f.getId(), f));
+        }
+        JdbcRows.withLikes(named, films.values());
+        return ids.stream().map(films::get).filter(Objects::nonNull).toList();
+    }
+
+    // Версии после пакета читаются под блокировками строк; лайки одного фильма получают
+    // версии подряд в порядке пакета.
+    private void publishLikes(long[] filmIds, long[] userIds, boolean[] added, Map<Long, Integer> perFilm) {
+        if (changeEvents == null || perFilm.isEmpty()) {
+            return;
+        }
+        Map<Long, Long> versions = new HashMap<>();
+        for (List<Long> chunk : JdbcRows.chunks(perFilm.keySet())) {
+            named.query("SELECT id, version FROM films WHERE id IN (:ids)", Map.of("ids", chunk),
+                    (RowCallbackHandler) rs -> versions.put(rs.getLong(1), rs.getLong(2)));
+        }
+        perFilm.forEach((filmId, count) -> versions.computeIfPresent(filmId, (id, version) -> version - count));
+        for (int i = 0; i < filmIds.length; i++) {
+            if (added[i]) {
+                long version = versions.merge(filmIds[i], 1L, Long::sum);
+                publish(ChangeType.LIKE_ADDED, filmIds[i], userIds[i], version);
+            }
+        }
+    }
+
+    // Версия прочитана в транзакции под блокировкой строки, событие уходит только после фиксации.
+    private void publish(ChangeType type, long id, long relatedId, long version) {
+        ChangeEventBus events = changeEvents;
+        if (events != null) {
+            JdbcRows.afterCommit(() -> events.publish(type, id, relatedId, version));
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package ru.yandex.practicum.filmorate.storage.jdbc;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.util.IdSet;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Общее для JDBC-хранилищ: разбор строк, догрузка связей пачками по IN, постраничные потоки
+// и действия после фиксации транзакции.
+final class JdbcRows {
+    static final String FILM_COLUMNS = "f.id, f.name, f.description, f.release_date, f.duration, f.version";
+    static final String USER_COLUMNS = "u.id, u.email, u.login, u.name, u.birthday, u.version";
+    // Строк на страницу потока и id в одном IN.
+    static final int PAGE_SIZE = 256;
+    static final int IN_CHUNK = 1000;
+
+    private JdbcRows() {
+    }
+
+    static Film film(ResultSet rs, int rowNum) throws SQLException {
+        Film film = new Film(rs.getLong("id"), rs.getString("name"), rs.getString("description"),
+                rs.getObject("release_date", LocalDate.class), rs.getInt("duration"));
+        film.getVersion().set(rs.getLong("version"));
+        return film;
+    }
+
+    static User user(ResultSet rs, int rowNum) throws SQLException {
+        User user = new User(rs.getLong("id"), rs.getString("email"), rs.getString("login"),
+                rs.getString("name"), rs.getObject("birthday", LocalDate.class));
+        user.getVersion().set(rs.getLong("version"));
+        return user;
+    }
+
+    static <T> T first(List<T> rows) {
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    // Выполняет action после фиксации текущей транзакции (при откате - никогда), вне транзакции - сразу.
+    static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    // Лайки фильмов одним запросом на IN_CHUNK фильмов.
+    static <C extends Collection<Film>> C withLikes(NamedParameterJdbcTemplate named, C films) {
+        loadLinks(named, "SELECT film_id, user_id FROM likes WHERE film_id IN (:ids)",
+                films, Film::getId, Film::getLikes);
+        return films;
+    }
+
+    static <C extends Collection<User>> C withFriends(NamedParameterJdbcTemplate named, C users) {
+        loadLinks(named, "SELECT user_id, friend_id FROM friendships WHERE user_id IN (:ids)",
+                users, User::getId, User::getFriends);
+        return users;
+    }
+
+    // Поток, читаемый страницами по PAGE_SIZE строк: next(последняя строка предыдущей страницы,
+    // для первой - null) возвращает следующую. Каждая страница - отдельный короткий запрос,
+    // поэтому недочитанный и незакрытый поток не держит соединение пула.
+    static <T> Stream<T> pages(Function<T, List<T>> next) {
+        Iterator<T> rows = new Iterator<>() {
+            private List<T> page = next.apply(null);
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                if (position < page.size()) {
+                    return true;
+                }
+                if (page.size() < PAGE_SIZE) {
+                    return false;
+                }
+                page = next.apply(page.get(page.size() - 1));
+                position = 0;
+                return !page.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.get(position++);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    static List<List<Long>> chunks(Collection<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        List<Long> chunk = new ArrayList<>(Math.min(ids.size(), IN_CHUNK));
+        for (Long id : ids) {
+            if (chunk.size() == IN_CHUNK) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(IN_CHUNK);
+            }
+            chunk.add(id);
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private static <T> void loadLinks(NamedParameterJdbcTemplate named, String sql, Collection<T> owners,
+                                      Function<T, Long> id, Function<T, IdSet> links) {
+        Map<Long, T> byId = new HashMap<>();
+        owners.forEach(owner -> byId.put(id.apply(owner), owner));
+        for (List<Long> chunk : chunks(byId.keySet())) {
+            named.query(sql, Map.of("ids", chunk),
+                    (RowCallbackHandler) rs -> links.apply(byId.get(rs.getLong(1))).add(rs.getLong(2)));
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package ru.yandex.practicum.filmorate.storage.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.events.ChangeEventBus;
+import ru.yandex.practicum.filmorate.exception.PreconditionFailedException;
+import ru.yandex.practicum.filmorate.exception.StorageException;
+import ru.yandex.practicum.filmorate.model.ChangeType;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.Versions;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Пользователи в реляционной базе (профиль jdbc), дружба - таблица связей friendships, хранимая
+ * в обе стороны. Уникальность логина и email обеспечивают ограничения таблицы users.
+ * <p>
+ * Обе строки дружбы вставляются в порядке (меньший id, больший id), затем версии обоих пользователей
+ * увеличиваются по возрастанию id, поэтому встречные addFriend не взаимоблокируются. Общие друзья -
+ * соединение friendships с собой по friend_id, друзья пачки пользователей догружаются одним IN.
+ */
+@Component
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "jdbc")
+public class JdbcUserStorage implements UserStorage {
+    private static final String SELECT_USERS = "SELECT " + JdbcRows.USER_COLUMNS + " FROM users u ";
+    private static final String INSERT_FRIEND = "INSERT INTO friendships (user_id, friend_id) "
+            + "SELECT ?, ? WHERE NOT EXISTS (SELECT 1 FROM friendships WHERE user_id = ? AND friend_id = ?)";
+    private static final String BUMP_VERSION =
+            "SELECT version FROM FINAL TABLE (UPDATE users SET version = version + ? WHERE id = ?)";
+
+    private final JdbcTemplate jdbc;
+    private final NamedParameterJdbcTemplate named;
+    private final TransactionTemplate tx;
+    private volatile ChangeEventBus changeEvents;
+
+    private static final Logger log = LoggerFactory.getLogger(JdbcUserStorage.class);
+
+    public JdbcUserStorage(JdbcTemplate jdbc, NamedParameterJdbcTemplate named, TransactionTemplate tx) {
+        this.jdbc = jdbc;
+        this.named = named;
+        this.tx = tx;
+    }
+
+    @Autowired(required = false)
+    public void setChangeEvents(ChangeEventBus changeEvents) {
+        this.changeEvents = changeEvents;
+    }
+
+    // Друзья из тела запроса не сохраняются: они добавляются только через addFriend.
+    @Override
+    public void add(User user) {
+        try {
+            tx.executeWithoutResult(status -> {
+                KeyHolder key = new GeneratedKeyHolder();
+                jdbc.update(con -> {
+                    PreparedStatement ps = con.prepareStatement(
+                            "INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?)",
+                            new String[]{"id"});
+                    ps.setString(1, user.getEmail());
+                    ps.setString(2, user.getLogin());
+                    ps.setString(3, user.getName());
+                    ps.setObject(4, user.getBirthday());
+                    return ps;
+                }, key);
+                user.setId(Objects.requireNonNull(key.getKey()).longValue());
+                user.getFriends().clear();
+                user.getVersion().set(Versions.INITIAL);
+                publish(ChangeType.USER_CREATED, user.getId(), 0, Versions.INITIAL);
+            });
+        } catch (DuplicateKeyException e) {
+            throw taken(user);
+        }
+    }
+
+    @Override
+    public Optional<User> update(User newUser, long expectedVersion) {
+        try {
+            return tx.execute(status -> {
+                User oldUser = find(newUser.getId());
+                if (oldUser == null) {
+                    return Optional.empty();
+                }
+                List<Long> version = jdbc.queryForList("SELECT version FROM FINAL TABLE (UPDATE users "
+                                + "SET email = ?, login = ?, name = ?, birthday = ?, version = version + 1 "
+                                + "WHERE id = ? AND (? = -1 OR version = ?))", Long.class,
+                        newUser.getEmail(), newUser.getLogin(), newUser.getName(), newUser.getBirthday(),
+                        newUser.getId(), expectedVersion, expectedVersion);
+                if (version.isEmpty()) {
+                    if (expectedVersion == Versions.ANY) {
+                        return Optional.empty();
+                    }
+                    throw new PreconditionFailedException(User.class.getSimpleName(),
+                            String.valueOf(newUser.getId()));
+                }
+                newUser.getFriends().clear();
+                newUser.getFriends().addAll(oldUser.getFriends());
+                newUser.getVersion().set(version.get(0));
+                publish(ChangeType.USER_UPDATED, newUser.getId(), 0, version.get(0));
+                return Optional.of(newUser);
+            });
+        } catch (DuplicateKeyException e) {
+            throw taken(newUser);
+        }
+    }
+
+    @Override
+    public Optional<User> remove(long id) {
+        return tx.execute(status -> {
+            User user = find(id);
+            if (user == null || jdbc.update("DELETE FROM users WHERE id = ?", id) == 0) {
+                return Optional.empty();
+            }
+            publish(ChangeType.USER_REMOVED, id, 0, user.getVersion().get());
+            return Optional.of(user);
+        });
+    }
+
+    @Override
+    public Optional<User> getUserById(long id) {
+        return Optional.ofNullable(find(id));
+    }
+
+    // Один IN на IN_CHUNK id; результат в порядке ids, отсутствующие пропускаются.
+    @Override
+    public Collection<User> getUsersByIds(Collection<Long> ids) {
+        Map<Long, User> users = new HashMap<>();
+        for (List<Long> chunk : JdbcRows.chunks(ids.stream().distinct().toList())) {
+            named.query(SELECT_USERS + "WHERE u.id IN (:ids)", Map.of("ids", chunk), JdbcRows::user)
+                    .forEach(u -> users.put(u.getId(), u));
+        }
+        JdbcRows.withFriends(named, users.values());
+        return ids.stream().map(users::get).filter(Objects::nonNull).toList();
+    }
+
+    @Override
+    public Collection<User> getAll() {
+        Map<Long, User> users = new LinkedHashMap<>();
+        jdbc.query(SELECT_USERS + "ORDER BY u.id", JdbcRows::user).forEach(u -> users.put(u.getId(), u));
+        jdbc.query("SELECT user_id, friend_id FROM friendships", (RowCallbackHandler) rs -> {
+            User user = users.get(rs.getLong(1));
+            if (user != null) {
+                user.getFriends().add(rs.getLong(2));
+            }
+        });
+        return users.values();
+    }
+
+    @Override
+    public Stream<User> getAllAfter(long afterId) {
+        return JdbcRows.pages(last -> JdbcRows.withFriends(named, jdbc.query(
+                SELECT_USERS + "WHERE u.id > ? ORDER BY u.id LIMIT ?", JdbcRows::user,
+                last != null ? last.getId() : afterId, JdbcRows.PAGE_SIZE)));
+    }
+
+    // Друзья id1 (первичный ключ friendships), у которых есть строка (id2, друг), по возрастанию id.
+    @Override
+    public Collection<User> getCommonFriends(long id1, long id2, int from, int size) {
+        return JdbcRows.withFriends(named, jdbc.query(SELECT_USERS
+                + "JOIN friendships a ON a.friend_id = u.id AND a.user_id = ? "
+                + "JOIN friendships b ON b.friend_id = a.friend_id AND b.user_id = ? "
+                + "ORDER BY u.id LIMIT ? OFFSET ?", JdbcRows::user, id1, id2, size, from));
+    }
+
+    @Override
+    public Optional<User> getUserByEmail(String email) {
+        return findBy("email", email);
+    }
+
+    @Override
+    public Optional<User> getUserByLogin(String login) {
+        return findBy("login", login);
+    }
+
+    // Пользователь не найден (в том числе удалён параллельно) - дружба не добавляется.
+    @Override
+    public boolean addFriend(long id, long friendId) {
+        try {
+            return Boolean.TRUE.equals(tx.execute(status -> {
+                if (!insertFriendship(id, friendId)) {
+                    return false;
+                }
+                long version = bumpVersions(id, friendId);
+                publish(ChangeType.FRIEND_ADDED, id, friendId, version);
+                return true;
+            }));
+        } catch (DataIntegrityViolationException e) {
+            return false;
+        }
+    }
+
+    // Пакетный INSERT обеих строк каждой дружбы в порядке (меньший id, больший id), затем версии
+    // пользователей по возрастанию id. Если пакет не прошёл, дружбы добавляются по одной.
+    @Override
+    public boolean[] addFriends(long[] ids, long[] friendIds) {
+        Integer[] order = IntStream.range(0, ids.length).boxed().toArray(Integer[]::new);
+        Arrays.sort(order, Comparator.<Integer>comparingLong(i -> Math.min(ids[i], friendIds[i]))
+                .thenComparingLong(i -> Math.max(ids[i], friendIds[i])));
+        boolean[] added = new boolean[ids.length];
+        try {
+            tx.executeWithoutResult(status -> {
+                List<Object[]> rows = new ArrayList<>(order.length * 2);
+                for (int i : order) {
+                    long low = Math.min(ids[i], friendIds[i]);
+                    long high = Math.max(ids[i], friendIds[i]);
+                    rows.add(new Object[]{low, high, low, high});
+                    rows.add(new Object[]{high, low, high, low});
+                }
+                int[] counts = jdbc.batchUpdate(INSERT_FRIEND, rows);
+                Map<Long, Integer> perUser = new TreeMap<>();
+                for (int k = 0; k < order.length; k++) {
+                    if (counts[2 * k] > 0 || counts[2 * k + 1] > 0) {
+                        added[order[k]] = true;
+                        perUser.merge(ids[order[k]], 1, Integer::sum);
+                        perUser.merge(friendIds[order[k]], 1, Integer::sum);
+                    }
+                }
+                jdbc.batchUpdate("UPDATE users SET version = version + ? WHERE id = ?",
+                        perUser.entrySet().stream().map(e -> new Object[]{e.getValue(), e.getKey()}).toList());
+                publishFriends(ids, friendIds, added, perUser);
+            });
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Пакет дружб не записан ({}), дружбы добавляются по одной.", e.getMostSpecificCause().getMessage());
+            for (int i = 0; i < ids.length; i++) {
+                added[i] = addFriend(ids[i], friendIds[i]);
+            }
+        }
+        return added;
+    }
+
+    @Override
+    public boolean removeFriend(long id, long friendId) {
+        return Boolean.TRUE.equals(tx.execute(status -> {
+            int removed = jdbc.update("DELETE FROM friendships "
+                    + "WHERE user_id = ? AND friend_id = ? OR user_id = ? AND friend_id = ?",
+                    id, friendId, friendId, id);
+            if (removed == 0) {
+                return false;
+            }
+            long version = bumpVersions(id, friendId);
+            publish(ChangeType.FRIEND_REMOVED, id, friendId, version);
+            return true;
+        }));
+    }
+
+    // Для датчиков: каждое снятие метрик - запрос COUNT(*). Дружба хранится двумя строками, как и
+    // связи в памяти - в обе стороны.
+    public long count() {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM users", Long.class);
+    }
+
+    public long countFriendEdges() {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM friendships", Long.class);
+    }
+
+    private User find(long id) {
+        User user = JdbcRows.first(jdbc.query(SELECT_USERS + "WHERE u.id = ?", JdbcRows::user, id));
+        return user != null ? JdbcRows.withFriends(named, List.of(user)).get(0) : null;
+    }
+
+    private Optional<User> findBy(String column, String value) {
+        List<User> users = jdbc.query(SELECT_USERS + "WHERE u." + column + " = ?", JdbcRows::user, value);
+        return Optional.ofNullable(JdbcRows.first(JdbcRows.withFriends(named, users)));
+    }
+
+    private boolean insertFriendship(long id, long friendId) {
+        long low = Math.min(id, friendId);
+        long high = Math.max(id, friendId);
+        boolean added = jdbc.update(INSERT_FRIEND, low, high, low, high) > 0;
+        return jdbc.update(INSERT_FRIEND, high, low, high, low) > 0 || added;
+    }
+
+    // Увеличивает версии обоих пользователей по возрастанию id; возвращает новую версию id.
+    private long bumpVersions(long id, long friendId) {
+        long first = jdbc.queryForObject(BUMP_VERSION, Long.class, 1, Math.min(id, friendId));
+        long second = jdbc.queryForObject(BUMP_VERSION, Long.class, 1, Math.max(id, friendId));
+        return id < friendId ? first : second;
+    }
+
+    // Версии после пакета читаются под блокировками строк и раздаются событиям по порядку пакета.
+    private void publishFriends(long[] ids, long[] friendIds, boolean[] added, Map<Long, Integer> perUser) {
+        if (changeEvents == null || perUser.isEmpty()) {
+            return;
+        }
+        Map<Long, Long> versions = new HashMap<>();
+        for (List<Long> chunk : JdbcRows.chunks(perUser.keySet())) {
+            named.query("SELECT id, version FROM users WHERE id IN (:ids)", Map.of("ids", chunk),
+                    (RowCallbackHandler) rs -> versions.put(rs.getLong(1), rs.getLong(2)));
+        }
+        perUser.forEach((userId, count) -> versions.computeIfPresent(userId, (key, version) -> version - count));
+        for (int i = 0; i < ids.length; i++) {
+            if (added[i]) {
+                versions.merge(friendIds[i], 1L, Long::sum);
+                publish(ChangeType.FRIEND_ADDED, ids[i], friendIds[i], versions.merge(ids[i], 1L, Long::sum));
+            }
+        }
+    }
+
+    // Нарушено ограничение уникальности: ищется владелец логина или email, как в хранилище в памяти.
+    private StorageException taken(User user) {
+        String err = findBy("login", user.getLogin())
+                .filter(owner -> owner.getId() != user.getId())
+                .map(owner -> String.format("Логин %s используется пользователем id=%s", user.getLogin(), owner.getId()))
+                .or(() -> findBy("email", user.getEmail())
+                        .filter(owner -> owner.getId() != user.getId())
+                        .map(owner -> String.format("Email %s используется пользователем id=%s",
+                                user.getEmail(), owner.getId())))
+                .orElse(String.format("Логин %s или email %s уже используется", user.getLogin(), user.getEmail()));
+        log.warn(err);
+        return new StorageException(err);
+    }
+
+    // Версия прочитана в транзакции под блокировкой строки, событие уходит только после фиксации.
+    private void publish(ChangeType type, long id, long relatedId, long version) {
+        ChangeEventBus events = changeEvents;
+        if (events != null) {
+            JdbcRows.afterCommit(() -> events.publish(type, id, relatedId, version));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package ru.yandex.practicum.filmorate.storage.shard;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.TrendingPeriod;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.TextIndex;
+import ru.yandex.practicum.filmorate.storage.TrendingIndex;
+
+import java.util.List;
+
+// Часть хранилища фильмов: фильмы с дуг кольца этой части, со своими блокировками и индексами.
+// Открывает маршрутизатору добавление с назначенным id и рейтинги с числами для слияния.
+final class FilmShard extends InMemoryFilmStorage {
+    @Override
+    protected void add(Film film, long id) {
+        super.add(film, id);
+    }
+
+    @Override
+    protected TrendingIndex.Ranking getTrendingRanking(TrendingPeriod period) {
+        return super.getTrendingRanking(period);
+    }
+
+    @Override
+    protected List<TextIndex.Hit> searchHits(String query, int count, boolean boostByLikes) {
+        return super.searchHits(query, count, boostByLikes);
+    }
+}
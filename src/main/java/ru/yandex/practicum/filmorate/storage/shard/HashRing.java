@@ -0,0 +1,68 @@
+package ru.yandex.practicum.filmorate.storage.shard;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * Кольцо согласованного хеширования id по частям хранилища. У каждой части virtualNodes точек
+ * на кольце 64-битных хешей; id принадлежит части, чья точка первая не меньше хеша id (с переходом
+ * через конец кольца). Дуги одной части разбросаны по кольцу, поэтому части получают примерно
+ * равные доли id, а при добавлении части к ней переходит около 1/(n+1) id - только с её новых дуг,
+ * остальные id остаются на месте. Кольцо неизменяемо и зависит только от числа частей и точек,
+ * так что у процессов с одинаковыми настройками оно совпадает.
+ */
+public final class HashRing {
+    // Точки хешируются с солью: иначе точка (часть 0, номер k) совпала бы с хешем id = k.
+    private static final long POINT_SALT = 0x9e3779b97f4a7c15L;
+
+    private final long[] points;
+    private final int[] owners;
+    private final int shards;
+
+    public HashRing(int shards, int virtualNodes) {
+        if (shards <= 0 || virtualNodes <= 0) {
+            throw new IllegalArgumentException("Число частей и точек на кольце должно быть положительным");
+        }
+        this.shards = shards;
+        int n = shards * virtualNodes;
+        long[] hashes = new long[n];
+        for (int shard = 0; shard < shards; shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                hashes[shard * virtualNodes + node] = mix(((long) shard << 32 | node) ^ POINT_SALT);
+            }
+        }
+        int[] order = IntStream.range(0, n).boxed()
+                .sorted(Comparator.comparingLong(i -> hashes[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        points = new long[n];
+        owners = new int[n];
+        for (int i = 0; i < n; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = order[i] / virtualNodes;
+        }
+    }
+
+    public int shardOf(long id) {
+        int i = Arrays.binarySearch(points, mix(id));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == points.length ? 0 : i];
+    }
+
+    public int size() {
+        return shards;
+    }
+
+    // Финализатор MurmurHash3: соседние id и номера точек расходятся по всему кольцу.
+    static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+}
@@ -0,0 +1,209 @@
+package ru.yandex.practicum.filmorate.storage.shard;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.events.ChangeEventBus;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmQuery;
+import ru.yandex.practicum.filmorate.model.TrendingPeriod;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.TextIndex;
+import ru.yandex.practicum.filmorate.storage.TrendingIndex;
+import ru.yandex.practicum.filmorate.util.IdSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище фильмов из нескольких частей (FilmShard), между которыми id распределяются кольцом
+ * согласованного хеширования. У каждой части свои фильмы, блокировки и индексы; лайки хранятся
+ * в части фильма. id раздаёт маршрутизатор, часть только хранит фильм с этим id.
+ * <p>
+ * Операции над одним фильмом идут в его часть. Операции над всем каталогом опрашивают части
+ * параллельно и сливают упорядоченные ответы: топ, тренды и поиск - k-путевым слиянием первых
+ * count из каждой части, списки и выборки - ленивым слиянием потоков в порядке их индекса.
+ * Части общаются с маршрутизатором только через свои методы, поэтому их можно вынести в отдельные
+ * процессы, заменив вызовы сетевыми. Оценки поиска считаются по статистике слов своей части:
+ * при равномерном распределении id они близки к оценкам по всему каталогу, но не совпадают.
+ */
+@Component
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "sharded")
+public class ShardedFilmStorage implements FilmStorage {
+    // Порядок топа в PopularityIndex и трендов в TrendingIndex: по убыванию лайков, затем по id.
+    private static final Comparator<Rank> BY_LIKES = Comparator.comparingInt(Rank::likes).reversed()
+            .thenComparingLong(Rank::id);
+    private static final Comparator<TextIndex.Hit> BY_SCORE = Comparator
+            .comparingDouble(TextIndex.Hit::score).reversed()
+            .thenComparingLong(TextIndex.Hit::filmId);
+    private static final Comparator<Film> BY_ID = Comparator.comparingLong(Film::getId);
+
+    private final HashRing ring;
+    private final List<FilmShard> shards;
+    private final AtomicLong lastId = new AtomicLong();
+
+    public ShardedFilmStorage(@Value("${filmorate.storage.shards:4}") int shardCount,
+                              @Value("${filmorate.storage.shard-virtual-nodes:256}") int virtualNodes) {
+        ring = new HashRing(shardCount, virtualNodes);
+        shards = IntStream.range(0, shardCount).mapToObj(i -> new FilmShard()).toList();
+    }
+
+    @Autowired(required = false)
+    public void setChangeEvents(ChangeEventBus changeEvents) {
+        shards.forEach(shard -> shard.setChangeEvents(changeEvents));
+    }
+
+    // Части по порядку - для метрик распределения.
+    public List<? extends InMemoryFilmStorage> shards() {
+        return shards;
+    }
+
+    @Override
+    public void add(Film film) {
+        long id = lastId.incrementAndGet();
+        shard(id).add(film, id);
+    }
+
+    @Override
+    public Optional<Film> update(Film film, long expectedVersion) {
+        return shard(film.getId()).update(film, expectedVersion);
+    }
+
+    @Override
+    public Optional<Film> remove(long id) {
+        return shard(id).remove(id);
+    }
+
+    @Override
+    public Optional<Film> get(long id) {
+        return shard(id).get(id);
+    }
+
+    @Override
+    public Collection<Film> getAll() {
+        List<Collection<Film>> parts = Shards.map(shards, FilmShard::getAll);
+        return Shards.mergeTop(parts.stream().map(List::copyOf).toList(), BY_ID, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Stream<Film> getAllAfter(long afterId) {
+        return Shards.merge(shards.stream().map(shard -> shard.getAllAfter(afterId)).toList(), BY_ID);
+    }
+
+    // Число лайков фиксируется на момент ответа части, чтобы порядок кучи не менялся во время слияния.
+    @Override
+    public Collection<Film> getTopRated(int count) {
+        List<List<Rank>> parts = Shards.map(shards, shard -> shard.getTopRated(count).stream()
+                .map(film -> new Rank(film.getId(), film.getLikes().size(), film))
+                .toList());
+        return Shards.mergeTop(parts, BY_LIKES, count).stream().map(Rank::film).toList();
+    }
+
+    @Override
+    public Stream<Film> findByAttributes(FilmQuery query) {
+        Comparator<Film> order;
+        if (query.getNamePrefix() != null) {
+            order = Comparator.comparing((Film film) -> FilmQuery.nameKey(film.getName()));
+        } else if (query.hasReleaseRange()) {
+            order = Comparator.comparing(Film::getReleaseDate);
+        } else if (query.hasDurationRange()) {
+            order = Comparator.comparingInt(Film::getDuration);
+        } else {
+            order = BY_ID;
+        }
+        return Shards.merge(shards.stream().map(shard -> shard.findByAttributes(query)).toList(),
+                order.thenComparing(BY_ID));
+    }
+
+    @Override
+    public List<Film> search(String query, int count, boolean boostByLikes) {
+        List<List<TextIndex.Hit>> parts = Shards.map(shards, shard -> shard.searchHits(query, count, boostByLikes));
+        return resolve(Shards.mergeTop(parts, BY_SCORE, count), TextIndex.Hit::filmId);
+    }
+
+    // Как и одно хранилище, отдаёт не больше TrendingIndex.MAX_COUNT фильмов.
+    @Override
+    public Collection<Film> getTrending(TrendingPeriod period, int count) {
+        int limit = Math.min(count, TrendingIndex.MAX_COUNT);
+        List<List<Rank>> parts = Shards.map(shards, shard -> {
+            TrendingIndex.Ranking ranking = shard.getTrendingRanking(period);
+            List<Rank> ranks = new ArrayList<>(Math.min(limit, ranking.ids().length));
+            for (int i = 0; i < ranking.ids().length && i < limit; i++) {
+                ranks.add(new Rank(ranking.ids()[i], ranking.likes()[i], null));
+            }
+            return ranks;
+        });
+        return resolve(Shards.mergeTop(parts, BY_LIKES, limit), Rank::id);
+    }
+
+    @Override
+    public void refreshTrending() {
+        Shards.forEach(shards, FilmShard::refreshTrending);
+    }
+
+    @Override
+    public IdSet getLikedFilms(long userId) {
+        IdSet liked = new IdSet();
+        Shards.map(shards, shard -> shard.getLikedFilms(userId)).forEach(liked::addAll);
+        return liked;
+    }
+
+    @Override
+    public boolean addLike(long filmId, long userId) {
+        return shard(filmId).addLike(filmId, userId);
+    }
+
+    // Пакет делится по частям фильмов, части применяют свои доли параллельно.
+    @Override
+    public boolean[] addLikes(long[] filmIds, long[] userIds) {
+        List<List<Integer>> positions = new ArrayList<>(shards.size());
+        shards.forEach(shard -> positions.add(new ArrayList<>()));
+        for (int i = 0; i < filmIds.length; i++) {
+            positions.get(ring.shardOf(filmIds[i])).add(i);
+        }
+        boolean[] added = new boolean[filmIds.length];
+        Shards.forEach(IntStream.range(0, shards.size()).boxed().toList(), s -> {
+            List<Integer> part = positions.get(s);
+            if (part.isEmpty()) {
+                return;
+            }
+            long[] partFilms = part.stream().mapToLong(i -> filmIds[i]).toArray();
+            long[] partUsers = part.stream().mapToLong(i -> userIds[i]).toArray();
+            boolean[] partAdded = shards.get(s).addLikes(partFilms, partUsers);
+            for (int k = 0; k < partAdded.length; k++) {
+                added[part.get(k)] = partAdded[k];
+            }
+        });
+        return added;
+    }
+
+    @Override
+    public boolean removeLike(long filmId, long userId) {
+        return shard(filmId).removeLike(filmId, userId);
+    }
+
+    private FilmShard shard(long id) {
+        return shards.get(ring.shardOf(id));
+    }
+
+    // Фильмы по id из слитой выдачи в её порядке; удалённые за это время пропускаются.
+    private <T> List<Film> resolve(List<T> ranked, Function<T, Long> id) {
+        return ranked.stream()
+                .map(item -> get(id.apply(item)).orElse(null))
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    private record Rank(long id, int likes, Film film) {
+    }
+}
@@ -0,0 +1,283 @@
+package ru.yandex.practicum.filmorate.storage.shard;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.events.ChangeEventBus;
+import ru.yandex.practicum.filmorate.exception.StorageException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.StripedLock;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.util.IdIntersection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище пользователей из нескольких частей (UserShard) на кольце согласованного хеширования,
+ * устроенное как ShardedFilmStorage.
+ * <p>
+ * Логин и email должны быть уникальны во всех частях, поэтому маршрутизатор ведёт их каталог
+ * (ключ -> id): ключ занимается в каталоге до записи в часть, поиск по логину и email идёт через него.
+ * Дружба внутри одной части меняется частью под блокировками обоих пользователей. Дружба между
+ * частями - две половины, каждая под блокировкой своего пользователя в своей части, а вся пара -
+ * под блокировками обоих id в маршрутизаторе: изменения одной пары не перемежаются, и половины
+ * не расходятся. Читатель между записью половин может увидеть дружбу только с одной стороны.
+ */
+@Component
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "sharded")
+public class ShardedUserStorage implements UserStorage {
+    private static final Comparator<User> BY_ID = Comparator.comparingLong(User::getId);
+
+    private final HashRing ring;
+    private final List<UserShard> shards;
+    private final AtomicLong lastId = new AtomicLong();
+    private final Map<String, Long> emails = new ConcurrentHashMap<>();
+    private final Map<String, Long> logins = new ConcurrentHashMap<>();
+    // Добавление, обновление и удаление одного пользователя вместе с его ключами в каталоге
+    // и обе половины дружбы между частями. Берутся раньше блокировок частей.
+    private final StripedLock locks = new StripedLock();
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedUserStorage.class);
+
+    public ShardedUserStorage(@Value("${filmorate.storage.shards:4}") int shardCount,
+                              @Value("${filmorate.storage.shard-virtual-nodes:256}") int virtualNodes) {
+        ring = new HashRing(shardCount, virtualNodes);
+        shards = IntStream.range(0, shardCount).mapToObj(i -> new UserShard()).toList();
+    }
+
+    @Autowired(required = false)
+    public void setChangeEvents(ChangeEventBus changeEvents) {
+        shards.forEach(shard -> shard.setChangeEvents(changeEvents));
+    }
+
+    public List<? extends InMemoryUserStorage> shards() {
+        return shards;
+    }
+
+    @Override
+    public void add(User user) {
+        long id = lastId.incrementAndGet();
+        locks.lock(id);
+        try {
+            reserve(logins, user.getLogin(), id, "Логин");
+            try {
+                reserve(emails, user.getEmail(), id, "Email");
+                shard(id).add(user, id);
+            } catch (RuntimeException e) {
+                logins.remove(user.getLogin(), id);
+                emails.remove(user.getEmail(), id);
+                throw e;
+            }
+        } finally {
+            locks.unlock(id);
+        }
+    }
+
+    @Override
+    public Optional<User> update(User newUser, long expectedVersion) {
+        long id = newUser.getId();
+        locks.lock(id);
+        try {
+            UserShard shard = shard(id);
+            User oldUser = shard.getUserById(id).orElse(null);
+            if (oldUser == null) {
+                return Optional.empty();
+            }
+            reserve(logins, newUser.getLogin(), id, "Логин");
+            Optional<User> updated = Optional.empty();
+            try {
+                reserve(emails, newUser.getEmail(), id, "Email");
+                updated = shard.update(newUser, expectedVersion);
+            } finally {
+                User kept = updated.isPresent() ? newUser : oldUser;
+                User dropped = updated.isPresent() ? oldUser : newUser;
+                release(logins, dropped.getLogin(), kept.getLogin(), id);
+                release(emails, dropped.getEmail(), kept.getEmail(), id);
+            }
+            return updated;
+        } finally {
+            locks.unlock(id);
+        }
+    }
+
+    @Override
+    public Optional<User> remove(long id) {
+        locks.lock(id);
+        try {
+            Optional<User> user = shard(id).remove(id);
+            user.ifPresent(u -> {
+                logins.remove(u.getLogin(), id);
+                emails.remove(u.getEmail(), id);
+            });
+            return user;
+        } finally {
+            locks.unlock(id);
+        }
+    }
+
+    @Override
+    public Optional<User> getUserById(long id) {
+        return shard(id).getUserById(id);
+    }
+
+    // id делятся по частям, части с несколькими id опрашиваются параллельно; результат в порядке ids.
+    @Override
+    public Collection<User> getUsersByIds(Collection<Long> ids) {
+        List<List<Long>> parts = new ArrayList<>(shards.size());
+        shards.forEach(shard -> parts.add(new ArrayList<>()));
+        ids.forEach(id -> parts.get(ring.shardOf(id)).add(id));
+        List<Integer> used = IntStream.range(0, parts.size()).filter(s -> !parts.get(s).isEmpty()).boxed().toList();
+        if (used.size() == 1) {
+            return shards.get(used.get(0)).getUsersByIds(ids);
+        }
+        Map<Long, User> found = new HashMap<>(ids.size() * 2);
+        Shards.map(used, s -> shards.get(s).getUsersByIds(parts.get(s)))
+                .forEach(users -> users.forEach(user -> found.put(user.getId(), user)));
+        return ids.stream().map(found::get).filter(Objects::nonNull).toList();
+    }
+
+    @Override
+    public Collection<User> getAll() {
+        List<Collection<User>> parts = Shards.map(shards, UserShard::getAll);
+        return Shards.mergeTop(parts.stream().map(List::copyOf).toList(), BY_ID, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Stream<User> getAllAfter(long afterId) {
+        return Shards.merge(shards.stream().map(shard -> shard.getAllAfter(afterId)).toList(), BY_ID);
+    }
+
+    // Друзья обоих могут лежать в разных частях: пересечение считается здесь, страница читается пакетом.
+    @Override
+    public Collection<User> getCommonFriends(long id1, long id2, int from, int size) {
+        User u1 = getUserById(id1).orElse(null);
+        User u2 = getUserById(id2).orElse(null);
+        if (u1 == null || u2 == null) {
+            return List.of();
+        }
+        long[] ids = IdIntersection.intersect(u1.getFriends(), u2.getFriends(), from, size);
+        return getUsersByIds(Arrays.stream(ids).boxed().toList());
+    }
+
+    @Override
+    public Optional<User> getUserByEmail(String email) {
+        Long id = emails.get(email);
+        return id != null ? getUserById(id) : Optional.empty();
+    }
+
+    @Override
+    public Optional<User> getUserByLogin(String login) {
+        Long id = logins.get(login);
+        return id != null ? getUserById(id) : Optional.empty();
+    }
+
+    // Событие публикует первая изменившаяся половина; пара между частями - под блокировкой маршрутизатора.
+    @Override
+    public boolean addFriend(long id, long friendId) {
+        UserShard s1 = shard(id);
+        UserShard s2 = shard(friendId);
+        if (s1 == s2) {
+            return s1.addFriend(id, friendId);
+        }
+        locks.lock(id, friendId);
+        try {
+            if (s1.getUserById(id).isEmpty() || s2.getUserById(friendId).isEmpty()) {
+                return false;
+            }
+            boolean added = s1.link(id, friendId, true);
+            return s2.link(friendId, id, !added) || added;
+        } finally {
+            locks.unlock(id, friendId);
+        }
+    }
+
+    // Пары внутри одной части применяются её пакетом (части - параллельно), пары между частями - по одной.
+    @Override
+    public boolean[] addFriends(long[] ids, long[] friendIds) {
+        List<List<Integer>> local = new ArrayList<>(shards.size());
+        shards.forEach(shard -> local.add(new ArrayList<>()));
+        List<Integer> crossing = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            int s = ring.shardOf(ids[i]);
+            if (s == ring.shardOf(friendIds[i])) {
+                local.get(s).add(i);
+            } else {
+                crossing.add(i);
+            }
+        }
+        boolean[] added = new boolean[ids.length];
+        Shards.forEach(IntStream.range(0, shards.size()).boxed().toList(), s -> {
+            List<Integer> part = local.get(s);
+            if (part.isEmpty()) {
+                return;
+            }
+            boolean[] partAdded = shards.get(s).addFriends(
+                    part.stream().mapToLong(i -> ids[i]).toArray(),
+                    part.stream().mapToLong(i -> friendIds[i]).toArray());
+            for (int k = 0; k < partAdded.length; k++) {
+                added[part.get(k)] = partAdded[k];
+            }
+        });
+        for (int i : crossing) {
+            added[i] = addFriend(ids[i], friendIds[i]);
+        }
+        return added;
+    }
+
+    @Override
+    public boolean removeFriend(long id, long friendId) {
+        UserShard s1 = shard(id);
+        UserShard s2 = shard(friendId);
+        if (s1 == s2) {
+            return s1.removeFriend(id, friendId);
+        }
+        locks.lock(id, friendId);
+        try {
+            if (s1.getUserById(id).isEmpty() || s2.getUserById(friendId).isEmpty()) {
+                return false;
+            }
+            boolean removed = s1.unlink(id, friendId, true);
+            return s2.unlink(friendId, id, !removed) || removed;
+        } finally {
+            locks.unlock(id, friendId);
+        }
+    }
+
+    private UserShard shard(long id) {
+        return shards.get(ring.shardOf(id));
+    }
+
+    // Ключ уже принадлежит этому же id - занимать нечего.
+    private static void reserve(Map<String, Long> index, String key, long id, String keyName) {
+        Long owner = index.putIfAbsent(key, id);
+        if (owner == null || owner == id) {
+            return;
+        }
+        String err = String.format("%s %s используется пользователем id=%s", keyName, key, owner);
+        log.warn(err);
+        throw new StorageException(err);
+    }
+
+    // Освобождает ключ dropped, если пользователь id не оставил его себе в kept.
+    private static void release(Map<String, Long> index, String dropped, String kept, long id) {
+        if (!dropped.equals(kept)) {
+            index.remove(dropped, id);
+        }
+    }
+}
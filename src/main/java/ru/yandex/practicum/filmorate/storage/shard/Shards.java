@@ -0,0 +1,93 @@
+package ru.yandex.practicum.filmorate.storage.shard;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Запросы ко всем частям и слияние их упорядоченных ответов.
+final class Shards {
+    private Shards() {
+    }
+
+    // Запрос ко всем частям параллельно (общий пул fork-join); ответы в порядке частей.
+    static <S, R> List<R> map(List<S> shards, Function<S, R> query) {
+        if (shards.size() == 1) {
+            return Collections.singletonList(query.apply(shards.get(0)));
+        }
+        return IntStream.range(0, shards.size()).parallel()
+                .mapToObj(i -> query.apply(shards.get(i)))
+                .toList();
+    }
+
+    static <S> void forEach(List<S> shards, Consumer<S> action) {
+        map(shards, shard -> {
+            action.accept(shard);
+            return shard;
+        });
+    }
+
+    // Первые limit элементов слиянием списков, каждый из которых упорядочен по order:
+    // куча из голов списков, k-путевое слияние за O(limit * log k).
+    static <T> List<T> mergeTop(List<? extends List<T>> lists, Comparator<? super T> order, int limit) {
+        List<T> merged = new ArrayList<>(Math.max(0, Math.min(limit, lists.stream().mapToInt(List::size).sum())));
+        Iterator<T> heads = merge(lists.stream().map(List::iterator).toList(), order);
+        while (merged.size() < limit && heads.hasNext()) {
+            merged.add(heads.next());
+        }
+        return merged;
+    }
+
+    // Ленивое слияние потоков, упорядоченных по order; закрытие результата закрывает исходные потоки.
+    static <T> Stream<T> merge(Collection<Stream<T>> streams, Comparator<? super T> order) {
+        Iterator<T> merged = merge(streams.stream().map(Stream::iterator).toList(), order);
+        Stream<T> result = StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+        for (Stream<T> stream : streams) {
+            result = result.onClose(stream::close);
+        }
+        return result;
+    }
+
+    private static <T> Iterator<T> merge(List<Iterator<T>> sources, Comparator<? super T> order) {
+        PriorityQueue<Head<T>> heap = new PriorityQueue<>(Math.max(1, sources.size()),
+                (a, b) -> order.compare(a.value, b.value));
+        for (Iterator<T> source : sources) {
+            if (source.hasNext()) {
+                heap.add(new Head<>(source.next(), source));
+            }
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !heap.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                Head<T> head = heap.poll();
+                if (head == null) {
+                    throw new NoSuchElementException();
+                }
+                if (head.source.hasNext()) {
+                    heap.add(new Head<>(head.source.next(), head.source));
+                }
+                return head.value;
+            }
+        };
+    }
+
+    private record Head<T>(T value, Iterator<T> source) {
+    }
+}
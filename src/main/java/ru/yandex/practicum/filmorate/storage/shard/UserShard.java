@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.storage.shard;
+
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+// Часть хранилища пользователей: пользователи с дуг кольца этой части, со своими блокировками.
+// Открывает маршрутизатору добавление с назначенным id и половины дружбы между частями.
+final class UserShard extends InMemoryUserStorage {
+    @Override
+    protected void add(User user, long id) {
+        super.add(user, id);
+    }
+
+    @Override
+    protected boolean link(long id, long friendId, boolean publish) {
+        return super.link(id, friendId, publish);
+    }
+
+    @Override
+    protected boolean unlink(long id, long friendId, boolean publish) {
+        return super.unlink(id, friendId, publish);
+    }
+}
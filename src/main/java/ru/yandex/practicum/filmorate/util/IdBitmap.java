@@ -0,0 +1,140 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+/**
+ * Сжатая битовая карта идентификаторов по схеме Roaring.
+ * Старшие биты id (id >>> 16) задают блок, младшие 16 бит хранятся в контейнере блока:
+ * до 4096 значений - отсортированный char[] (2 байта на id), больше - битовая карта long[1024] (8 КБ).
+ * Неизменяема после построения.
+ */
+public final class IdBitmap {
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private final long[] keys;
+    private final Object[] containers;
+    private final int size;
+
+    private IdBitmap(long[] keys, Object[] containers, int size) {
+        this.keys = keys;
+        this.containers = containers;
+        this.size = size;
+    }
+
+    public static IdBitmap of(long[] sortedIds) {
+        long[] keys = new long[8];
+        Object[] containers = new Object[8];
+        int blocks = 0;
+        int from = 0;
+        while (from < sortedIds.length) {
+            long key = sortedIds[from] >>> 16;
+            int to = from;
+            while (to < sortedIds.length && sortedIds[to] >>> 16 == key) {
+                to++;
+            }
+            if (blocks == keys.length) {
+                keys = Arrays.copyOf(keys, blocks * 2);
+                containers = Arrays.copyOf(containers, blocks * 2);
+            }
+            keys[blocks] = key;
+            containers[blocks] = container(sortedIds, from, to);
+            blocks++;
+            from = to;
+        }
+        return new IdBitmap(Arrays.copyOf(keys, blocks), Arrays.copyOf(containers, blocks), sortedIds.length);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Передаёт общие элементы по возрастанию, пока sink возвращает true.
+    public boolean intersect(IdBitmap other, LongPredicate sink) {
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                if (!intersect(keys[i] << 16, containers[i], other.containers[j], sink)) {
+                    return false;
+                }
+                i++;
+                j++;
+            }
+        }
+        return true;
+    }
+
+    private static Object container(long[] ids, int from, int to) {
+        if (to - from <= ARRAY_LIMIT) {
+            char[] values = new char[to - from];
+            for (int k = from; k < to; k++) {
+                values[k - from] = (char) ids[k];
+            }
+            return values;
+        }
+        long[] words = new long[BITMAP_WORDS];
+        for (int k = from; k < to; k++) {
+            int low = (int) (ids[k] & 0xFFFF);
+            words[low >>> 6] |= 1L << low;
+        }
+        return words;
+    }
+
+    private static boolean intersect(long base, Object c1, Object c2, LongPredicate sink) {
+        if (c1 instanceof char[] a && c2 instanceof char[] b) {
+            return intersect(base, a, b, sink);
+        }
+        if (c1 instanceof char[] a) {
+            return intersect(base, a, (long[]) c2, sink);
+        }
+        if (c2 instanceof char[] b) {
+            return intersect(base, b, (long[]) c1, sink);
+        }
+        long[] x = (long[]) c1;
+        long[] y = (long[]) c2;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            long word = x[w] & y[w];
+            while (word != 0) {
+                if (!sink.test(base | ((long) w << 6) | Long.numberOfTrailingZeros(word))) {
+                    return false;
+                }
+                word &= word - 1;
+            }
+        }
+        return true;
+    }
+
+    private static boolean intersect(long base, char[] a, char[] b, LongPredicate sink) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                if (!sink.test(base | a[i])) {
+                    return false;
+                }
+                i++;
+                j++;
+            }
+        }
+        return true;
+    }
+
+    private static boolean intersect(long base, char[] a, long[] words, LongPredicate sink) {
+        for (char v : a) {
+            if ((words[v >>> 6] & (1L << v)) != 0 && !sink.test(base | v)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
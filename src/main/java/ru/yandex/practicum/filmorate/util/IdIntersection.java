@@ -0,0 +1,124 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+/**
+ * Пересечение двух множеств id с выбором алгоритма по их размерам:
+ * <ul>
+ * <li>сильно отличающиеся размеры - поиск элементов меньшего массива в большем с галопированием,
+ * O(m log(n/m));</li>
+ * <li>большие плотные множества - пересечение битовых карт {@link IdBitmap} по 64 id за операцию;</li>
+ * <li>остальное - слияние отсортированных массивов, O(m + n).</li>
+ * </ul>
+ * Результат выдаётся постранично: обход останавливается, как только набрана нужная страница.
+ */
+public final class IdIntersection {
+    static final int GALLOP_RATIO = 16;
+    static final int DENSE_MIN_SIZE = 1024;
+    // Плотность, начиная с которой блоки карты становятся битовыми (4096 из 65536).
+    static final int DENSE_SPAN_PER_ID = 16;
+
+    private IdIntersection() {
+    }
+
+    public static long[] intersect(IdSet a, IdSet b, int from, int size) {
+        Page page = new Page(from, size);
+        if (a.isEmpty() || b.isEmpty() || size <= 0) {
+            return page.ids();
+        }
+        IdSet small = a.size() <= b.size() ? a : b;
+        IdSet large = small == a ? b : a;
+        long[] s = small.toSortedArray();
+        long[] l = large.toSortedArray();
+
+        if (l.length >= (long) s.length * GALLOP_RATIO) {
+            gallop(s, l, page);
+        } else if (isDense(s) && isDense(l)) {
+            small.toBitmap().intersect(large.toBitmap(), page);
+        } else {
+            merge(s, l, page);
+        }
+        return page.ids();
+    }
+
+    private static boolean isDense(long[] sorted) {
+        if (sorted.length < DENSE_MIN_SIZE) {
+            return false;
+        }
+        long span = sorted[sorted.length - 1] - sorted[0] + 1;
+        return span <= (long) sorted.length * DENSE_SPAN_PER_ID;
+    }
+
+    private static void gallop(long[] small, long[] large, LongPredicate sink) {
+        int lo = 0;
+        for (long x : small) {
+            int hi = lo;
+            int step = 1;
+            while (hi < large.length && large[hi] < x) {
+                lo = hi + 1;
+                hi += step;
+                step <<= 1;
+            }
+            int idx = Arrays.binarySearch(large, lo, Math.min(hi + 1, large.length), x);
+            if (idx >= 0) {
+                if (!sink.test(x)) {
+                    return;
+                }
+                lo = idx + 1;
+            } else {
+                lo = -idx - 1;
+            }
+            if (lo >= large.length) {
+                return;
+            }
+        }
+    }
+
+    private static void merge(long[] a, long[] b, LongPredicate sink) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                if (!sink.test(a[i])) {
+                    return;
+                }
+                i++;
+                j++;
+            }
+        }
+    }
+
+    private static final class Page implements LongPredicate {
+        private int skip;
+        private final int limit;
+        private long[] ids = new long[16];
+        private int count;
+
+        Page(int from, int size) {
+            this.skip = from;
+            this.limit = size;
+        }
+
+        @Override
+        public boolean test(long id) {
+            if (skip > 0) {
+                skip--;
+                return true;
+            }
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count++] = id;
+            return count < limit;
+        }
+
+        long[] ids() {
+            return Arrays.copyOf(ids, count);
+        }
+    }
+}
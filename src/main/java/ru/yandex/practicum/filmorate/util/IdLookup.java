@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.function.LongPredicate;
+
+// Проверка существования id с запоминанием ответа: при проверке пакета каждый различный id
+// запрашивается у хранилища один раз.
+public final class IdLookup {
+    private final LongPredicate exists;
+    private final IdSet found = new IdSet();
+    private final IdSet missing = new IdSet();
+
+    public IdLookup(LongPredicate exists) {
+        this.exists = exists;
+    }
+
+    public boolean exists(long id) {
+        if (id <= 0) {
+            return false;
+        }
+        if (found.contains(id)) {
+            return true;
+        }
+        if (missing.contains(id)) {
+            return false;
+        }
+        boolean result = exists.test(id);
+        (result ? found : missing).add(id);
+        return result;
+    }
+}
@@ -0,0 +1,281 @@
+package ru.yandex.practicum.filmorate.util;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Множество положительных идентификаторов (лайки фильма, друзья пользователя) без упаковки в Long.
+ * <p>
+ * Открытая адресация с линейным пробированием в массиве long[], заполнение таблицы от 3/8 до 3/4.
+ * Память на одну связь - 8 байт / заполнение, т.е. от 10.7 до 21.3 байта (в среднем около 14),
+ * против ~55 байт у HashSet&lt;Long&gt; (Long 16 байт + узел HashMap 32 байта + ячейка таблицы).
+ * Пустое множество массив не занимает. Отсортированная копия для выдачи и пересечений
+ * кэшируется до следующего изменения и временно добавляет ещё 8 байт на связь
+ * (битовая карта для плотных множеств - не больше 2 байт на связь).
+ * <p>
+ * Изменять множество может только один поток одновременно (хранилище держит блокировку сущности).
+ * Чтение не блокируется и слабо согласовано: удаление оставляет пометку вместо сдвига элементов,
+ * а при расширении новая таблица публикуется целиком, поэтому читатель никогда не пропустит
+ * элемент, который не изменялся во время чтения.
+ * <p>
+ * В JSON - массив id по возрастанию; id меньше 1 в теле запроса отклоняются с 400.
+ */
+@JsonSerialize(using = IdSetSerializer.class)
+@JsonDeserialize(using = IdSetDeserializer.class)
+public class IdSet extends AbstractSet<Long> {
+    private static final long FREE = 0;
+    private static final long REMOVED = -1;
+    private static final long[] EMPTY = new long[0];
+    private static final int MIN_CAPACITY = 4;
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private volatile long[] table = EMPTY;
+    private volatile int size;
+    private volatile int modCount;
+    private volatile SortedView sorted;
+    private volatile BitmapView bitmap;
+    private int used;
+
+    public IdSet() {
+    }
+
+    public IdSet(long[] ids) {
+        for (long id : ids) {
+            add(id);
+        }
+    }
+
+    public boolean add(long id) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("Идентификатор должен быть положительным: " + id);
+        }
+        long[] t = table;
+        if ((used + 1) * 4L > t.length * 3L) {
+            t = rehash();
+        }
+        int mask = t.length - 1;
+        int free = -1;
+        for (int i = mix(id) & mask; ; i = (i + 1) & mask) {
+            long v = (long) SLOT.getAcquire(t, i);
+            if (v == id) {
+                return false;
+            }
+            if (v == REMOVED && free < 0) {
+                free = i;
+            } else if (v == FREE) {
+                if (free < 0) {
+                    free = i;
+                    used++;
+                }
+                break;
+            }
+        }
+        SLOT.setRelease(t, free, id);
+        size = size + 1;
+        modCount = modCount + 1;
+        return true;
+    }
+
+    public boolean remove(long id) {
+        long[] t = table;
+        int i = indexOf(t, id);
+        if (i < 0) {
+            return false;
+        }
+        SLOT.setRelease(t, i, REMOVED);
+        size = size - 1;
+        modCount = modCount + 1;
+        return true;
+    }
+
+    public boolean contains(long id) {
+        return id > 0 && indexOf(table, id) >= 0;
+    }
+
+    public void addAll(IdSet other) {
+        for (long id : other.toLongArray()) {
+            add(id);
+        }
+    }
+
+    public void forEachId(LongConsumer action) {
+        long[] t = table;
+        for (int i = 0; i < t.length; i++) {
+            long v = (long) SLOT.getAcquire(t, i);
+            if (v > 0) {
+                action.accept(v);
+            }
+        }
+    }
+
+    // Обход, пока action возвращает true; false, если обход прерван.
+    public boolean forEachIdWhile(LongPredicate action) {
+        long[] t = table;
+        for (int i = 0; i < t.length; i++) {
+            long v = (long) SLOT.getAcquire(t, i);
+            if (v > 0 && !action.test(v)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long[] toLongArray() {
+        long[] t = table;
+        long[] ids = new long[Math.max(size, 0)];
+        int n = 0;
+        for (int i = 0; i < t.length; i++) {
+            long v = (long) SLOT.getAcquire(t, i);
+            if (v > 0) {
+                if (n == ids.length) {
+                    ids = Arrays.copyOf(ids, n * 2 + 1);
+                }
+                ids[n++] = v;
+            }
+        }
+        return n == ids.length ? ids : Arrays.copyOf(ids, n);
+    }
+
+    // Возвращает общий для всех читателей массив - его нельзя изменять.
+    public long[] toSortedArray() {
+        int version = modCount;
+        SortedView view = sorted;
+        if (view != null && view.version == version) {
+            return view.ids;
+        }
+        long[] ids = toLongArray();
+        Arrays.sort(ids);
+        sorted = new SortedView(ids, version);
+        return ids;
+    }
+
+    // Битовая карта для пересечения больших плотных множеств, кэшируется так же, как сортированная копия.
+    public IdBitmap toBitmap() {
+        int version = modCount;
+        BitmapView view = bitmap;
+        if (view != null && view.version == version) {
+            return view.bitmap;
+        }
+        IdBitmap result = IdBitmap.of(toSortedArray());
+        bitmap = new BitmapView(result, version);
+        return result;
+    }
+
+    @Override
+    public boolean add(Long id) {
+        return add(id.longValue());
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof Long id && remove(id.longValue());
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long id && contains(id.longValue());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        table = EMPTY;
+        used = 0;
+        size = 0;
+        modCount = modCount + 1;
+    }
+
+    // Обход по возрастанию, как у прежнего HashSet<Long> с небольшими id.
+    @Override
+    public Iterator<Long> iterator() {
+        long[] ids = toSortedArray();
+        return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < ids.length;
+            }
+
+            @Override
+            public Long next() {
+                if (next >= ids.length) {
+                    throw new NoSuchElementException();
+                }
+                return ids[next++];
+            }
+
+            @Override
+            public void remove() {
+                if (next == 0) {
+                    throw new IllegalStateException();
+                }
+                IdSet.this.remove(ids[next - 1]);
+            }
+        };
+    }
+
+    private static int indexOf(long[] t, long id) {
+        if (t.length == 0) {
+            return -1;
+        }
+        int mask = t.length - 1;
+        for (int i = mix(id) & mask; ; i = (i + 1) & mask) {
+            long v = (long) SLOT.getAcquire(t, i);
+            if (v == id) {
+                return i;
+            }
+            if (v == FREE) {
+                return -1;
+            }
+        }
+    }
+
+    // Если таблица забита пометками удаления, она перестраивается без увеличения.
+    private long[] rehash() {
+        long[] old = table;
+        int live = size;
+        int capacity = Math.max(MIN_CAPACITY, old.length);
+        while ((live + 1) * 2L > capacity) {
+            capacity <<= 1;
+        }
+        long[] t = new long[capacity];
+        int mask = capacity - 1;
+        for (long v : old) {
+            if (v > 0) {
+                int i = mix(v) & mask;
+                while (t[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                t[i] = v;
+            }
+        }
+        used = live;
+        table = t;
+        return t;
+    }
+
+    private static int mix(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private record SortedView(long[] ids, int version) {
+    }
+
+    private record BitmapView(IdBitmap bitmap, int version) {
+    }
+}
@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+
+// Читает массив id без упаковки в IdSet по одному Long. 0, отрицательный id или null - ошибка запроса
+// (400 с именем поля), а не молчаливый пропуск: таких пользователей и фильмов не бывает.
+public class IdSetDeserializer extends StdDeserializer<IdSet> {
+    public IdSetDeserializer() {
+        super(IdSet.class);
+    }
+
+    @Override
+    public IdSet deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        return deserialize(p, ctxt, new IdSet());
+    }
+
+    // Поля likes и friends неизменяемые: Jackson дописывает id в уже созданное множество.
+    @Override
+    public IdSet deserialize(JsonParser p, DeserializationContext ctxt, IdSet ids) throws IOException {
+        if (!p.isExpectedStartArrayToken()) {
+            return (IdSet) ctxt.handleUnexpectedToken(IdSet.class, p);
+        }
+        for (JsonToken token = p.nextToken(); token != JsonToken.END_ARRAY; token = p.nextToken()) {
+            Long id = token == JsonToken.VALUE_NULL ? null : ctxt.readValue(p, Long.class);
+            if (id == null || id <= 0) {
+                return (IdSet) ctxt.reportInputMismatch(this, "Идентификатор должен быть положительным: %s", id);
+            }
+            ids.add(id.longValue());
+        }
+        return ids;
+    }
+}
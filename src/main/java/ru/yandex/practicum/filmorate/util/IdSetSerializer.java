@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+// Пишет идентификаторы по возрастанию без упаковки в Long - тот же JSON, что давал HashSet<Long>.
+public class IdSetSerializer extends StdSerializer<IdSet> {
+    public IdSetSerializer() {
+        super(IdSet.class);
+    }
+
+    @Override
+    public void serialize(IdSet ids, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        long[] sorted = ids.toSortedArray();
+        gen.writeArray(sorted, 0, sorted.length);
+    }
+}
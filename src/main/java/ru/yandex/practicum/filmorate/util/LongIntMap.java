@@ -0,0 +1,204 @@
+package ru.yandex.practicum.filmorate.util;
+
+/**
+ * Счётчики по положительным id без упаковки: открытая адресация в long[] ключей и int[] значений.
+ * Для подсчётов внутри одного запроса (общие друзья, похожие пользователи) и счётчиков под внешней
+ * блокировкой (тренды), сама не потокобезопасна.
+ */
+public final class LongIntMap {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    public LongIntMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongIntMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3L < expectedSize * 4L) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new int[capacity];
+    }
+
+    public interface EntryConsumer {
+        void accept(long key, int value);
+    }
+
+    // Возвращает новое значение.
+    public int add(long key, int delta) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Ключ должен быть положительным: " + key);
+        }
+        int i = slot(key);
+        if (keys[i] == key) {
+            return values[i] += delta;
+        }
+        keys[i] = key;
+        values[i] = delta;
+        if (++size * 4L > keys.length * 3L) {
+            grow();
+        }
+        return delta;
+    }
+
+    public void increment(long key) {
+        add(key, 1);
+    }
+
+    public int get(long key) {
+        if (key <= 0) {
+            return 0;
+        }
+        int i = slot(key);
+        return keys[i] == key ? values[i] : 0;
+    }
+
+    // Удаляет ключ и возвращает его значение (0, если ключа не было). Следующие за ним элементы
+    // цепочки сдвигаются назад, поэтому поиск не нуждается в пометках удаления.
+    public int remove(long key) {
+        if (key <= 0) {
+            return 0;
+        }
+        int i = slot(key);
+        if (keys[i] != key) {
+            return 0;
+        }
+        int value = values[i];
+        int mask = keys.length - 1;
+        for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            if (((j - home(keys[j])) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        keys[i] = 0;
+        values[i] = 0;
+        size--;
+        return value;
+    }
+
+    public void addAll(LongIntMap other) {
+        other.forEach(this::add);
+    }
+
+    public void forEach(EntryConsumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // До limit ключей с наибольшими значениями, при равенстве - с меньшим ключом, по убыванию значения.
+    public long[] top(int limit) {
+        int k = Math.min(limit, size);
+        long[] heapKeys = new long[k];
+        int[] heapValues = new int[k];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == 0) {
+                continue;
+            }
+            if (n < k) {
+                heapKeys[n] = keys[i];
+                heapValues[n] = values[i];
+                siftUp(heapKeys, heapValues, n++);
+            } else if (k > 0 && better(keys[i], values[i], heapKeys[0], heapValues[0])) {
+                heapKeys[0] = keys[i];
+                heapValues[0] = values[i];
+                siftDown(heapKeys, heapValues, n);
+            }
+        }
+        long[] result = new long[n];
+        for (int i = n - 1; i >= 0; i--) {
+            result[i] = heapKeys[0];
+            heapKeys[0] = heapKeys[i];
+            heapValues[0] = heapValues[i];
+            siftDown(heapKeys, heapValues, i);
+        }
+        return result;
+    }
+
+    private int home(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (keys.length - 1);
+    }
+
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int i = home(key);
+        while (keys[i] != 0 && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int j = slot(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private static boolean better(long key1, int value1, long key2, int value2) {
+        return value1 != value2 ? value1 > value2 : key1 < key2;
+    }
+
+    // Куча с худшим элементом в корне.
+    private static void siftUp(long[] keys, int[] values, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(keys[parent], values[parent], keys[i], values[i])) {
+                return;
+            }
+            swap(keys, values, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(long[] keys, int[] values, int n) {
+        int i = 0;
+        while (true) {
+            int worst = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < n && better(keys[worst], values[worst], keys[left], values[left])) {
+                worst = left;
+            }
+            if (right < n && better(keys[worst], values[worst], keys[right], values[right])) {
+                worst = right;
+            }
+            if (worst == i) {
+                return;
+            }
+            swap(keys, values, i, worst);
+            i = worst;
+        }
+    }
+
+    private static void swap(long[] keys, int[] values, int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        int value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+}
@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ведро токенов без блокировок: rate токенов в секунду, не больше burst в запасе.
+ * <p>
+ * Состояние - одно число, момент, к которому ведро снова станет полным (алгоритм GCRA): каждый
+ * токен сдвигает его на 1/rate секунды вперёд, а запрос отклоняется, если момент ушёл дальше
+ * burst/rate секунд от текущего. Изменение - compareAndSet этого числа, поэтому потоки не ждут
+ * друг друга, а при гонке повторяют расчёт с новым значением.
+ */
+public final class TokenBucket {
+    private final long intervalNanos;
+    private final long capacityNanos;
+    private final AtomicLong fullAt;
+
+    public TokenBucket(double rate, int burst, long nowNanos) {
+        if (rate <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("Скорость и запас ведра должны быть положительными");
+        }
+        intervalNanos = Math.max(1, (long) (1_000_000_000L / rate));
+        capacityNanos = intervalNanos * burst;
+        fullAt = new AtomicLong(nowNanos);
+    }
+
+    // 0 - токен взят; иначе через сколько наносекунд он появится, ведро не меняется.
+    public long tryAcquire(long nowNanos) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, nowNanos) + intervalNanos;
+            long wait = next - nowNanos - capacityNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    // Время, за которое пустое ведро наполняется: через него после последнего запроса ведро
+    // не отличается от нового и его можно забыть.
+    public long refillNanos() {
+        return capacityNanos;
+    }
+}
@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Защита кэша вычисленных ответов от устаревших записей. Расчёт запоминает версию полосы id до начала,
+ * изменение данных id увеличивает её и сбрасывает запись, а результат расчёта сохраняется, только если
+ * версия за это время не изменилась. Иначе расчёт, начатый до изменения, положил бы в кэш ответ,
+ * который сброс уже не увидит. Id одной полосы изредка теряют сохранение зря, но устаревшее не сохраняется.
+ */
+public final class VersionStripes {
+    private static final int STRIPES = 1024;
+
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+
+    // Версия, с которой начинается расчёт для id.
+    public long get(long id) {
+        return versions.get(stripe(id));
+    }
+
+    // Данные id изменились: его запись сбрасывается, а расчёты, начатые раньше, её не вернут.
+    public void invalidate(ConcurrentMap<Long, ?> cache, long id) {
+        versions.incrementAndGet(stripe(id));
+        cache.remove(id);
+    }
+
+    // Сохраняет value, если версия полосы id всё ещё version; иначе оставляет то, что лежит в кэше.
+    public <V> void putIfUnchanged(ConcurrentMap<Long, V> cache, long id, long version, V value) {
+        cache.compute(id, (key, old) -> versions.get(stripe(id)) == version ? value : old);
+    }
+
+    private static int stripe(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (STRIPES - 1);
+    }
+}
@@ -0,0 +1,47 @@
+-- Схема хранилища filmorate.storage.type=jdbc. Лайки и дружба - таблицы связей; дружба хранится
+-- в обе стороны, как и в памяти, поэтому друзья пользователя и общие друзья читаются по одному ключу.
+
+CREATE TABLE IF NOT EXISTS users (
+    id       BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    email    VARCHAR(255) NOT NULL,
+    login    VARCHAR(255) NOT NULL,
+    name     VARCHAR(255),
+    birthday DATE,
+    version  BIGINT NOT NULL DEFAULT 1,
+    CONSTRAINT users_email_uq UNIQUE (email),
+    CONSTRAINT users_login_uq UNIQUE (login)
+);
+
+CREATE TABLE IF NOT EXISTS films (
+    id           BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name         VARCHAR(255) NOT NULL,
+    name_key     VARCHAR(255) NOT NULL,
+    description  VARCHAR(200),
+    release_date DATE,
+    duration     INT NOT NULL,
+    version      BIGINT NOT NULL DEFAULT 1
+);
+
+-- Выборки по атрибутам (/films/filter): префикс названия без учёта регистра и диапазоны.
+CREATE INDEX IF NOT EXISTS films_name_key_idx ON films (name_key, id);
+CREATE INDEX IF NOT EXISTS films_release_date_idx ON films (release_date, id);
+CREATE INDEX IF NOT EXISTS films_duration_idx ON films (duration, id);
+
+CREATE TABLE IF NOT EXISTS likes (
+    film_id  BIGINT NOT NULL REFERENCES films (id) ON DELETE CASCADE,
+    user_id  BIGINT NOT NULL REFERENCES users (id) ON DELETE CASCADE,
+    liked_at TIMESTAMP NOT NULL,
+    PRIMARY KEY (film_id, user_id)
+);
+
+-- Фильмы пользователя (рекомендации) и лайки за период (тренды).
+CREATE INDEX IF NOT EXISTS likes_user_idx ON likes (user_id, film_id);
+CREATE INDEX IF NOT EXISTS likes_liked_at_idx ON likes (liked_at, film_id);
+
+CREATE TABLE IF NOT EXISTS friendships (
+    user_id   BIGINT NOT NULL REFERENCES users (id) ON DELETE CASCADE,
+    friend_id BIGINT NOT NULL REFERENCES users (id) ON DELETE CASCADE,
+    PRIMARY KEY (user_id, friend_id)
+);
+
+CREATE INDEX IF NOT EXISTS friendships_friend_idx ON friendships (friend_id, user_id);
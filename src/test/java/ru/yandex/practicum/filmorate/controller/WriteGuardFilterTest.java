@@ -0,0 +1,100 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Фильтр без Spring: цепочка вместо контроллера запоминает тела, которые до неё дошли.
+class WriteGuardFilterTest {
+    private static final String BATCH = "/films/likes/batch";
+
+    private final List<String> handled = new ArrayList<>();
+    private final FilterChain chain = (request, response) -> {
+        String body = new String(request.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        handled.add(body);
+        response.getOutputStream().write(("ok " + handled.size()).getBytes(StandardCharsets.UTF_8));
+    };
+
+    @Test
+    void sameKeyAndBodyReplaysStoredResponse() throws Exception {
+        WriteGuardFilter filter = filter(0);
+
+        MockHttpServletResponse first = send(filter, post("k1", "[1]", "10.0.0.1"));
+        MockHttpServletResponse retry = send(filter, post("k1", "[1]", "10.0.0.1"));
+
+        assertThat(handled).containsExactly("[1]");
+        assertThat(first.getContentAsString()).isEqualTo("ok 1");
+        assertThat(retry.getContentAsString()).isEqualTo("ok 1");
+        assertThat(retry.getHeader(WriteGuardFilter.REPLAYED)).isEqualTo("true");
+    }
+
+    @Test
+    void sameKeyWithDifferentBodyIsRejected() throws Exception {
+        WriteGuardFilter filter = filter(0);
+
+        send(filter, post("k1", "[1]", "10.0.0.1"));
+        MockHttpServletResponse other = send(filter, post("k1", "[2]", "10.0.0.1"));
+
+        assertThat(other.getStatus()).isEqualTo(422);
+        assertThat(handled).containsExactly("[1]");
+        // Другой ключ с тем же телом - новая запись.
+        send(filter, post("k2", "[2]", "10.0.0.1"));
+        assertThat(handled).containsExactly("[1]", "[2]");
+    }
+
+    // Ведро принадлежит адресу клиента: запросы от имени одного пользователя с чужого адреса
+    // не мешают ему самому.
+    @Test
+    void rateLimitIsPerClientAddress() throws Exception {
+        WriteGuardFilter filter = filter(2);
+
+        assertThat(send(filter, put("/films/1/like/7", "10.0.0.1")).getStatus()).isEqualTo(200);
+        assertThat(send(filter, put("/films/2/like/7", "10.0.0.1")).getStatus()).isEqualTo(200);
+        MockHttpServletResponse limited = send(filter, put("/films/3/like/7", "10.0.0.1"));
+        assertThat(limited.getStatus()).isEqualTo(429);
+        assertThat(limited.getHeader("Retry-After")).isNotNull();
+
+        assertThat(send(filter, put("/films/3/like/7", "10.0.0.2")).getStatus()).isEqualTo(200);
+    }
+
+    // rate=0 - без ограничения частоты; иначе ведро почти не наполняется за время теста.
+    private static WriteGuardFilter filter(int burst) {
+        double rate = burst > 0 ? 0.001 : 0;
+        return new WriteGuardFilter(new ObjectMapper(), new SimpleMeterRegistry(), true, rate, Math.max(burst, 1),
+                Duration.ofMinutes(10), 1_000);
+    }
+
+    private static MockHttpServletRequest post(String idempotencyKey, String body, String address) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", BATCH);
+        request.addHeader(WriteGuardFilter.IDEMPOTENCY_KEY, idempotencyKey);
+        request.setContentType("application/json");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        request.setRemoteAddr(address);
+        return request;
+    }
+
+    private static MockHttpServletRequest put(String path, String address) {
+        MockHttpServletRequest request = new MockHttpServletRequest("PUT", path);
+        request.setRemoteAddr(address);
+        return request;
+    }
+
+    private MockHttpServletResponse send(WriteGuardFilter filter, MockHttpServletRequest request)
+            throws IOException, ServletException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}
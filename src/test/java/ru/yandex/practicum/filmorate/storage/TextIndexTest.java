@@ -0,0 +1,55 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.util.IdSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Слово, которое есть в большем числе фильмов, чем MAX_CANDIDATES: лучший фильм не должен теряться
+// из-за того, что при обходе множества фильмов слова он идёт позже первых MAX_CANDIDATES.
+class TextIndexTest {
+    private static final int FILMS = TextIndex.MAX_CANDIDATES * 3;
+
+    @Test
+    void bestMatchSurvivesCandidateLimit() {
+        List<Long> order = postingOrder();
+        long best = order.get(order.size() - 1);
+        TextIndex index = new TextIndex();
+        for (long id = 1; id <= FILMS; id++) {
+            if (id == best) {
+                index.put(id, "Фильм", "фильм про фильм");
+            } else {
+                index.put(id, "Кино " + id, "фильм про город");
+            }
+        }
+
+        assertThat(index.search("фильм", 1, null)).containsExactly(best);
+    }
+
+    @Test
+    void mostLikedMatchSurvivesCandidateLimit() {
+        List<Long> order = postingOrder();
+        long liked = order.get(order.size() - 1);
+        TextIndex index = new TextIndex();
+        for (long id = 1; id <= FILMS; id++) {
+            index.put(id, "Кино " + id, "фильм про город");
+        }
+
+        assertThat(index.search("фильм", 1, id -> id == liked ? 1_000_000 : 0)).containsExactly(liked);
+    }
+
+    // Порядок обхода множества фильмов слова: IdSet с теми же id, добавленными в том же порядке,
+    // раскладывает их так же, как множество в индексе.
+    private static List<Long> postingOrder() {
+        IdSet films = new IdSet();
+        for (long id = 1; id <= FILMS; id++) {
+            films.add(id);
+        }
+        List<Long> order = new ArrayList<>(FILMS);
+        films.forEachId(order::add);
+        return order;
+    }
+}
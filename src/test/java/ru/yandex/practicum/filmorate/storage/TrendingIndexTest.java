@@ -0,0 +1,156 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.TrendingPeriod;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Время задаётся явно (записи и advance получают миллисекунды), поэтому часы в тесте - просто число,
+// которое сдвигается через границы окон 5m/1h/24h/7d.
+class TrendingIndexTest {
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    // Начало корзины: окна считаются целыми корзинами по BUCKET_MILLIS.
+    private static final long START = 1_000_000 * TrendingIndex.BUCKET_MILLIS;
+
+    @Test
+    void likeLeavesEachWindowAtItsBoundary() {
+        TrendingIndex index = new TrendingIndex(START);
+        index.record(1, 10, START);
+        index.record(2, 10, START + 4 * MINUTE);
+        index.record(2, 11, START + 4 * MINUTE);
+
+        index.advance(START + 4 * MINUTE);
+        assertTotals(index, TrendingPeriod.HOUR, 2L, 2, 1L, 1);
+        assertTotals(index, TrendingPeriod.WEEK, 2L, 2, 1L, 1);
+
+        index.advance(START + 59 * MINUTE);
+        assertTotals(index, TrendingPeriod.HOUR, 2L, 2, 1L, 1);
+
+        index.advance(START + HOUR);
+        assertTotals(index, TrendingPeriod.HOUR);
+        assertTotals(index, TrendingPeriod.DAY, 2L, 2, 1L, 1);
+
+        index.advance(START + DAY - MINUTE);
+        assertTotals(index, TrendingPeriod.DAY, 2L, 2, 1L, 1);
+        index.advance(START + DAY);
+        assertTotals(index, TrendingPeriod.DAY);
+        assertTotals(index, TrendingPeriod.WEEK, 2L, 2, 1L, 1);
+
+        index.advance(START + 7 * DAY - MINUTE);
+        assertTotals(index, TrendingPeriod.WEEK, 2L, 2, 1L, 1);
+        index.advance(START + 7 * DAY);
+        assertTotals(index, TrendingPeriod.WEEK);
+
+        // Лайк старше недели уже не учитывается, свежий - во всех окнах.
+        index.record(3, 12, START);
+        index.record(3, 13, START + 7 * DAY);
+        index.advance(START + 7 * DAY);
+        assertTotals(index, TrendingPeriod.HOUR, 3L, 1);
+        assertTotals(index, TrendingPeriod.WEEK, 3L, 1);
+    }
+
+    @Test
+    void unrecordAndRemoveUpdateTotals() {
+        TrendingIndex index = new TrendingIndex(START);
+        index.record(1, 10, START);
+        index.record(1, 11, START + 2 * HOUR);
+        index.record(2, 10, START + 2 * HOUR);
+        index.advance(START + 2 * HOUR);
+        assertTotals(index, TrendingPeriod.DAY, 1L, 2, 2L, 1);
+
+        // Отмена лайка из старой корзины уменьшает сутки, но не час.
+        index.unrecord(1, 10);
+        index.advance(START + 2 * HOUR);
+        assertTotals(index, TrendingPeriod.HOUR, 1L, 1, 2L, 1);
+        assertTotals(index, TrendingPeriod.DAY, 1L, 1, 2L, 1);
+
+        index.remove(1);
+        index.advance(START + 2 * HOUR);
+        assertTotals(index, TrendingPeriod.HOUR, 2L, 1);
+        assertTotals(index, TrendingPeriod.WEEK, 2L, 1);
+    }
+
+    // Случайные лайки, отмены и удаления на сотнях фильмов по всем частям индекса; после каждого
+    // advance() рейтинги всех окон совпадают с наивным подсчётом по списку лайков.
+    @Test
+    void mergedRankingsMatchReference() {
+        Random random = new Random(17);
+        long now = START;
+        TrendingIndex index = new TrendingIndex(now);
+        List<Like> likes = new ArrayList<>();
+        for (int step = 0; step < 400; step++) {
+            int jump = random.nextInt(20);
+            now += jump == 0 ? random.nextInt(3) * DAY + random.nextInt(24) * HOUR : random.nextInt(20) * MINUTE;
+            for (int i = random.nextInt(60); i > 0; i--) {
+                long filmId = 1 + random.nextInt(400);
+                long userId = 1 + random.nextInt(50);
+                long likedAt = now - random.nextInt(15) * MINUTE;
+                if (likes.stream().noneMatch(like -> like.filmId == filmId && like.userId == userId)) {
+                    index.record(filmId, userId, likedAt);
+                    likes.add(new Like(filmId, userId, likedAt));
+                }
+            }
+            for (int i = random.nextInt(5); i > 0 && !likes.isEmpty(); i--) {
+                Like like = likes.remove(random.nextInt(likes.size()));
+                index.unrecord(like.filmId, like.userId);
+            }
+            if (random.nextInt(10) == 0) {
+                long filmId = 1 + random.nextInt(400);
+                index.remove(filmId);
+                likes.removeIf(like -> like.filmId == filmId);
+            }
+
+            index.advance(now);
+            for (TrendingPeriod period : TrendingPeriod.values()) {
+                TrendingIndex.Ranking expected = reference(likes, period, now);
+                TrendingIndex.Ranking actual = index.ranking(period);
+                assertThat(actual.ids()).as("step %d %s", step, period).containsExactly(expected.ids());
+                assertThat(actual.likes()).as("step %d %s", step, period).containsExactly(expected.likes());
+                assertThat(index.top(period)).isSameAs(actual.ids());
+            }
+        }
+    }
+
+    // Ожидаемые пары (id фильма, лайков), по убыванию лайков.
+    private static void assertTotals(TrendingIndex index, TrendingPeriod period, Object... expected) {
+        TrendingIndex.Ranking ranking = index.ranking(period);
+        List<Object> actual = new ArrayList<>();
+        for (int i = 0; i < ranking.ids().length; i++) {
+            actual.add(ranking.ids()[i]);
+            actual.add(ranking.likes()[i]);
+        }
+        assertThat(actual).as(period.toString()).containsExactly(expected);
+    }
+
+    // Лайк входит в окно, пока его корзина не старше длины окна в корзинах.
+    private static TrendingIndex.Ranking reference(List<Like> likes, TrendingPeriod period, long now) {
+        long current = now / TrendingIndex.BUCKET_MILLIS;
+        long window = period.getDuration().toMillis() / TrendingIndex.BUCKET_MILLIS;
+        Map<Long, Integer> totals = new HashMap<>();
+        for (Like like : likes) {
+            if (like.likedAt / TrendingIndex.BUCKET_MILLIS > current - window) {
+                totals.merge(like.filmId, 1, Integer::sum);
+            }
+        }
+        List<Map.Entry<Long, Integer>> sorted = totals.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey(Comparator.naturalOrder())))
+                .limit(TrendingIndex.MAX_COUNT)
+                .toList();
+        return new TrendingIndex.Ranking(sorted.stream().mapToLong(Map.Entry::getKey).toArray(),
+                sorted.stream().mapToInt(Map.Entry::getValue).toArray());
+    }
+
+    private record Like(long filmId, long userId, long likedAt) {
+    }
+}
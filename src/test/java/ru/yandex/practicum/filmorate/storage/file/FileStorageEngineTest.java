@@ -0,0 +1,350 @@
+package ru.yandex.practicum.filmorate.storage.file;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.practicum.filmorate.events.ChangeEventBus;
+import ru.yandex.practicum.filmorate.exception.StorageException;
+import ru.yandex.practicum.filmorate.model.ChangeEvent;
+import ru.yandex.practicum.filmorate.model.ChangeType;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.Versions;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Перезапуск файлового хранилища на том же каталоге: состояние после восстановления совпадает
+// с состоянием до остановки, кроме изменения, запись которого оборвалась.
+class FileStorageEngineTest {
+    @TempDir
+    Path dir;
+
+    private FileStorageEngine engine;
+    private FileFilmStorage films;
+    private FileUserStorage users;
+
+    @AfterEach
+    void stop() throws IOException {
+        if (engine != null) {
+            engine.destroy();
+            engine = null;
+        }
+    }
+
+    @Test
+    void tornLastRecordIsLostAndEverythingBeforeSurvives() throws IOException, InterruptedException {
+        start();
+        populate(5, 10);
+        String expected = state();
+        Path segment = lastSegment();
+        long before = Files.size(segment);
+        films.addLike(1, 5);
+        long after = Files.size(segment);
+        stop();
+        try (RandomAccessFile raf = new RandomAccessFile(segment.toFile(), "rw")) {
+            raf.setLength(before + (after - before) / 2);
+        }
+
+        start();
+        engine.awaitWarmUp();
+        assertThat(state()).isEqualTo(expected);
+
+        // Журнал продолжается с отрезанного места: новая запись переживает следующий перезапуск.
+        films.addLike(1, 5);
+        expected = state();
+        stop();
+        start();
+        engine.awaitWarmUp();
+        assertThat(state()).isEqualTo(expected);
+        assertThat(films.get(1).orElseThrow().getLikes()).contains(5L);
+    }
+
+    // Снимок, затем изменения записей снимка и новые записи в журнале: после перезапуска записи читаются
+    // из снимка по запросу, поверх них проигрывается журнал, а прогрев переносит в память остальное.
+    @Test
+    void snapshotPlusJournalReplay() throws IOException, InterruptedException {
+        start();
+        populate(20, 200);
+        engine.snapshot();
+        films.update(new Film(10, "После снимка", "Описание", LocalDate.of(2010, 1, 1), 120), Versions.ANY);
+        films.remove(11);
+        films.addLike(12, 20);
+        films.removeLike(13, 1);
+        films.add(new Film(0, "Новый фильм", "Описание", LocalDate.of(2020, 1, 1), 95));
+        users.addFriend(2, 3);
+        users.removeFriend(1, 5);
+        users.update(new User(4, "new4@mail.ru", "new4", "Новое имя", LocalDate.of(1995, 5, 5)), Versions.ANY);
+        users.remove(5);
+        String expected = state();
+        assertEdgeCounts();
+        stop();
+
+        start();
+        assertThat(films.get(10).orElseThrow().getName()).isEqualTo("После снимка");
+        assertThat(films.get(11)).isEmpty();
+        assertThat(films.get(12).orElseThrow().getLikes()).contains(20L);
+        assertThat(films.get(13).orElseThrow().getLikes()).doesNotContain(1L);
+        assertThat(users.getUserById(3).orElseThrow().getFriends()).contains(2L);
+        engine.awaitWarmUp();
+        assertThat(state()).isEqualTo(expected);
+        assertEdgeCounts();
+
+        // Второй перезапуск со снимком и тем же журналом даёт то же состояние: записи идемпотентны.
+        stop();
+        start();
+        engine.awaitWarmUp();
+        assertThat(state()).isEqualTo(expected);
+    }
+
+    // Запросы во время прогрева переносят записи снимка в память сами; прогрев не должен затереть
+    // изменения, сделанные поверх уже перенесённой записи.
+    @Test
+    void writesDuringWarmUpSurvive() throws Exception {
+        int filmCount = 3_000;
+        start();
+        populate(5, filmCount);
+        engine.snapshot();
+        stop();
+
+        start();
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long userId = 100 + t;
+                writers.add(executor.submit(() -> {
+                    for (long id = filmCount; id >= 1; id--) {
+                        films.addLike(id, userId);
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        engine.awaitWarmUp();
+
+        for (long id = 1; id <= filmCount; id++) {
+            Optional<Film> film = films.get(id);
+            if (id == 3) {
+                assertThat(film).isEmpty();
+                continue;
+            }
+            assertThat(film.orElseThrow().getLikes()).contains(100L, 101L, 102L, 103L);
+        }
+        String expected = state();
+        stop();
+        start();
+        engine.awaitWarmUp();
+        assertThat(state()).isEqualTo(expected);
+    }
+
+    // Строки длиннее 65535 байт в UTF-8 (предел writeUTF) переживают и журнал, и снимок.
+    @Test
+    void longStringsSurviveJournalAndSnapshot() throws IOException, InterruptedException {
+        String longName = "я".repeat(40_000);
+        start();
+        users.add(new User(0, "long@mail.ru", "long", longName, LocalDate.of(1990, 1, 1)));
+        films.add(new Film(0, longName, "Описание", LocalDate.of(2000, 1, 1), 90));
+        String expected = state();
+        stop();
+
+        start();
+        engine.awaitWarmUp();
+        assertThat(state()).isEqualTo(expected);
+        engine.snapshot();
+        stop();
+
+        start();
+        assertThat(films.get(1).orElseThrow().getName()).isEqualTo(longName);
+        engine.awaitWarmUp();
+        assertThat(state()).isEqualTo(expected);
+    }
+
+    // Запись журнала не удалась - в памяти не остаётся ни сущности, ни занятых логина и email.
+    @Test
+    void failedAppendLeavesNoState() throws IOException {
+        start();
+        users.add(new User(0, "user1@mail.ru", "user1", "Пользователь", LocalDate.of(1990, 1, 1)));
+        films.add(new Film(0, "Фильм", "Описание", LocalDate.of(2000, 1, 1), 90));
+        String expected = entities();
+        stop();
+
+        assertThatThrownBy(() -> users.add(new User(0, "user2@mail.ru", "user2", "Другой",
+                LocalDate.of(1991, 1, 1)))).isInstanceOf(StorageException.class);
+        assertThatThrownBy(() -> users.update(new User(1, "new1@mail.ru", "new1", "Новое имя",
+                LocalDate.of(1990, 1, 1)), Versions.ANY)).isInstanceOf(StorageException.class);
+        assertThatThrownBy(() -> films.add(new Film(0, "Другой", "Описание", LocalDate.of(2001, 1, 1), 90)))
+                .isInstanceOf(StorageException.class);
+        assertThatThrownBy(() -> films.update(new Film(1, "Новое название", "Описание",
+                LocalDate.of(2000, 1, 1), 90), Versions.ANY)).isInstanceOf(StorageException.class);
+
+        assertThat(users.getUserByLogin("user2")).isEmpty();
+        assertThat(users.getUserByEmail("new1@mail.ru")).isEmpty();
+        assertThat(users.getUserByLogin("user1")).isPresent();
+        assertThat(films.get(1).orElseThrow().getName()).isEqualTo("Фильм");
+        assertThat(entities()).isEqualTo(expected);
+    }
+
+    // Сброс журнала не удался - изменение в памяти есть, но подписчики его не видят: событие
+    // публикуется только после сброса.
+    @Test
+    void eventsArePublishedOnlyAfterSync() {
+        AtomicBoolean failSync = new AtomicBoolean();
+        engine = new FileStorageEngine(dir, false, Duration.ofDays(1), Long.MAX_VALUE) {
+            @Override
+            void sync() {
+                if (failSync.get()) {
+                    throw new StorageException("Сбой сброса журнала");
+                }
+                super.sync();
+            }
+        };
+        films = new FileFilmStorage(engine);
+        users = new FileUserStorage(engine);
+        ChangeEventBus bus = new ChangeEventBus(1024);
+        films.setChangeEvents(bus);
+        users.setChangeEvents(bus);
+        engine.recover();
+        users.add(new User(0, "user1@mail.ru", "user1", "Пользователь", LocalDate.of(1990, 1, 1)));
+        films.add(new Film(0, "Фильм", "Описание", LocalDate.of(2000, 1, 1), 90));
+
+        failSync.set(true);
+        assertThatThrownBy(() -> films.addLike(1, 1)).isInstanceOf(StorageException.class);
+        assertThatThrownBy(() -> users.add(new User(0, "user2@mail.ru", "user2", "Другой",
+                LocalDate.of(1991, 1, 1)))).isInstanceOf(StorageException.class);
+        failSync.set(false);
+        films.update(new Film(1, "Новое название", "Описание", LocalDate.of(2000, 1, 1), 90), Versions.ANY);
+
+        assertThat(bus.read(bus.oldest(), 10)).extracting(ChangeEvent::getType)
+                .containsExactly(ChangeType.USER_CREATED, ChangeType.FILM_CREATED, ChangeType.FILM_UPDATED);
+    }
+
+    // Журнал, записанный до перехода на строки с длиной: FILM_SAVED и USER_SAVED в формате writeUTF.
+    @Test
+    void legacySavedRecordsReplay() throws IOException, InterruptedException {
+        WriteAheadLog wal = new WriteAheadLog(dir, false);
+        wal.open(wal.replay(0, (type, in) -> {
+        }));
+        wal.append(Records.USER_SAVED, out -> {
+            out.writeLong(1);
+            writeLegacyString(out, "old@mail.ru");
+            writeLegacyString(out, "old");
+            writeLegacyString(out, null);
+            out.writeLong(LocalDate.of(1990, 1, 1).toEpochDay());
+            out.writeInt(0);
+        });
+        wal.append(Records.FILM_SAVED, out -> {
+            out.writeLong(1);
+            writeLegacyString(out, "Старый фильм");
+            writeLegacyString(out, "Описание");
+            out.writeLong(LocalDate.of(2000, 1, 1).toEpochDay());
+            out.writeInt(90);
+            out.writeInt(1);
+            out.writeLong(1);
+        });
+        wal.sync();
+        wal.close();
+
+        start();
+        engine.awaitWarmUp();
+        User user = users.getUserById(1).orElseThrow();
+        assertThat(user.getLogin()).isEqualTo("old");
+        assertThat(user.getName()).isNull();
+        Film film = films.get(1).orElseThrow();
+        assertThat(film.getName()).isEqualTo("Старый фильм");
+        assertThat(film.getLikes()).containsExactly(1L);
+    }
+
+    private static void writeLegacyString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private void start() {
+        engine = new FileStorageEngine(dir, false, Duration.ofDays(1), Long.MAX_VALUE);
+        films = new FileFilmStorage(engine);
+        users = new FileUserStorage(engine);
+        engine.recover();
+    }
+
+    // Пользователи, дружба, фильмы и лайки, затем обновление и удаление фильма.
+    private void populate(int userCount, int filmCount) {
+        for (int i = 1; i <= userCount; i++) {
+            users.add(new User(0, "user" + i + "@mail.ru", "user" + i, "Пользователь " + i,
+                    LocalDate.of(1990, 1, 1).plusDays(i)));
+        }
+        for (int i = 2; i <= userCount; i++) {
+            users.addFriend(1, i);
+        }
+        for (int i = 1; i <= filmCount; i++) {
+            films.add(new Film(0, "Фильм " + i, "Описание " + i, LocalDate.of(2000, 1, 1).plusDays(i), 90 + i));
+            for (long userId = 1; userId <= i % userCount; userId++) {
+                films.addLike(i, userId);
+            }
+        }
+        films.update(new Film(2, "Другое название", "Другое описание", LocalDate.of(2001, 2, 3), 100),
+                Versions.ANY);
+        films.remove(3);
+    }
+
+    // Счётчики связей для метрик ведутся при изменениях и совпадают с подсчётом по всем сущностям.
+    private void assertEdgeCounts() {
+        assertThat(films.countLikes())
+                .isEqualTo(films.getAll().stream().mapToLong(f -> f.getLikes().size()).sum());
+        assertThat(users.countFriendEdges())
+                .isEqualTo(users.getAll().stream().mapToLong(u -> u.getFriends().size()).sum());
+    }
+
+    // Всё, что хранилище должно восстановить, одной строкой: поля, связи и последние выданные id.
+    private String state() {
+        return users.lastId() + "\n" + films.lastId() + "\n" + entities();
+    }
+
+    private String entities() {
+        String userState = users.getAll().stream()
+                .sorted(Comparator.comparingLong(User::getId))
+                .map(u -> String.join("|", String.valueOf(u.getId()), u.getEmail(), u.getLogin(), u.getName(),
+                        String.valueOf(u.getBirthday()), Arrays.toString(u.getFriends().toSortedArray())))
+                .collect(Collectors.joining("\n"));
+        String filmState = films.getAll().stream()
+                .sorted(Comparator.comparingLong(Film::getId))
+                .map(f -> String.join("|", String.valueOf(f.getId()), f.getName(), f.getDescription(),
+                        String.valueOf(f.getReleaseDate()), String.valueOf(f.getDuration()),
+                        Arrays.toString(f.getLikes().toSortedArray())))
+                .collect(Collectors.joining("\n"));
+        return userState + "\n" + filmState;
+    }
+
+    private Path lastSegment() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> segments = files.filter(p -> p.getFileName().toString().startsWith("wal-")).sorted().toList();
+            return segments.get(segments.size() - 1);
+        }
+    }
+}
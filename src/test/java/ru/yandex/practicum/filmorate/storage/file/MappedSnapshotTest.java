@@ -0,0 +1,100 @@
+package ru.yandex.practicum.filmorate.storage.file;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Снимок с маленьким куском отображения: записи разной длины то и дело упираются в границу куска,
+// и каждая должна читаться целиком из своего куска.
+class MappedSnapshotTest {
+    private static final long CHUNK = 4096;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordsAcrossManyChunksReadBack() throws IOException {
+        Random random = new Random(7);
+        List<User> users = new ArrayList<>();
+        for (long id = 2; id <= 1_000; id += 2) {
+            User user = new User(id, "user" + id + "@mail.ru", "user" + id, "Пользователь " + id,
+                    LocalDate.of(1980, 1, 1).plusDays(id));
+            random.longs(random.nextInt(40), 1, 1_000).forEach(user.getFriends()::add);
+            users.add(user);
+        }
+        List<Film> films = new ArrayList<>();
+        for (long id = 2; id <= 4_000; id += 2) {
+            Film film = new Film(id, "Фильм " + id, "д".repeat(random.nextInt(300)),
+                    id % 7 == 0 ? null : LocalDate.of(2000, 1, 1).plusDays(id), 60 + (int) (id % 120));
+            random.longs(random.nextInt(60), 1, 1_000).forEach(film.getLikes()::add);
+            films.add(film);
+        }
+        Path path = dir.resolve("snapshot.bin");
+        MappedSnapshot.write(path, CHUNK, 42, 1_000, users, 4_000, films);
+        assertThat(Files.size(path)).isGreaterThan(100 * CHUNK);
+
+        MappedSnapshot snapshot = MappedSnapshot.open(path, CHUNK);
+
+        assertThat(snapshot.getReplayFrom()).isEqualTo(42);
+        assertThat(snapshot.getLastUserId()).isEqualTo(1_000);
+        assertThat(snapshot.getLastFilmId()).isEqualTo(4_000);
+        assertThat(snapshot.getUserCount()).isEqualTo(users.size());
+        assertThat(snapshot.getFilmCount()).isEqualTo(films.size());
+        for (User expected : users) {
+            assertThat(describe(snapshot.readUser(expected.getId()))).isEqualTo(describe(expected));
+            assertThat(snapshot.readUser(expected.getId() - 1)).isNull();
+        }
+        for (Film expected : films) {
+            assertThat(describe(snapshot.readFilm(expected.getId()))).isEqualTo(describe(expected));
+            assertThat(snapshot.readFilm(expected.getId() - 1)).isNull();
+        }
+        List<Long> filmIds = new ArrayList<>();
+        snapshot.forEachFilmId(filmIds::add);
+        assertThat(filmIds).containsExactlyElementsOf(
+                LongStream.rangeClosed(1, 2_000).map(i -> i * 2).boxed().toList());
+    }
+
+    @Test
+    void recordLargerThanChunkIsRejected() {
+        Film film = new Film(1, "Фильм", "д".repeat((int) CHUNK), LocalDate.of(2000, 1, 1), 90);
+
+        assertThatThrownBy(() -> MappedSnapshot.write(dir.resolve("snapshot.bin"), CHUNK, 0, 0, List.of(),
+                1, List.of(film))).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void truncatedSnapshotIsRejected() throws IOException {
+        Path path = dir.resolve("snapshot.bin");
+        MappedSnapshot.write(path, CHUNK, 0, 0, List.of(), 1,
+                List.of(new Film(1, "Фильм", "Описание", LocalDate.of(2000, 1, 1), 90)));
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 16));
+
+        assertThatThrownBy(() -> MappedSnapshot.open(path, CHUNK)).isInstanceOf(IOException.class);
+    }
+
+    private static String describe(User user) {
+        return String.join("|", String.valueOf(user.getId()), user.getEmail(), user.getLogin(), user.getName(),
+                String.valueOf(user.getBirthday()), Arrays.toString(user.getFriends().toSortedArray()));
+    }
+
+    private static String describe(Film film) {
+        return String.join("|", String.valueOf(film.getId()), film.getName(), film.getDescription(),
+                String.valueOf(film.getReleaseDate()), String.valueOf(film.getDuration()),
+                Arrays.toString(film.getLikes().toSortedArray()));
+    }
+}
@@ -0,0 +1,158 @@
+package ru.yandex.practicum.filmorate.storage.file;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Журнал на диске после сбоя: запись, порча файлов сегментов, повторное открытие и проигрывание.
+class WriteAheadLogTest {
+    private static final byte TYPE = 1;
+    // Длина, CRC32, тип и одно число.
+    private static final int RECORD_SIZE = 4 + 4 + 1 + 8;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void tornTailIsCutOffAndJournalContinues() throws IOException {
+        write(LongStream.range(0, 10));
+        Path segment = segments().get(0);
+        truncate(segment, Files.size(segment) - 5);
+
+        List<Long> replayed = new ArrayList<>();
+        long next = replay(0, replayed);
+
+        assertThat(replayed).containsExactlyElementsOf(LongStream.range(0, 9).boxed().toList());
+        assertThat(next).isEqualTo(9);
+        assertThat(Files.size(segment)).isEqualTo(9L * RECORD_SIZE);
+
+        write(LongStream.of(100));
+        replayed.clear();
+        assertThat(replay(0, replayed)).isEqualTo(10);
+        assertThat(replayed).endsWith(8L, 100L);
+    }
+
+    @Test
+    void recordWithBadChecksumEndsReplay() throws IOException {
+        write(LongStream.range(0, 10));
+        Path segment = segments().get(0);
+        flipByte(segment, Files.size(segment) - 1);
+
+        List<Long> replayed = new ArrayList<>();
+        assertThat(replay(0, replayed)).isEqualTo(9);
+        assertThat(replayed).containsExactlyElementsOf(LongStream.range(0, 9).boxed().toList());
+        assertThat(Files.size(segment)).isEqualTo(9L * RECORD_SIZE);
+    }
+
+    @Test
+    void replayFromSkipsEarlierRecordsAcrossSegments() throws IOException {
+        WriteAheadLog wal = open();
+        append(wal, LongStream.range(0, 5));
+        assertThat(wal.rotate()).isEqualTo(5);
+        append(wal, LongStream.range(5, 10));
+        assertThat(wal.rotate()).isEqualTo(10);
+        append(wal, LongStream.range(10, 12));
+        wal.sync();
+        wal.close();
+        assertThat(segments()).hasSize(3);
+
+        List<Long> replayed = new ArrayList<>();
+        assertThat(replay(7, replayed)).isEqualTo(12);
+        assertThat(replayed).containsExactly(7L, 8L, 9L, 10L, 11L);
+
+        replayed.clear();
+        assertThat(replay(10, replayed)).isEqualTo(12);
+        assertThat(replayed).containsExactly(10L, 11L);
+    }
+
+    @Test
+    void truncateBeforeKeepsSegmentsNeededForReplay() throws IOException {
+        WriteAheadLog wal = open();
+        append(wal, LongStream.range(0, 5));
+        wal.rotate();
+        append(wal, LongStream.range(5, 10));
+        long replayFrom = wal.rotate();
+        append(wal, LongStream.range(10, 12));
+        wal.truncateBefore(replayFrom);
+        wal.sync();
+        wal.close();
+
+        assertThat(segments()).hasSize(1);
+        List<Long> replayed = new ArrayList<>();
+        assertThat(replay(replayFrom, replayed)).isEqualTo(12);
+        assertThat(replayed).containsExactly(10L, 11L);
+    }
+
+    // Хвост отрезается только у последнего сегмента: порча в середине журнала - ошибка восстановления.
+    @Test
+    void damagedEarlierSegmentFailsReplay() throws IOException {
+        WriteAheadLog wal = open();
+        append(wal, LongStream.range(0, 5));
+        wal.rotate();
+        append(wal, LongStream.range(5, 10));
+        wal.sync();
+        wal.close();
+        Path first = segments().get(0);
+        flipByte(first, 2L * RECORD_SIZE + 10);
+
+        assertThatThrownBy(() -> replay(0, new ArrayList<>())).isInstanceOf(IOException.class);
+        assertThat(Files.size(first)).isEqualTo(5L * RECORD_SIZE);
+    }
+
+    // Как при старте хранилища: проиграть журнал и продолжить запись со следующего номера.
+    private WriteAheadLog open() throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(dir, false);
+        wal.open(wal.replay(0, (type, in) -> in.readLong()));
+        return wal;
+    }
+
+    private void write(LongStream values) throws IOException {
+        WriteAheadLog wal = open();
+        append(wal, values);
+        wal.sync();
+        wal.close();
+    }
+
+    private static void append(WriteAheadLog wal, LongStream values) {
+        values.forEach(value -> wal.append(TYPE, out -> out.writeLong(value)));
+    }
+
+    private long replay(long fromLsn, List<Long> replayed) throws IOException {
+        return new WriteAheadLog(dir, false).replay(fromLsn, (type, in) -> {
+            assertThat(type).isEqualTo(TYPE);
+            replayed.add(in.readLong());
+        });
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().startsWith("wal-")).sorted().toList();
+        }
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(size);
+        }
+    }
+
+    private static void flipByte(Path file, long position) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 0xFF);
+        }
+    }
+}
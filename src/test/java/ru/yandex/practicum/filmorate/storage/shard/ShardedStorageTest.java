@@ -0,0 +1,291 @@
+package ru.yandex.practicum.filmorate.storage.shard;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import ru.yandex.practicum.filmorate.exception.StorageException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmQuery;
+import ru.yandex.practicum.filmorate.model.TrendingPeriod;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Несколько частей в одном процессе против одного хранилища в памяти: одинаковые операции
+// должны давать одинаковые ответы при любом числе частей.
+class ShardedStorageTest {
+    private static final String[] WORDS = {"ночь", "город", "река", "зима", "солнце", "дорога", "море"};
+
+    @Test
+    void ringSpreadsIdsEvenly() {
+        int shards = 8;
+        HashRing ring = new HashRing(shards, 256);
+        int[] counts = new int[shards];
+        int ids = 80_000;
+        for (long id = 1; id <= ids; id++) {
+            counts[ring.shardOf(id)]++;
+        }
+        for (int count : counts) {
+            assertThat(count).isBetween(ids / shards * 3 / 4, ids / shards * 5 / 4);
+        }
+    }
+
+    @Test
+    void addingShardMovesIdsOnlyToIt() {
+        HashRing before = new HashRing(5, 256);
+        HashRing after = new HashRing(6, 256);
+        int moved = 0;
+        for (long id = 1; id <= 60_000; id++) {
+            int from = before.shardOf(id);
+            int to = after.shardOf(id);
+            if (from != to) {
+                assertThat(to).isEqualTo(5);
+                moved++;
+            }
+        }
+        assertThat(moved).isBetween(60_000 / 6 * 3 / 4, 60_000 / 6 * 5 / 4);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 7})
+    void filmsMatchSingleStorage(int shardCount) {
+        FilmStorage expected = new InMemoryFilmStorage();
+        ShardedFilmStorage actual = new ShardedFilmStorage(shardCount, 64);
+        Random random = new Random(shardCount);
+        int films = 400;
+        for (int i = 0; i < films; i++) {
+            String name = WORDS[random.nextInt(WORDS.length)] + " " + i;
+            String description = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+            LocalDate released = LocalDate.of(1950 + random.nextInt(70), 1 + random.nextInt(12), 1);
+            int duration = 60 + random.nextInt(120);
+            expected.add(new Film(0, name, description, released, duration));
+            actual.add(new Film(0, name, description, released, duration));
+        }
+        for (int i = 0; i < 5_000; i++) {
+            long filmId = 1 + random.nextInt(films);
+            long userId = 1 + random.nextInt(300);
+            if (random.nextInt(5) == 0) {
+                assertThat(actual.removeLike(filmId, userId)).isEqualTo(expected.removeLike(filmId, userId));
+            } else {
+                assertThat(actual.addLike(filmId, userId)).isEqualTo(expected.addLike(filmId, userId));
+            }
+        }
+        long[] batchFilms = random.longs(500, 1, films + 1).toArray();
+        long[] batchUsers = random.longs(500, 1, 301).toArray();
+        assertThat(actual.addLikes(batchFilms, batchUsers)).isEqualTo(expected.addLikes(batchFilms, batchUsers));
+        for (int i = 0; i < 20; i++) {
+            long id = 1 + random.nextInt(films);
+            assertThat(actual.remove(id).isPresent()).isEqualTo(expected.remove(id).isPresent());
+        }
+        expected.refreshTrending();
+        actual.refreshTrending();
+
+        assertThat(ids(actual.getAll())).isEqualTo(ids(expected.getAll()).stream().sorted().toList());
+        assertThat(ids(actual.getAllAfter(150))).isEqualTo(ids(expected.getAllAfter(150)));
+        for (int count : new int[] {1, 10, 50, films}) {
+            assertThat(ids(actual.getTopRated(count))).isEqualTo(ids(expected.getTopRated(count)));
+            assertThat(ids(actual.getTrending(TrendingPeriod.DAY, count)))
+                    .isEqualTo(ids(expected.getTrending(TrendingPeriod.DAY, count)));
+        }
+        List<FilmQuery> queries = List.of(
+                new FilmQuery("ГОР", null, null, null, null),
+                new FilmQuery(null, LocalDate.of(1970, 1, 1), LocalDate.of(1990, 1, 1), null, null),
+                new FilmQuery(null, null, null, 90, 120),
+                new FilmQuery("мо", null, null, 100, null));
+        for (FilmQuery query : queries) {
+            assertThat(ids(actual.findByAttributes(query))).isEqualTo(ids(expected.findByAttributes(query)));
+        }
+        for (long userId = 1; userId <= 300; userId += 37) {
+            assertThat(actual.getLikedFilms(userId)).isEqualTo(expected.getLikedFilms(userId));
+        }
+        // Оценки поиска считаются по статистике своей части, поэтому сравнивается состав выдачи.
+        assertThat(ids(actual.search("река", films, false)))
+                .containsExactlyInAnyOrderElementsOf(ids(expected.search("река", films, false)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 7})
+    void usersMatchSingleStorage(int shardCount) {
+        UserStorage expected = new InMemoryUserStorage();
+        ShardedUserStorage actual = new ShardedUserStorage(shardCount, 64);
+        Random random = new Random(shardCount);
+        int users = 300;
+        for (int i = 0; i < users; i++) {
+            expected.add(user(0, i));
+            actual.add(user(0, i));
+        }
+        for (int i = 0; i < 3_000; i++) {
+            long id = 1 + random.nextInt(users);
+            long friendId = 1 + random.nextInt(users);
+            if (id == friendId) {
+                continue;
+            }
+            if (random.nextInt(4) == 0) {
+                assertThat(actual.removeFriend(id, friendId)).isEqualTo(expected.removeFriend(id, friendId));
+            } else {
+                assertThat(actual.addFriend(id, friendId)).isEqualTo(expected.addFriend(id, friendId));
+            }
+        }
+        long[] batchIds = random.longs(400, 1, users + 1).toArray();
+        long[] batchFriends = random.longs(400, 1, users + 1).toArray();
+        for (int i = 0; i < batchIds.length; i++) {
+            if (batchIds[i] == batchFriends[i]) {
+                batchFriends[i] = batchIds[i] % users + 1;
+            }
+        }
+        assertThat(actual.addFriends(batchIds, batchFriends)).isEqualTo(expected.addFriends(batchIds, batchFriends));
+
+        assertThat(ids(actual.getAll())).isEqualTo(ids(expected.getAll()).stream().sorted().toList());
+        assertThat(ids(actual.getAllAfter(100))).isEqualTo(ids(expected.getAllAfter(100)));
+        List<Long> wanted = random.longs(50, 1, users + 40).boxed().toList();
+        assertThat(ids(actual.getUsersByIds(wanted))).isEqualTo(ids(expected.getUsersByIds(wanted)));
+        for (long id = 1; id <= users; id += 13) {
+            assertThat(actual.getUserById(id).orElseThrow().getFriends())
+                    .isEqualTo(expected.getUserById(id).orElseThrow().getFriends());
+            long other = id % users + 1;
+            assertThat(ids(actual.getCommonFriends(id, other, 0, 100)))
+                    .isEqualTo(ids(expected.getCommonFriends(id, other, 0, 100)));
+            assertThat(actual.getUserByEmail("user" + (id - 1) + "@mail.ru").map(User::getId))
+                    .isEqualTo(expected.getUserByEmail("user" + (id - 1) + "@mail.ru").map(User::getId));
+        }
+    }
+
+    @Test
+    void loginsAndEmailsAreUniqueAcrossShards() {
+        ShardedUserStorage storage = new ShardedUserStorage(5, 64);
+        for (int i = 0; i < 20; i++) {
+            storage.add(user(0, i));
+        }
+        assertThatThrownBy(() -> storage.add(user(0, 7))).isInstanceOf(StorageException.class);
+        assertThat(storage.getAll()).hasSize(20);
+
+        User renamed = user(3, 100);
+        storage.update(renamed);
+        assertThat(storage.getUserByLogin("login100").map(User::getId)).contains(3L);
+        assertThat(storage.getUserByLogin("login2")).isEmpty();
+        storage.add(user(0, 2));
+        assertThatThrownBy(() -> storage.update(user(4, 100))).isInstanceOf(StorageException.class);
+        assertThat(storage.getUserByLogin("login3").map(User::getId)).contains(4L);
+
+        storage.remove(3);
+        storage.add(user(0, 100));
+        assertThat(storage.getUserByEmail("user100@mail.ru")).isPresent();
+    }
+
+    // Добавление и удаление одной пары между частями наперегонки: половины дружбы не должны расходиться
+    // (addFriend записал 1->2, removeFriend убрал 1->2 и не нашёл 2->1, addFriend записал 2->1).
+    // После каждого раунда пара проверяется и возвращается в исходное состояние.
+    @Test
+    void crossShardFriendshipStaysSymmetric() throws Exception {
+        ShardedUserStorage storage = new ShardedUserStorage(4, 64);
+        HashRing ring = new HashRing(4, 64);
+        for (int i = 0; i < 10; i++) {
+            storage.add(user(0, i));
+        }
+        long id = 1;
+        long friendId = LongStream.rangeClosed(2, 10)
+                .filter(other -> ring.shardOf(other) != ring.shardOf(id))
+                .findFirst().orElseThrow();
+        AtomicInteger diverged = new AtomicInteger();
+        CyclicBarrier round = new CyclicBarrier(2, () -> {
+            boolean forward = storage.getUserById(id).orElseThrow().getFriends().contains(friendId);
+            boolean backward = storage.getUserById(friendId).orElseThrow().getFriends().contains(id);
+            if (forward != backward) {
+                diverged.incrementAndGet();
+            }
+            storage.removeFriend(id, friendId);
+            storage.removeFriend(friendId, id);
+            storage.addFriend(id, friendId);
+        });
+        storage.addFriend(id, friendId);
+        int rounds = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> adding = executor.submit(() -> {
+                for (int i = 0; i < rounds; i++) {
+                    storage.removeFriend(id, friendId);
+                    storage.addFriend(id, friendId);
+                    round.await();
+                }
+                return null;
+            });
+            Future<?> removing = executor.submit(() -> {
+                for (int i = 0; i < rounds; i++) {
+                    storage.removeFriend(friendId, id);
+                    round.await();
+                }
+                return null;
+            });
+            adding.get();
+            removing.get();
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(diverged).hasValue(0);
+    }
+
+    @Test
+    void concurrentLikesAreNotLost() throws Exception {
+        ShardedFilmStorage storage = new ShardedFilmStorage(4, 64);
+        int films = 50;
+        for (int i = 0; i < films; i++) {
+            storage.add(new Film(0, "Фильм " + i, "", LocalDate.of(2000, 1, 1), 90));
+        }
+        int threads = 8;
+        int usersPerThread = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long firstUser = (long) t * usersPerThread + 1;
+                done.add(executor.submit(() -> {
+                    for (long user = firstUser; user < firstUser + usersPerThread; user++) {
+                        for (long film = 1; film <= films; film++) {
+                            storage.addLike(film, user);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : done) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(storage.getAll()).allSatisfy(film ->
+                assertThat(film.getLikes()).hasSize(threads * usersPerThread));
+        assertThat(storage.getTopRated(films)).hasSize(films);
+        assertThat(storage.shards().stream().mapToLong(InMemoryFilmStorage::count).sum()).isEqualTo(films);
+    }
+
+    private static User user(long id, int n) {
+        return new User(id, "user" + n + "@mail.ru", "login" + n, "Пользователь " + n,
+                LocalDate.of(1990, 1, 1).plusDays(n));
+    }
+
+    private static List<Long> ids(Collection<?> items) {
+        return ids(items.stream());
+    }
+
+    private static List<Long> ids(Stream<?> items) {
+        return items.map(item -> item instanceof Film film ? film.getId() : ((User) item).getId()).toList();
+    }
+}
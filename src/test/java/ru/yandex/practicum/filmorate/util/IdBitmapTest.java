@@ -0,0 +1,104 @@
+package ru.yandex.practicum.filmorate.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Контейнеры блока - массив до 4096 значений и битовая карта сверх них; пересечения всех сочетаний
+// сверяются с наивным пересечением HashSet.
+class IdBitmapTest {
+    private static final long BLOCK = 1L << 16;
+
+    @Test
+    void intersectionWithItselfReturnsAllIds() {
+        long[] ids = LongStream.of(1, 2, BLOCK - 1, BLOCK, BLOCK + 1, 2 * BLOCK - 1, 2 * BLOCK, 5 * BLOCK + 7)
+                .toArray();
+        IdBitmap bitmap = IdBitmap.of(ids);
+
+        assertThat(bitmap.size()).isEqualTo(ids.length);
+        assertThat(collect(bitmap, bitmap)).containsExactly(ids);
+        assertThat(collect(IdBitmap.of(new long[0]), bitmap)).isEmpty();
+    }
+
+    // 4096 значений в блоке - ещё массив, 4097 - уже битовая карта; обе дают те же id.
+    @Test
+    void arrayAndBitmapContainersAtTheLimit() {
+        for (int count : new int[]{4_095, 4_096, 4_097, 30_000, (int) BLOCK}) {
+            long[] ids = LongStream.range(0, count).map(i -> BLOCK + i * (BLOCK / count)).toArray();
+            IdBitmap bitmap = IdBitmap.of(ids);
+
+            assertThat(collect(bitmap, bitmap)).as("count=%d", count).containsExactly(ids);
+        }
+    }
+
+    @Test
+    void allContainerCombinationsMatchReference() {
+        Random random = new Random(5);
+        int[] perBlock = {10, 4_096, 4_097, 40_000};
+        for (int x : perBlock) {
+            for (int y : perBlock) {
+                long[] a = randomIds(random, x, 3);
+                long[] b = randomIds(random, y, 3);
+
+                assertThat(collect(IdBitmap.of(a), IdBitmap.of(b))).as("%d x %d", x, y)
+                        .containsExactly(reference(a, b));
+                assertThat(collect(IdBitmap.of(b), IdBitmap.of(a))).containsExactly(reference(a, b));
+            }
+        }
+    }
+
+    @Test
+    void blocksPresentOnOneSideOnly() {
+        long[] a = LongStream.of(5, BLOCK + 5, 3 * BLOCK + 5, 7 * BLOCK).toArray();
+        long[] b = LongStream.of(BLOCK + 5, 2 * BLOCK + 5, 3 * BLOCK + 6, 7 * BLOCK, 9 * BLOCK).toArray();
+
+        assertThat(collect(IdBitmap.of(a), IdBitmap.of(b))).containsExactly(BLOCK + 5, 7 * BLOCK);
+    }
+
+    @Test
+    void sinkStopsTheWalk() {
+        long[] ids = LongStream.rangeClosed(1, 3 * BLOCK).toArray();
+        IdBitmap bitmap = IdBitmap.of(ids);
+        List<Long> seen = new ArrayList<>();
+
+        boolean completed = bitmap.intersect(bitmap, id -> {
+            seen.add(id);
+            return seen.size() < 5;
+        });
+
+        assertThat(completed).isFalse();
+        assertThat(seen).containsExactly(1L, 2L, 3L, 4L, 5L);
+    }
+
+    private static long[] collect(IdBitmap a, IdBitmap b) {
+        List<Long> ids = new ArrayList<>();
+        assertThat(a.intersect(b, ids::add)).isTrue();
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // perBlock случайных значений в каждом из blocks блоков, по возрастанию.
+    private static long[] randomIds(Random random, int perBlock, int blocks) {
+        List<Long> ids = new ArrayList<>();
+        for (long block = 1; block <= blocks; block++) {
+            Set<Long> values = new HashSet<>();
+            while (values.size() < perBlock) {
+                values.add(block * BLOCK + random.nextInt((int) BLOCK));
+            }
+            ids.addAll(values);
+        }
+        return ids.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    private static long[] reference(long[] a, long[] b) {
+        Set<Long> common = new HashSet<>(LongStream.of(a).boxed().toList());
+        common.retainAll(new HashSet<>(LongStream.of(b).boxed().toList()));
+        return common.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+}
@@ -0,0 +1,128 @@
+package ru.yandex.practicum.filmorate.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Каждая ветка пересечения (галопирование, битовые карты, слияние) сверяется с наивным пересечением
+// HashSet, в том числе постранично.
+class IdIntersectionTest {
+    private final Random random = new Random(11);
+
+    @Test
+    void emptyAndOneSidedSets() {
+        IdSet empty = new IdSet();
+        IdSet some = ids(LongStream.rangeClosed(1, 100));
+
+        assertThat(IdIntersection.intersect(empty, empty, 0, 10)).isEmpty();
+        assertThat(IdIntersection.intersect(empty, some, 0, 10)).isEmpty();
+        assertThat(IdIntersection.intersect(some, empty, 0, 10)).isEmpty();
+        assertThat(IdIntersection.intersect(some, some, 0, 0)).isEmpty();
+    }
+
+    @Test
+    void disjointAndIdenticalSets() {
+        IdSet odd = ids(LongStream.rangeClosed(0, 2_000).map(i -> i * 2 + 1));
+        IdSet even = ids(LongStream.rangeClosed(1, 2_000).map(i -> i * 2));
+
+        assertThat(IdIntersection.intersect(odd, even, 0, 10_000)).isEmpty();
+        assertThat(IdIntersection.intersect(odd, odd, 0, 10_000)).containsExactly(odd.toSortedArray());
+    }
+
+    // Размеры различаются больше чем в GALLOP_RATIO раз: меньший массив ищется в большем.
+    @Test
+    void veryDifferentSizesGallop() {
+        for (int round = 0; round < 20; round++) {
+            IdSet small = randomIds(1 + random.nextInt(50), 1_000_000);
+            IdSet large = randomIds(60 * IdIntersection.GALLOP_RATIO + random.nextInt(20_000), 1_000_000);
+            small.add(large.toSortedArray()[0]);
+            small.add(large.toSortedArray()[large.size() - 1]);
+
+            assertMatchesReference(small, large);
+            assertMatchesReference(large, small);
+        }
+        // Соседние id: после найденного элемента поиск продолжается с ближайшего следующего.
+        IdSet run = ids(LongStream.of(1, 2, 3, 500, 501, 502, 998, 999, 1_000, 1_001));
+        assertMatchesReference(run, ids(LongStream.rangeClosed(1, 1_000)));
+    }
+
+    // Большие плотные множества пересекаются по битовым картам; id переходят через границы блоков 2^16,
+    // а в одном блоке бывает и массив, и битовая карта.
+    @Test
+    void denseSetsAcrossBlockBoundaries() {
+        for (int round = 0; round < 5; round++) {
+            int span = 4 * 65_536;
+            IdSet a = randomIds(span / 4 + random.nextInt(span / 4), span);
+            IdSet b = randomIds(span / 16 + random.nextInt(span / 8), span);
+
+            assertMatchesReference(a, b);
+        }
+        // По обе стороны границы: массивы у одного множества, битовые карты у другого.
+        IdSet around = ids(LongStream.rangeClosed(65_536 - 3_000, 65_536 + 3_000));
+        IdSet wide = ids(LongStream.rangeClosed(30_000, 110_000));
+        assertMatchesReference(around, wide);
+    }
+
+    @Test
+    void similarSparseSetsMerge() {
+        for (int round = 0; round < 20; round++) {
+            IdSet a = randomIds(1_000 + random.nextInt(1_000), 10_000_000);
+            IdSet b = randomIds(1_000 + random.nextInt(1_000), 10_000_000);
+            for (long id : b.toLongArray()) {
+                if (random.nextInt(3) == 0) {
+                    a.add(id);
+                }
+            }
+
+            assertMatchesReference(a, b);
+        }
+    }
+
+    @Test
+    void pagingPastTheEnd() {
+        IdSet a = ids(LongStream.rangeClosed(1, 100));
+        IdSet b = ids(LongStream.rangeClosed(51, 150));
+
+        assertThat(IdIntersection.intersect(a, b, 40, 20)).containsExactly(91, 92, 93, 94, 95, 96, 97, 98, 99, 100);
+        assertThat(IdIntersection.intersect(a, b, 50, 20)).isEmpty();
+        assertThat(IdIntersection.intersect(a, b, 1_000, 20)).isEmpty();
+    }
+
+    // Полное пересечение и страницы разного размера, включая выходящие за конец.
+    private static void assertMatchesReference(IdSet a, IdSet b) {
+        long[] expected = reference(a, b);
+        assertThat(IdIntersection.intersect(a, b, 0, Integer.MAX_VALUE)).containsExactly(expected);
+        for (int size : new int[]{1, 7, 100}) {
+            for (int from : new int[]{0, 1, expected.length / 2, Math.max(0, expected.length - 3), expected.length,
+                    expected.length + 5}) {
+                long[] page = LongStream.of(expected).skip(from).limit(size).toArray();
+                assertThat(IdIntersection.intersect(a, b, from, size))
+                        .as("from=%d size=%d", from, size)
+                        .containsExactly(page);
+            }
+        }
+    }
+
+    private static long[] reference(IdSet a, IdSet b) {
+        Set<Long> common = new HashSet<>(a);
+        common.retainAll(new HashSet<>(b));
+        return common.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    private IdSet randomIds(int count, long max) {
+        IdSet set = new IdSet();
+        while (set.size() < count) {
+            set.add(1 + (long) (random.nextDouble() * max));
+        }
+        return set;
+    }
+
+    private static IdSet ids(LongStream values) {
+        return new IdSet(values.toArray());
+    }
+}
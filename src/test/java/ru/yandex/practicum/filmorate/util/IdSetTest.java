@@ -0,0 +1,143 @@
+package ru.yandex.practicum.filmorate.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdSetTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Случайные добавления и удаления (с пометками удаления и перестройками таблицы) сверяются с HashSet.
+    @Test
+    void addRemoveAndGrowMatchHashSet() {
+        Random random = new Random(3);
+        IdSet ids = new IdSet();
+        Set<Long> reference = new HashSet<>();
+        for (int i = 0; i < 200_000; i++) {
+            long id = 1 + random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                assertThat(ids.remove(id)).isEqualTo(reference.remove(id));
+            } else {
+                assertThat(ids.add(id)).isEqualTo(reference.add(id));
+            }
+        }
+
+        assertThat(ids.size()).isEqualTo(reference.size());
+        assertThat(ids.toSortedArray())
+                .containsExactly(reference.stream().mapToLong(Long::longValue).sorted().toArray());
+        assertThat(ids.contains(0)).isFalse();
+        assertThat(ids.contains(-1)).isFalse();
+        assertThatThrownBy(() -> ids.add(0)).isInstanceOf(IllegalArgumentException.class);
+
+        ids.clear();
+        assertThat(ids).isEmpty();
+        assertThat(ids.toSortedArray()).isEmpty();
+        assertThat(ids.add(42)).isTrue();
+        assertThat(ids).containsExactly(42L);
+    }
+
+    // Один поток пишет, другие читают во время расширений таблицы: читатель видит каждый id,
+    // добавленный до начала обхода, и не видит чужих значений или повторов.
+    @Test
+    void readersSeeEverythingAddedBeforeTheWalk() throws Exception {
+        int count = 100_000;
+        IdSet ids = new IdSet();
+        AtomicLong added = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (long id = 1; id <= count; id++) {
+                    ids.add(id);
+                    added.set(id);
+                }
+            });
+            Runnable reader = () -> {
+                while (added.get() < count) {
+                    long before = added.get();
+                    boolean[] seen = new boolean[count + 1];
+                    for (long id : ids.toLongArray()) {
+                        if (id < 1 || id > count || seen[(int) id]) {
+                            throw new AssertionError("Лишний или повторный id " + id);
+                        }
+                        seen[(int) id] = true;
+                    }
+                    for (int id = 1; id <= before; id++) {
+                        if (!seen[id]) {
+                            throw new AssertionError("Пропущен id " + id + ", добавленный до обхода");
+                        }
+                    }
+                    if (ids.toSortedArray().length < before) {
+                        throw new AssertionError("Сортированная копия короче добавленного до обхода");
+                    }
+                }
+            };
+            Future<?> first = executor.submit(reader);
+            Future<?> second = executor.submit(reader);
+            writer.get();
+            first.get();
+            second.get();
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(ids.toSortedArray()).containsExactly(LongStream.rangeClosed(1, count).toArray());
+    }
+
+    // Сортированная копия и битовая карта переиспользуются, пока множество не меняется,
+    // и строятся заново после любого изменения.
+    @Test
+    void cachedViewsFollowModifications() {
+        IdSet ids = new IdSet(new long[]{5, 3, 1});
+        long[] sorted = ids.toSortedArray();
+        IdBitmap bitmap = ids.toBitmap();
+        assertThat(ids.toSortedArray()).isSameAs(sorted).containsExactly(1, 3, 5);
+        assertThat(ids.toBitmap()).isSameAs(bitmap);
+
+        ids.add(4);
+        assertThat(ids.toSortedArray()).isNotSameAs(sorted).containsExactly(1, 3, 4, 5);
+        assertThat(ids.toBitmap()).isNotSameAs(bitmap).extracting(IdBitmap::size).isEqualTo(4);
+
+        // Повторное добавление ничего не меняет - кэш остаётся.
+        sorted = ids.toSortedArray();
+        assertThat(ids.add(4)).isFalse();
+        assertThat(ids.toSortedArray()).isSameAs(sorted);
+
+        // Добавление и удаление того же id возвращают содержимое, но копия строится заново.
+        ids.add(2);
+        ids.remove(2);
+        assertThat(ids.toSortedArray()).isNotSameAs(sorted).containsExactly(1, 3, 4, 5);
+
+        ids.remove(3);
+        assertThat(ids.toSortedArray()).containsExactly(1, 4, 5);
+        ids.clear();
+        assertThat(ids.toSortedArray()).isEmpty();
+        assertThat(ids.toBitmap().size()).isZero();
+    }
+
+    @Test
+    void jsonIsSortedArrayOfPositiveIds() throws Exception {
+        IdSet ids = objectMapper.readValue("[3, 1, \"2\"]", IdSet.class);
+        assertThat(objectMapper.writeValueAsString(ids)).isEqualTo("[1,2,3]");
+
+        IdSet existing = new IdSet(new long[]{9});
+        objectMapper.readerForUpdating(existing).readValue("[1]");
+        assertThat(existing).containsExactly(1L, 9L);
+
+        for (String json : new String[]{"[1, 0]", "[-5]", "[null]", "5"}) {
+            assertThatThrownBy(() -> objectMapper.readValue(json, IdSet.class))
+                    .as(json)
+                    .isInstanceOf(MismatchedInputException.class);
+        }
+    }
+}
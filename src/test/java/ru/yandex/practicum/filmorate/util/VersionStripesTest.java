@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VersionStripesTest {
+    private final VersionStripes versions = new VersionStripes();
+    private final ConcurrentMap<Long, String> cache = new ConcurrentHashMap<>();
+
+    @Test
+    void resultIsStoredWhenNothingChanged() {
+        long version = versions.get(1);
+        versions.putIfUnchanged(cache, 1, version, "fresh");
+
+        assertThat(cache).containsEntry(1L, "fresh");
+    }
+
+    // Изменение во время расчёта: результат, посчитанный по старым данным, в кэш не попадает.
+    @Test
+    void resultStartedBeforeInvalidationIsDropped() {
+        cache.put(1L, "old");
+        long version = versions.get(1);
+        versions.invalidate(cache, 1);
+        versions.putIfUnchanged(cache, 1, version, "stale");
+
+        assertThat(cache).doesNotContainKey(1L);
+
+        // Расчёт после изменения сохраняется, другие id изменение не трогает.
+        versions.putIfUnchanged(cache, 1, versions.get(1), "fresh");
+        long other = versions.get(2);
+        versions.invalidate(cache, 1);
+        versions.putIfUnchanged(cache, 2, other, "other");
+        assertThat(cache).doesNotContainKey(1L).containsEntry(2L, "other");
+    }
+}